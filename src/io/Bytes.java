@@ -37,6 +37,8 @@ import java.io.InvalidClassException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 public class Bytes {
 
@@ -80,8 +82,20 @@ public class Bytes {
 		return EncodingHelpers.decodeLong(value);
 	}
 	
+	/* re-used by each thread to encode values before they are copied out */
+	private static ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(256);
+		}
+	};
+	
+	/* marks a Java serialisation stream embedded in a larger buffer */
+	private static final byte SERIALISED_TAG = 0;
+	
 	/**
-	*   Get a byte[] representation of the specified object, using
+	*   Get a byte[] representation of the specified object. If a 
+	*   {@link Codec} is registered for the object's class (see 
+	*   {@link CodecRegistry}) its compact encoding is used, otherwise 
 	*   standard Java serialisation.
 	*   @param obj the object to be serialized
 	*   @return the array representing the object
@@ -92,6 +106,93 @@ public class Bytes {
 	public static byte[] getBytes(Object obj) 
 		throws RTIinternalError {
 		
+		int tag = CodecRegistry.tagFor(obj);
+		if (tag == -1)
+			return serialise(obj);
+		ByteBuffer buf = scratch.get();
+		while (true) {
+			buf.clear();
+			try {
+				encode(tag, obj, buf);
+				break;
+			}
+			catch (BufferOverflowException e) {
+				buf = ByteBuffer.allocate(buf.capacity() * 2);
+				scratch.set(buf);
+			}
+		}
+		byte[] bytes = new byte[buf.position()];
+		buf.flip();
+		buf.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	*   Writes the specified object at the buffer's current position, in the
+	*   same form as {@link #getBytes(Object)} except that objects without 
+	*   a codec are length-prefixed so they can be read back by 
+	*   {@link #decode(ByteBuffer)}.
+	*   @throws BufferOverflowException if the buffer is too small
+	*/
+	public static void encode(Object obj, ByteBuffer out) 
+		throws RTIinternalError {
+		
+		int tag = CodecRegistry.tagFor(obj);
+		if (tag == -1) {
+			byte[] serial = serialise(obj);
+			out.put(SERIALISED_TAG);
+			out.putInt(serial.length);
+			out.put(serial);
+		}
+		else
+			encode(tag, obj, out);
+	}
+	
+	private static void encode(int tag, Object obj, ByteBuffer out) {
+		out.put((byte)tag);
+		CodecRegistry.encode(tag, obj, out);
+	}
+
+	/**
+	*   Get the object represented by this byte[], as produced by
+	*   {@link #getBytes(Object)}.
+	*   @param value a byte[] representing an object
+	*   @return the Object represented
+	*   @throws FederateInternalError if the byte[] can't be decoded (eg. the
+	*   class of a serialised object is not available in this runtime)
+	*/
+	public static Object objectValue(byte[] value)
+		throws FederateInternalError{
+
+		if (value.length > 0 && CodecRegistry.codecFor(value[0]) != null)
+			return decode(ByteBuffer.wrap(value));
+		return deserialise(value);
+	}
+	
+	/**
+	*   Reads an object written by {@link #encode(Object, ByteBuffer)} from 
+	*   the buffer's current position.
+	*/
+	public static Object decode(ByteBuffer in) throws FederateInternalError {
+		try {
+			byte tag = in.get();
+			if (tag == SERIALISED_TAG) {
+				byte[] serial = new byte[in.getInt()];
+				in.get(serial);
+				return deserialise(serial);
+			}
+			Codec<?> codec = CodecRegistry.codecFor(tag);
+			if (codec == null)
+				throw new FederateInternalError("no codec for tag " + tag);
+			return codec.decode(in);
+		}
+		catch (RuntimeException e) {
+			e.printStackTrace();
+			throw new FederateInternalError(e.getMessage());
+		}
+	}
+	
+	private static byte[] serialise(Object obj) throws RTIinternalError {
 		try {		    
 			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 			ObjectOutputStream out = new ObjectOutputStream(bytes);
@@ -106,21 +207,8 @@ public class Bytes {
 			throw new RTIinternalError("IOException");
 		}
 	}
-
-	/**
-	*   Get the object represented by this byte[], using 
-	*   standard Java serialisation
-	*   @param value a byte[] representing an object in standard Java serialisation
-	*   @return the Object represented
-	*   @throws ClassNotFoundException if the current runtime does not contain the 
-	*   class of the the de-serialized object.
-	*   @throws InvalidClassException if the object is not a valid Class type for
-	*   this Java runtime.
-	*   @throws FederateInternalError if any other error is found in the byte[]
-	*/
-	public static Object objectValue(byte[] value)
-		throws FederateInternalError{
-
+	
+	private static Object deserialise(byte[] value) throws FederateInternalError {
 		try {
 			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value));
 			return in.readObject();
@@ -156,6 +244,36 @@ public class Bytes {
 	
 	
 	
+	/**
+	 * Rough comparison of the codec and Java serialisation paths for the
+	 * kind of value {@link object.variables.ViewablePoint} sends.
+	 */
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		java.awt.Point p = new java.awt.Point(12, 34);
+		
+		System.out.println("serialised size: " + serialise(p).length + " bytes");
+		System.out.println("codec size:      " + getBytes(p).length + " bytes");
+		
+		for (int round = 0; round < 3; round++) {	/* first rounds are warm-up */
+			long t0 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				p.x = i;
+				deserialise(serialise(p));
+			}
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				p.x = i;
+				objectValue(getBytes(p));
+			}
+			long t2 = System.nanoTime();
+			System.out.println("round " + round + 
+								": serialisation " + (t1 - t0) / n + " ns/op, " + 
+								"codec " + (t2 - t1) / n + " ns/op");
+		}
+	}
+	
+	
 	/* HLA_GRID_RePast version (puts in to ascii string first, then serialises that) */
 //	/**
 //	*   Get a byte[] representation of the specified object, using
@@ -0,0 +1,59 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values of a single type to and from a compact binary layout, 
+ * used by {@link Bytes#getBytes(Object)} and {@link Bytes#objectValue(byte[])}
+ * in preference to Java serialisation.
+ * 
+ * Implementations should write a fixed layout with no type information
+ * (the registry prefixes the value with the codec's tag) and must read back
+ * exactly what they wrote. They should not keep references to the buffers
+ * they are given, which are re-used.
+ * 
+ * @see CodecRegistry#register(Class, int, Codec)
+ * 
+ * @author Rob Minson
+ */
+public interface Codec<T> {
+
+	/**
+	 * Writes the value at the buffer's current position. If the buffer runs
+	 * out of space a {@link java.nio.BufferOverflowException} may be thrown,
+	 * in which case the call will be repeated with a larger buffer.
+	 */
+	public void encode(T value, ByteBuffer out);
+	
+	/**
+	 * Reads a value written by {@link #encode(Object, ByteBuffer)} from the
+	 * buffer's current position.
+	 */
+	public T decode(ByteBuffer in);
+}
@@ -0,0 +1,259 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package io;
+
+import java.awt.Point;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.Hashtable;
+
+/**
+ * The set of {@link Codec}s known to {@link Bytes}.
+ * 
+ * Each codec is registered against a class and a one byte tag, encoded 
+ * values are the tag followed by the codec's own layout. Tags 1-15 are 
+ * reserved for the built in codecs:
+ * <ul>
+ * 	<li>1 - {@link Point} (x, y as ints)</li>
+ * 	<li>2 - int[] (length, elements)</li>
+ * 	<li>3 - double[] (length, elements)</li>
+ * 	<li>4 - String (UTF-8 length, bytes)</li>
+ * 	<li>5 - unused</li>
+ * 	<li>6, 7, 8, 9 - Integer, Double, Long, Boolean</li>
+ * 	<li>10 - {@link Timestamp} (millis, nanos)</li>
+ * </ul>
+ * Model code can register codecs for its own types with tags from 
+ * {@link #FIRST_USER_TAG} to 127, and should register each enum type they
+ * send with {@link #registerEnum(Class, int)} so that only its ordinals
+ * are sent. The same registrations must be made at every federate before
+ * any values are exchanged.
+ * 
+ * Tags are always positive, so they can't be confused with the first byte
+ * of a Java serialisation stream, which remains the fallback for any class
+ * without a codec.
+ * 
+ * @author Rob Minson
+ */
+public class CodecRegistry {
+
+	public static final int FIRST_USER_TAG = 16;
+	public static final int MAX_TAG = 127;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/* a codec with the class it was registered for, which values are cast 
+	 * to before being handed to it */
+	private static final class Entry<T> {
+		final Class<T> type;
+		final Codec<T> codec;
+		
+		Entry(Class<T> type, Codec<T> codec) {
+			this.type = type;
+			this.codec = codec;
+		}
+		
+		void encode(Object value, ByteBuffer out) {
+			codec.encode(type.cast(value), out);
+		}
+	}
+	
+	private static Hashtable<Class<?>, Integer> tagsByClass = new Hashtable<Class<?>, Integer>();
+	private static Entry<?>[] entriesByTag = new Entry<?>[MAX_TAG + 1];
+	
+	/**
+	 * Registers a codec for the given class (exact class only, not its 
+	 * subclasses).
+	 * 
+	 * @param type the class of values the codec handles
+	 * @param tag a tag between {@link #FIRST_USER_TAG} and {@link #MAX_TAG}
+	 * 	which is not already in use
+	 * @param codec the codec
+	 * @throws IllegalArgumentException if the tag is out of range or in use
+	 */
+	public static synchronized <T> void register(Class<T> type, int tag, Codec<T> codec) {
+		if (tag < FIRST_USER_TAG || tag > MAX_TAG)
+			throw new IllegalArgumentException("codec tags must be between " + 
+												FIRST_USER_TAG + " and " + MAX_TAG);
+		put(type, tag, codec);
+	}
+	
+	/**
+	 * Registers a codec for an enum type which sends only the ordinal of
+	 * each constant. Enums which are not registered are sent with Java 
+	 * serialisation, which includes their class and constant names.
+	 */
+	public static <E extends Enum<E>> void registerEnum(final Class<E> type, int tag) {
+		register(type, tag, new Codec<E>() {
+			private final E[] constants = type.getEnumConstants();
+			public void encode(E value, ByteBuffer out) {
+				out.putShort((short)value.ordinal());
+			}
+			public E decode(ByteBuffer in) {
+				return constants[in.getShort()];
+			}
+		});
+	}
+	
+	private static synchronized <T> void put(Class<T> type, int tag, Codec<T> codec) {
+		if (entriesByTag[tag] != null)
+			throw new IllegalArgumentException("codec tag " + tag + " already in use");
+		entriesByTag[tag] = new Entry<T>(type, codec);
+		tagsByClass.put(type, tag);
+	}
+	
+	/**
+	 * @return the tag to encode the given value with, or -1 if it has no codec
+	 */
+	static int tagFor(Object value) {
+		Integer tag = tagsByClass.get(value.getClass());
+		if (tag == null && value instanceof Enum)
+			/* constants with bodies are instances of a subclass */
+			tag = tagsByClass.get(((Enum<?>)value).getDeclaringClass());
+		if (tag != null)
+			return tag;
+		return -1;
+	}
+	
+	/**
+	 * Writes the value with the codec registered under the tag (as given 
+	 * by {@link #tagFor(Object)}), without the tag itself.
+	 */
+	static void encode(int tag, Object value, ByteBuffer out) {
+		entriesByTag[tag].encode(value, out);
+	}
+	
+	static Codec<?> codecFor(int tag) {
+		if (tag < 0 || tag > MAX_TAG || entriesByTag[tag] == null)
+			return null;
+		return entriesByTag[tag].codec;
+	}
+	
+	
+	////////////////////////// built in codecs //////////////////////////
+	
+	static void putString(String s, ByteBuffer out) {
+		byte[] b = s.getBytes(UTF8);
+		out.putInt(b.length);
+		out.put(b);
+	}
+	
+	static String getString(ByteBuffer in) {
+		byte[] b = new byte[in.getInt()];
+		in.get(b);
+		return new String(b, UTF8);
+	}
+	
+	static {
+		put(Point.class, 1, new Codec<Point>() {
+			public void encode(Point p, ByteBuffer out) {
+				out.putInt(p.x);
+				out.putInt(p.y);
+			}
+			public Point decode(ByteBuffer in) {
+				return new Point(in.getInt(), in.getInt());
+			}
+		});
+		put(int[].class, 2, new Codec<int[]>() {
+			public void encode(int[] a, ByteBuffer out) {
+				out.putInt(a.length);
+				for (int i : a)
+					out.putInt(i);
+			}
+			public int[] decode(ByteBuffer in) {
+				int[] a = new int[in.getInt()];
+				for (int i = 0; i < a.length; i++)
+					a[i] = in.getInt();
+				return a;
+			}
+		});
+		put(double[].class, 3, new Codec<double[]>() {
+			public void encode(double[] a, ByteBuffer out) {
+				out.putInt(a.length);
+				for (double d : a)
+					out.putDouble(d);
+			}
+			public double[] decode(ByteBuffer in) {
+				double[] a = new double[in.getInt()];
+				for (int i = 0; i < a.length; i++)
+					a[i] = in.getDouble();
+				return a;
+			}
+		});
+		put(String.class, 4, new Codec<String>() {
+			public void encode(String s, ByteBuffer out) {
+				putString(s, out);
+			}
+			public String decode(ByteBuffer in) {
+				return getString(in);
+			}
+		});
+		put(Integer.class, 6, new Codec<Integer>() {
+			public void encode(Integer i, ByteBuffer out) {
+				out.putInt(i);
+			}
+			public Integer decode(ByteBuffer in) {
+				return in.getInt();
+			}
+		});
+		put(Double.class, 7, new Codec<Double>() {
+			public void encode(Double d, ByteBuffer out) {
+				out.putDouble(d);
+			}
+			public Double decode(ByteBuffer in) {
+				return in.getDouble();
+			}
+		});
+		put(Long.class, 8, new Codec<Long>() {
+			public void encode(Long l, ByteBuffer out) {
+				out.putLong(l);
+			}
+			public Long decode(ByteBuffer in) {
+				return in.getLong();
+			}
+		});
+		put(Boolean.class, 9, new Codec<Boolean>() {
+			public void encode(Boolean b, ByteBuffer out) {
+				out.put(b ? (byte)1 : (byte)0);
+			}
+			public Boolean decode(ByteBuffer in) {
+				return in.get() != 0;
+			}
+		});
+		put(Timestamp.class, 10, new Codec<Timestamp>() {
+			public void encode(Timestamp t, ByteBuffer out) {
+				out.putLong(t.getTime());
+				out.putInt(t.getNanos());
+			}
+			public Timestamp decode(ByteBuffer in) {
+				Timestamp t = new Timestamp(in.getLong());
+				t.setNanos(in.getInt());
+				return t;
+			}
+		});
+	}
+}
@@ -35,7 +35,7 @@ package io;
 import hla.rti13.java1.ArrayIndexOutOfBounds;
 import hla.rti13.java1.ReflectedAttributes;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @author rzm
@@ -45,38 +45,80 @@ import java.util.ArrayList;
  */
 public class ReflectedAttributes13 {
 
-	class HVPair {
-		int handle;
-		byte[] value;
-		HVPair(int handle, byte[] value) {
-			this.handle = handle;
-			this.value = value;
-		}
-	}
-	
-	private ArrayList<HVPair> pairs = new ArrayList<HVPair>();
+	private int[] handles;
+	private byte[][] values;
+	private int size;
 	
 	public ReflectedAttributes13(ReflectedAttributes attrs) {		
+		handles = new int[attrs.size()];
+		values = new byte[attrs.size()][];
 		try {
-			for (int i = 0; i < attrs.size(); i++) {
-				pairs.add(new HVPair(attrs.getHandle(i), attrs.getValue(i)));
+			for (int i = 0; i < handles.length; i++) {
+				handles[i] = attrs.getHandle(i);
+				values[i] = attrs.getValue(i);
+				size++;
 			}
 		}
 		catch (ArrayIndexOutOfBounds e) {}
 	}
 	
+	/**
+	 * Builds the reflection from the first <code>size</code> entries of
+	 * parallel handle and value arrays, the arrays themselves are not 
+	 * retained so the caller is free to re-use them.
+	 */
+	public ReflectedAttributes13(int[] handles, byte[][] values, int size) {
+		this.handles = Arrays.copyOf(handles, size);
+		this.values = Arrays.copyOf(values, size);
+		this.size = size;
+	}
+	
+	/**
+	 * An empty view, to be pointed at arrays with {@link #view}.
+	 */
+	public ReflectedAttributes13() {
+		this.handles = new int[0];
+		this.values = new byte[0][];
+	}
+	
+	/**
+	 * Points this reflection at the first <code>size</code> entries of 
+	 * parallel handle and value arrays <i>without</i> copying them, so a 
+	 * single instance can present many reflections without allocating. The
+	 * reflection is only valid until the arrays are next changed, anything
+	 * which keeps it must keep a {@link #copy()} instead.
+	 */
+	public void view(int[] handles, byte[][] values, int size) {
+		this.handles = handles;
+		this.values = values;
+		this.size = size;
+	}
+	
+	/**
+	 * @return a reflection holding its own copy of the handles and values
+	 */
+	public ReflectedAttributes13 copy() {
+		return new ReflectedAttributes13(handles, values, size);
+	}
+	
 	public int size() {
 		
-		return pairs.size();
+		return size;
 	}
 	
 	public byte[] getValue(int index) {
 		
-		return ((HVPair)pairs.get(index)).value;
+		return values[check(index)];
 	}
 	
 	public int getHandle(int index) {
 		
-		return ((HVPair)pairs.get(index)).handle;
+		return handles[check(index)];
+	}
+	
+	private int check(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return index;
 	}
 }
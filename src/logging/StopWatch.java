@@ -43,6 +43,7 @@ public class StopWatch {
 	private long total;
 	private long lastStart;
 	private long lastStop;
+	private int count;
 	
 	public StopWatch() {
 		
@@ -60,10 +61,27 @@ public class StopWatch {
 		
 		lastStop = System.currentTimeMillis();
 		total += lastStop - lastStart;
+		count++;
 	}
 	
 	public long getTotal() {
 		
 		return total;
 	}
+	
+	/**
+	 * @return the time between the most recent start and stop
+	 */
+	public long getLast() {
+		
+		return lastStop - lastStart;
+	}
+	
+	/**
+	 * @return the number of times the watch has been stopped
+	 */
+	public int getCount() {
+		
+		return count;
+	}
 }
\ No newline at end of file
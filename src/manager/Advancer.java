@@ -100,6 +100,17 @@ public abstract class Advancer implements LogicalTimeListener {
 	 */
 	public abstract double getTime();
 	
+	/**
+	 * Gives the lookahead this advancer declared to the RTI when becoming 
+	 * time-regulating. Every timestamped message sent by the federate must 
+	 * be stamped at least this far ahead of {@link #getTime()}.
+	 * 
+	 * @return the lookahead, 0 unless overridden
+	 */
+	public double getLookahead() {
+		return 0;
+	}
+	
 	/**
 	 * Called when the RTI has granted advance to the specified time. This will
 	 * be equal to or less than the most recently requested time advance target.
@@ -35,6 +35,7 @@ package manager;
 import io.DEV_TOOLS;
 import hla.rti13.java1.EncodingHelpers;
 import hla.rti13.java1.RTIexception;
+import logging.StopWatch;
 import rtidep.Threads;
 
 /**
@@ -46,11 +47,25 @@ public class Advancer13 extends Advancer {
 	private boolean regulating;
 	private boolean constrained;
 	
-	private boolean advancing = false;
+	/* volatile as the grant may be delivered on a pump thread */
+	protected volatile boolean advancing = false;
+	
+	/* time from each advance request to its grant */
+	protected StopWatch grantTimer = new StopWatch();
 	
 //	private RTIambassador amb;
-	private double time;
+	private volatile double time;
 	private double expectedTime;
+	
+	private Threads.Condition isConstrained = new Threads.Condition() {
+		public boolean holds() { return constrained; }
+	};
+	private Threads.Condition isRegulating = new Threads.Condition() {
+		public boolean holds() { return regulating; }
+	};
+	private Threads.Condition isGranted = new Threads.Condition() {
+		public boolean holds() { return !advancing; }
+	};
 
 	public Advancer13() throws RTIexception {		
 		time = 0;
@@ -61,15 +76,11 @@ public class Advancer13 extends Advancer {
 		
 		DEV_TOOLS.print("<Advancer13> starting initialise");
 		LocalManager.getRTI().enableTimeConstrained();
-		while (!constrained) {
-			Threads.RTI_SHORT_TICK();
-		}
+		Threads.RTI_WAIT(isConstrained);
 		/* current time, lookahead */
 		LocalManager.getRTI().enableTimeRegulation(	EncodingHelpers.encodeDouble(time), 
-													EncodingHelpers.encodeDouble(0));
-		while (!regulating) {
-			Threads.RTI_SHORT_TICK();
-		}
+													EncodingHelpers.encodeDouble(getLookahead()));
+		Threads.RTI_WAIT(isRegulating);
 		DEV_TOOLS.print("<Advancer13> done initialise");
 	}
 	
@@ -79,8 +90,7 @@ public class Advancer13 extends Advancer {
 			while (getTime() != expectedTime) {
 				if (!advancing)
 					advanceTo(time, false);
-				else
-					Threads.RTI_SHORT_TICK();
+				Threads.RTI_WAIT(isGranted);
 			}
 		}
 		else {
@@ -89,9 +99,70 @@ public class Advancer13 extends Advancer {
 		}
 	}
 	
+	/**
+	 * Asks the RTI to advance to the given time without waiting for, or 
+	 * ticking to receive, the grant. Does nothing if an advance is already 
+	 * in progress or the time has already been reached.
+	 */
+	public void requestAdvance(double time) throws RTIexception {
+		if (advancing || time <= getTime())
+			return;
+		expectedTime = time;
+		advanceTo(EncodingHelpers.encodeDouble(time));
+	}
+	
+	/**
+	 * @return true if an advance has been requested and not yet granted
+	 */
+	public boolean isAdvancing() {
+		return advancing;
+	}
+	
+	/**
+	 * Used by optimistic federates, which execute ticks ahead of the time 
+	 * they have been granted. Asks the RTI to deliver all queued events and
+	 * advance as far as the given time (flushQueueRequest) and returns 
+	 * after a single tick, unless the granted time is more than 'window' 
+	 * behind, in which case it waits until it no longer is.
+	 */
+	public void advanceOptimistically(double time, double window) throws RTIexception {
+		if (!advancing && time > getTime())
+			flushQueue(time);
+		while (time - getTime() > window) {
+			if (!advancing)
+				flushQueue(time);
+			Threads.RTI_WAIT(isGranted);
+		}
+		Threads.RTI_LONG_TICK();
+	}
+	
+	protected void flushQueue(double time) throws RTIexception {
+		LocalManager.getRTI().flushQueueRequest(EncodingHelpers.encodeDouble(time));
+		advancing = true;
+		grantTimer.start();
+	}
+	
 	protected void advanceTo(byte[] serTime) throws RTIexception {		
 		LocalManager.getRTI().nextEventRequestAvailable(serTime);
 		advancing = true;
+		grantTimer.start();
+	}
+	
+	/**
+	 * @return the mean time (in milliseconds) between requesting an advance
+	 * 	and being granted it
+	 */
+	public double getMeanGrantLatency() {
+		if (grantTimer.getCount() == 0)
+			return 0;
+		return (double)grantTimer.getTotal() / grantTimer.getCount();
+	}
+	
+	/**
+	 * @return the number of time advance grants received
+	 */
+	public int getGrantCount() {
+		return grantTimer.getCount();
 	}
 	
 	public double getTime() {		
@@ -111,6 +182,8 @@ public class Advancer13 extends Advancer {
 	 */
 	public void grantTo(double newTime) {		
 		time = newTime;
+		if (advancing)
+			grantTimer.stop();
 		advancing = false;		
 	}
 	
@@ -30,13 +30,16 @@ This file is part of HLA_RePast.
 package manager;
 
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 
+import hla.rti13.java1.ArrayIndexOutOfBounds;
+import hla.rti13.java1.AttributeAcquisitionWasNotCanceled;
 import hla.rti13.java1.AttributeAcquisitionWasNotRequested;
 import hla.rti13.java1.AttributeAlreadyOwned;
 import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.AttributeNotDefined;
 import hla.rti13.java1.AttributeNotKnown;
 import hla.rti13.java1.AttributeNotOwned;
 import hla.rti13.java1.AttributeNotPublished;
@@ -44,6 +47,7 @@ import hla.rti13.java1.CouldNotDiscover;
 import hla.rti13.java1.EnableTimeConstrainedWasNotPending;
 import hla.rti13.java1.EnableTimeRegulationWasNotPending;
 import hla.rti13.java1.EncodingHelpers;
+import hla.rti13.java1.EventNotKnown;
 import hla.rti13.java1.EventRetractionHandle;
 import hla.rti13.java1.FederateAmbassador;
 import hla.rti13.java1.FederateInternalError;
@@ -52,6 +56,7 @@ import hla.rti13.java1.InvalidFederationTime;
 import hla.rti13.java1.NullFederateAmbassador;
 import hla.rti13.java1.ObjectClassNotKnown;
 import hla.rti13.java1.ObjectNotKnown;
+import hla.rti13.java1.RTIexception;
 import hla.rti13.java1.ReflectedAttributes;
 import hla.rti13.java1.TimeAdvanceWasNotInProgress;
 import io.DEV_TOOLS;
@@ -66,9 +71,21 @@ import io.ReflectedAttributes13;
  * an ownership grant). Because many RTIs are non-reentrant
  * we can't use the callback thread to do this. 
  * 
- * Instead we insert the appropriate handler (in the form of
- * a {@link Call} object) in to a synchronised queue which is
- * continually flushed on a separate thread.
+ * Instead we record the callback in a bounded, single-producer/
+ * single-consumer ring of pre-allocated {@link CallbackRecord}s 
+ * which is flushed by the thread that ticks the RTI (see 
+ * {@link LocalManager#flushCallbackBuffer()}). The records are
+ * re-used, so buffering a callback allocates nothing on the RTI's
+ * thread. If the ring fills up, further callbacks spill in to an 
+ * overflow list (preserving order) until it has been drained; the
+ * number of times this happens is counted so the capacity can be
+ * tuned (see {@link LocalManager#setCallbackCapacity(int)}). Spilled
+ * and held records are recycled rather than dropped.
+ * 
+ * Executing a callback doesn't allocate either: each record presents its
+ * attributes through a re-used {@link ReflectedAttributes13} view and 
+ * {@link AttributeHandleSet}, which are only valid for the duration of the
+ * handler (anything kept beyond it is copied by the handler).
  * 
  * This class also acts as the {@link FederateAmbassador} 
  * implementation in HLA_RePast, it is the only component to 
@@ -80,28 +97,309 @@ import io.ReflectedAttributes13;
  */
 class CallbackBuffer extends NullFederateAmbassador {
 
+	static final int DEFAULT_CAPACITY = 4096;
+	
+	/* the kinds of callback which are buffered */
+	static final int DISCOVER = 0;
+	static final int REFLECT = 1;
+	static final int REMOVE = 2;
+	static final int REFRESH = 3;
+	static final int ACQUIRED = 4;
+	static final int UNAVAILABLE = 5;
+	static final int RELEASE_REQUEST = 6;
+	static final int RETRACTION = 7;
+	static final int IN_SCOPE = 8;
+	static final int OUT_OF_SCOPE = 9;
+	static final int REFLECT_RECEIVED = 10;
+	static final int CANCELLED = 11;
+	
 	private boolean timeLogging;
 	private boolean updateLogging;
 	private boolean ownershipLogging;	
 
-	private List<Call> callbacks = new LinkedList<Call>();
+	/* the ring itself, head is only written by the consumer and tail only
+	 * by the producer */
+	private final CallbackRecord[] slots;
+	private final int mask;
+	private volatile long head = 0;
+	private volatile long tail = 0;
+	
+	/* slow path, only used when the ring is full, spilled records are 
+	 * handed back to the producer through spillSpares. Both are guarded by
+	 * spill */
+	private final ArrayDeque<CallbackRecord> spill = new ArrayDeque<CallbackRecord>();
+	private final ArrayDeque<CallbackRecord> spillSpares = new ArrayDeque<CallbackRecord>();
+	private volatile boolean spilling = false;
+	
+	/* consumer-side copies of the records being executed, so the slot can
+	 * be handed back to the producer before the handler runs. There is one
+	 * per level of dispatch, a handler which flushes the buffer again gets 
+	 * the next rather than overwriting the one its caller is reading */
+	private final ArrayList<CallbackRecord> frames = new ArrayList<CallbackRecord>();
+	private int depth = 0;
+	
+	/* consumer side: callbacks held back while parallel actions run, and
+	 * the records to hold them in */
+	private final ArrayDeque<CallbackRecord> held = new ArrayDeque<CallbackRecord>();
+	private final ArrayDeque<CallbackRecord> heldSpares = new ArrayDeque<CallbackRecord>();
+	
+	private volatile int peakDepth = 0;
+	private volatile long overflows = 0;
+	private volatile long processed = 0;
 	
 	private LocalManager manager;
 	
 	public CallbackBuffer(LocalManager manager) {
+		this(manager, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param manager the manager the buffered callbacks are delivered to
+	 * @param capacity the number of pre-allocated records in the ring, this
+	 * is rounded up to the next power of two.
+	 */
+	public CallbackBuffer(LocalManager manager, int capacity) {
 		this.manager = manager;
+		int size = 1;
+		while (size < capacity)
+			size <<= 1;
+		slots = new CallbackRecord[size];
+		for (int i = 0; i < size; i++)
+			slots[i] = new CallbackRecord();
+		mask = size - 1;
 	}
 
 	public boolean isEmpty() {	
-		return callbacks.isEmpty();
+		if (head != tail)
+			return false;
+		if (!spilling)
+			return true;
+		synchronized (spill) {
+			return spill.isEmpty();
+		}
 	}
 	
 	public void executeNext() {
-		callbacks.remove(0).execute();
+		CallbackRecord current = enter();
+		try {
+			if (!take(current))
+				return;
+			processed++;
+			dispatch(current);
+		}
+		finally {
+			leave(current);
+		}
 	}
-
-	protected void enque(Call c) {
-		callbacks.add(c);
+	
+	/**
+	 * Executes the waiting ownership answers, which parallel actions may be
+	 * blocked on, and holds back every other callback until 
+	 * {@link #executeHeld()} so that nothing the actions read is changed 
+	 * under them.
+	 */
+	public void executeOwnership() {
+		CallbackRecord current = enter();
+		try {
+			while (take(current)) {
+				if (current.kind == ACQUIRED || current.kind == UNAVAILABLE) {
+					processed++;
+					dispatch(current);
+				}
+				else {
+					CallbackRecord r = heldSpares.pollFirst();
+					if (r == null)
+						r = new CallbackRecord();
+					r.copy(current);
+					held.addLast(r);
+				}
+				current.clear();
+			}
+		}
+		finally {
+			leave(current);
+		}
+	}
+	
+	/**
+	 * Executes, in order of arrival, the callbacks held back by
+	 * {@link #executeOwnership()}.
+	 */
+	public void executeHeld() {
+		while (!held.isEmpty()) {
+			/* removed before it runs, so a re-entrant call can't see it */
+			CallbackRecord r = held.removeFirst();
+			processed++;
+			dispatch(r);
+			r.clear();
+			heldSpares.addLast(r);
+		}
+	}
+	
+	/* consumer side: the record for the next level of dispatch */
+	private CallbackRecord enter() {
+		if (depth == frames.size())
+			frames.add(new CallbackRecord());
+		return frames.get(depth++);
+	}
+	
+	private void leave(CallbackRecord current) {
+		current.clear();
+		depth--;
+	}
+	
+	/* consumer side: copies the next record in to 'current' */
+	private boolean take(CallbackRecord current) {
+		long h = head;
+		if (h != tail) {
+			current.copy(slots[(int)(h & mask)]);
+			slots[(int)(h & mask)].clear();
+			head = h + 1;
+			return true;
+		}
+		synchronized (spill) {
+			CallbackRecord r = spill.pollFirst();
+			if (r == null) {
+				spilling = false;
+				return false;
+			}
+			current.copy(r);
+			r.clear();
+			spillSpares.addLast(r);
+			if (spill.isEmpty())
+				spilling = false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of callbacks currently waiting to be executed
+	 */
+	int depth() {
+		int depth = (int)(tail - head);
+		if (spilling) {
+			synchronized (spill) {
+				depth += spill.size();
+			}
+		}
+		return depth;
+	}
+	
+	/**
+	 * @return the largest value {@link #depth()} has reached
+	 */
+	int peakDepth() {
+		return peakDepth;
+	}
+	
+	/**
+	 * @return the number of callbacks which did not fit in the ring and
+	 * had to be allocated in the overflow list
+	 */
+	long overflows() {
+		return overflows;
+	}
+	
+	/**
+	 * @return the total number of callbacks executed
+	 */
+	long processed() {
+		return processed;
+	}
+	
+	int capacity() {
+		return slots.length;
+	}
+	
+	/* producer side: obtain a record to fill in, this is a ring slot unless
+	 * the ring is full (or still has older records waiting in the overflow) */
+	private CallbackRecord claim(int kind) {
+		CallbackRecord r;
+		if (!spilling && tail - head < slots.length) {
+			r = slots[(int)(tail & mask)];
+			r.spilled = false;
+		}
+		else {
+			synchronized (spill) {
+				r = spillSpares.pollFirst();
+			}
+			if (r == null)
+				r = new CallbackRecord();
+			r.spilled = true;
+		}
+		r.kind = kind;
+		return r;
+	}
+	
+	/* producer side: make a claimed record visible to the consumer */
+	private void publish(CallbackRecord r) {
+		/* only the producer sets 'spilling', so a record claimed from the 
+		 * ring can always be published there */
+		if (!r.spilled) {
+			tail = tail + 1;
+		}
+		else {
+			synchronized (spill) {
+				spill.addLast(r);
+				spilling = true;
+			}
+			overflows++;
+		}
+		int depth = depth();
+		if (depth > peakDepth)
+			peakDepth = depth;
+	}
+	
+	private void dispatch(CallbackRecord r) {
+		try {
+			switch (r.kind) {
+			case DISCOVER:
+				manager.discoverInstance(r.object, r.objectClass);
+				break;
+			case REFLECT:
+				manager.reflectValues(	r.object, 
+										r.attributes(), 
+										r.time,
+										r.retraction,
+										r.arrived);
+				break;
+			case REFLECT_RECEIVED:
+				manager.reflectOnArrival(	r.object, 
+											r.attributes(), 
+											r.arrived);
+				break;
+			case REMOVE:
+				manager.removeInstance(r.object, r.time);
+				break;
+			case REFRESH:
+				manager.refreshRequest(r.object);
+				break;
+			case ACQUIRED:
+				manager.ownershipAcquired(r.object, r.toHandleSet());
+				break;
+			case UNAVAILABLE:
+				manager.ownershipFailed(r.object, r.toHandleSet());
+				break;
+			case RELEASE_REQUEST:
+				manager.releaseRequest(r.object, r.toHandleSet());
+				break;
+			case CANCELLED:
+				manager.acquisitionCancelled(r.object, r.toHandleSet());
+				break;
+			case RETRACTION:
+				manager.retractionRequested(r.retraction);
+				break;
+			case IN_SCOPE:
+				manager.scopeChanged(r.object, true);
+				break;
+			case OUT_OF_SCOPE:
+				manager.scopeChanged(r.object, false);
+				break;
+			}
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.showException("<CallbackBuffer::dispatch> kind " + r.kind, e);
+		}
 	}
 	
 	/////////////////////// FederateAmbassador implementation. /////////////////
@@ -120,19 +418,10 @@ class CallbackBuffer extends NullFederateAmbassador {
 			//				" / instance " + 
 			//				theObject);
 	
-		class DiscoverInstanceCall implements Call {
-			private int theObject;
-			private int theClass;
-			DiscoverInstanceCall(int o, int c) {
-				this.theObject = o;
-				this.theClass = c;
-			}
-			public void execute() {
-				manager.discoverInstance(this.theObject, this.theClass);
-			}
-		}
-	
-		enque(new DiscoverInstanceCall(theObject, theObjectClass));
+		CallbackRecord r = claim(DISCOVER);
+		r.object = theObject;
+		r.objectClass = theObjectClass;
+		publish(r);
 	}	
 
 	public void reflectAttributeValues(	int theObject,
@@ -147,24 +436,46 @@ class CallbackBuffer extends NullFederateAmbassador {
 													FederateInternalError {
 				
 		//printUpdateRelated("REFLECT: object: " + theObject + " time = " + EncodingHelpers.decodeDouble(theTime));
-		class ReflectValuesCall implements Call {
-			private int theObject;
-			private ReflectedAttributes13 theAttrs;
-			private double time;
-			ReflectValuesCall(int o, ReflectedAttributes13 attrs, double time) {
-				this.theObject = o;
-				this.theAttrs = attrs;
-				this.time = time;
-			}
-			public void execute() {
-				manager.reflectValues(this.theObject, this.theAttrs, this.time);
+		CallbackRecord r = claim(REFLECT);
+		r.object = theObject;
+		r.time = EncodingHelpers.decodeDouble(theTime);
+		r.retraction = retractionHandle;
+		r.arrived = System.nanoTime();
+		copyAttributes(r, attrs);
+		publish(r);
+	}
+	
+	/* receive ordered attributes (or any attributes if this federate isn't 
+	 * time constrained) arrive without a timestamp */
+	public void reflectAttributeValues(	int theObject,
+										ReflectedAttributes attrs,
+										String userTag)
+											throws 	ObjectNotKnown,
+													AttributeNotKnown,
+													FederateOwnsAttributes,
+													FederateInternalError {
+		
+		CallbackRecord r = claim(REFLECT_RECEIVED);
+		r.object = theObject;
+		r.arrived = System.nanoTime();
+		copyAttributes(r, attrs);
+		publish(r);
+	}
+	
+	private void copyAttributes(CallbackRecord r, ReflectedAttributes attrs) 
+		throws FederateInternalError {
+		try {
+			int size = attrs.size();
+			r.ensureCapacity(size);
+			for (int i = 0; i < size; i++) {
+				r.handles[i] = attrs.getHandle(i);
+				r.values[i] = attrs.getValue(i);
 			}
+			r.size = size;
+		}
+		catch (ArrayIndexOutOfBounds e) {
+			throw new FederateInternalError("ArrayIndexOutOfBounds: " + e.getMessage());
 		}
-
-		Call call = new ReflectValuesCall(	theObject, 
-											new ReflectedAttributes13(attrs),
-											EncodingHelpers.decodeDouble(theTime));
-		enque(call);
 	}
 
 	
@@ -177,24 +488,20 @@ class CallbackBuffer extends NullFederateAmbassador {
 			
 		//printUpdateRelated("removeObjectInstance object = " + theObject);
 		
-		class RemoveInstanceCall implements Call {
-			private int theObject;
-			private double time;
-			RemoveInstanceCall(int o, double time) {
-				this.theObject = o;
-				this.time = time;
-			}
-			public void execute() {
-				manager.removeInstance(this.theObject, this.time);
-			}
-		}
+		CallbackRecord r = claim(REMOVE);
+		r.object = theObject;
+		r.time = EncodingHelpers.decodeDouble(theTime);
+		publish(r);
+	}
 
-		enque(new RemoveInstanceCall(	
-									theObject, 
-									EncodingHelpers.decodeDouble(theTime)));
+	
+	public void requestRetraction(EventRetractionHandle theHandle)
+		throws EventNotKnown, FederateInternalError {
 		
+		CallbackRecord r = claim(RETRACTION);
+		r.retraction = theHandle;
+		publish(r);
 	}
-
 	
 	public void provideAttributeValueUpdate(int handle, AttributeHandleSet arg1)
 		throws
@@ -203,22 +510,31 @@ class CallbackBuffer extends NullFederateAmbassador {
 			AttributeNotOwned,
 			FederateInternalError {
 		
-			class RefreshValuesCall implements Call {
-				private int theObject;
-				RefreshValuesCall(int o) {
-					this.theObject = o;
-				}
-				public void execute() {
-					manager.refreshRequest(theObject);
-				}
-			}
-
-			Call call = new RefreshValuesCall(handle);
-			enque(call);
+		CallbackRecord r = claim(REFRESH);
+		r.object = handle;
+		publish(r);
 	}
 
 
 
+	/* only received for attributes in a routing space, when this federate
+	 * bounds a subscription by region (see ProxyList#setRegionOfInterest) */
+	public void attributesInScope(int theObject, AttributeHandleSet theAttributes)
+		throws ObjectNotKnown, AttributeNotKnown, FederateInternalError {
+		
+		CallbackRecord r = claim(IN_SCOPE);
+		r.object = theObject;
+		publish(r);
+	}
+	
+	public void attributesOutOfScope(int theObject, AttributeHandleSet theAttributes)
+		throws ObjectNotKnown, AttributeNotKnown, FederateInternalError {
+		
+		CallbackRecord r = claim(OUT_OF_SCOPE);
+		r.object = theObject;
+		publish(r);
+	}
+
 
 		////////////////////////// Object Ownership Methods ////////////////////////
 		///////////////// (note we only bother with 'pulling' negotiations) ////////
@@ -238,19 +554,7 @@ class CallbackBuffer extends NullFederateAmbassador {
 	
 		//printOwnershipRelated("attributeOwnershipAcquisition " + theObject);
 	
-		class OwnershipAcquisitionCall implements Call {
-			private int object;
-			private AttributeHandleSet attrs;
-			OwnershipAcquisitionCall(int ob, AttributeHandleSet attrs) {
-				this.object = ob;
-				this.attrs = (AttributeHandleSet)attrs.clone();
-			}
-			public void execute() {
-				manager.ownershipAcquired(this.object, this.attrs);
-			}
-		}
-	
-		enque(new OwnershipAcquisitionCall(theObject, securedAttributes));
+		enqueOwnership(ACQUIRED, theObject, securedAttributes);
 	}
 
 	public void 
@@ -264,18 +568,7 @@ class CallbackBuffer extends NullFederateAmbassador {
 	
 		//printOwnershipRelated("attributeOwnershipUnavailable " + theObject);
 	
-		class AcquisitionFailureCall implements Call {
-			private int object;
-			private AttributeHandleSet attrs;
-			AcquisitionFailureCall(int ob, AttributeHandleSet attrs) {
-				this.object = ob;
-				this.attrs = (AttributeHandleSet)attrs.clone();
-			}
-			public void execute() {
-				manager.ownershipFailed(this.object, this.attrs);
-			}
-		}	
-		enque(new AcquisitionFailureCall(theObject, theAttributes));
+		enqueOwnership(UNAVAILABLE, theObject, theAttributes);
 	}
 
 	public void 
@@ -287,19 +580,38 @@ class CallbackBuffer extends NullFederateAmbassador {
 				AttributeNotOwned, 
 				FederateInternalError {		
 		//printOwnershipRelated("requestAttributeOwnershipRelease " + theObject);	
-		class ReleaseRequestCall implements Call {
-			private int ob;
-			private AttributeHandleSet attrs;
-			ReleaseRequestCall(int ob, AttributeHandleSet attrs) {
-				this.ob = ob;
-				this.attrs = attrs;
-			}
-			public void execute() {
-				manager.releaseRequest(ob, attrs);
-			}
-		}
+		
+		enqueOwnership(RELEASE_REQUEST, theObject, candidateAttributes);
+	}
+	
+	public void 
+		confirmAttributeOwnershipAcquisitionCancellation(	int theObject, 
+															AttributeHandleSet theAttributes) 
+		throws 	ObjectNotKnown, 
+				AttributeNotKnown, 
+				AttributeNotDefined, 
+				AttributeAlreadyOwned, 
+				AttributeAcquisitionWasNotCanceled, 
+				FederateInternalError {
+		
+		enqueOwnership(CANCELLED, theObject, theAttributes);
+	}
 	
-		enque(new ReleaseRequestCall(theObject, candidateAttributes));
+	private void enqueOwnership(int kind, int theObject, AttributeHandleSet attrs) 
+		throws FederateInternalError {
+		CallbackRecord r = claim(kind);
+		r.object = theObject;
+		try {
+			int size = attrs.size();
+			r.ensureCapacity(size);
+			for (int i = 0; i < size; i++)
+				r.handles[i] = attrs.getHandle(i);
+			r.size = size;
+		}
+		catch (ArrayIndexOutOfBounds e) {
+			throw new FederateInternalError("ArrayIndexOutOfBounds: " + e.getMessage());
+		}
+		publish(r);
 	}
 
 		
@@ -333,6 +645,83 @@ class CallbackBuffer extends NullFederateAmbassador {
 	}
 	
 	
+	/*
+	 * A re-usable record of a single callback. Only the fields relevant to
+	 * the record's kind are meaningful, the attribute slice (handles, values,
+	 * size) is used by reflections and ownership callbacks and is grown on
+	 * demand, so in the steady state filling a record allocates nothing. 
+	 * The view and handle set handed to the handlers are created the first
+	 * time a record is executed and re-used after that.
+	 */
+	static class CallbackRecord {
+		int kind;
+		int object;
+		int objectClass;
+		double time;
+		long arrived;
+		int[] handles = new int[8];
+		byte[][] values = new byte[8][];
+		int size;
+		boolean spilled;
+		EventRetractionHandle retraction;
+		
+		private ReflectedAttributes13 view;
+		private AttributeHandleSet handleSet;
+		private int handleCapacity;
+		
+		void ensureCapacity(int n) {
+			if (handles.length < n) {
+				int newSize = Math.max(n, handles.length * 2);
+				handles = new int[newSize];
+				values = new byte[newSize][];
+			}
+		}
+		
+		void copy(CallbackRecord other) {
+			kind = other.kind;
+			object = other.object;
+			objectClass = other.objectClass;
+			time = other.time;
+			arrived = other.arrived;
+			retraction = other.retraction;
+			ensureCapacity(other.size);
+			System.arraycopy(other.handles, 0, handles, 0, other.size);
+			System.arraycopy(other.values, 0, values, 0, other.size);
+			size = other.size;
+		}
+		
+		/* drop references to attribute values so they can be collected */
+		void clear() {
+			retraction = null;
+			for (int i = 0; i < size; i++)
+				values[i] = null;
+			size = 0;
+		}
+		
+		/* the attribute slice as a reflection, valid until the record changes */
+		ReflectedAttributes13 attributes() {
+			if (view == null)
+				view = new ReflectedAttributes13();
+			view.view(handles, values, size);
+			return view;
+		}
+		
+		/* the attribute slice as a handle set, valid until the record changes */
+		AttributeHandleSet toHandleSet() throws RTIexception {
+			if (handleSet == null || handleCapacity < size) {
+				handleCapacity = Math.max(size, handles.length);
+				handleSet = LocalManager.getHandleSet(handleCapacity);
+			}
+			else {
+				handleSet.empty();
+			}
+			for (int i = 0; i < size; i++)
+				handleSet.add(handles[i]);
+			return handleSet;
+		}
+	}
+	
+	
 	
 	
 	//bottlenecked for easy turn-on/turn-off de-bugging
@@ -39,6 +39,7 @@ import io.DEV_TOOLS;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Hashtable;
 
@@ -213,7 +214,98 @@ public class ClassLookup {
 	 * @return the java Class associated with the handle in the local JVM
 	 */
 	public Class getClassFor(int handle) {
-		return handleToClass.get(handle).getClass();
+		return handleToClass.get(handle).theClass;
+	}
+
+	/**
+	 * Get the variables associated with the class with the given handle.
+	 * @param classHandle the RTI-assinged class handle (see 
+	 * 	{@link #getClassHandle(Class)})
+	 * @return the 'public' variables of the class, in slot order
+	 */
+	public String[] getVarNames(int classHandle) {
+		ClassTranslator trans = handleToClass.get(classHandle);
+		if (trans == null)
+			throw new IllegalArgumentException("class " + classHandle + " not registered");
+		else
+			return trans.getVarNames();
+	}
+	
+	/**
+	 * Get the table translating attribute handles of the given class in to
+	 * variable slots. A variable's slot is its position in the list returned
+	 * by {@link #getVarNames(Class)}, see {@link PublicObject#getVariable(int)}.
+	 * 
+	 * The table is indexed by attribute handle, so use {@link #slotOf(int[], int)}
+	 * rather than indexing it directly.
+	 * 
+	 * @param classHandle the RTI-assinged class handle (see 
+	 * 	{@link #getClassHandle(Class)})
+	 * @return the handle to slot table (built when the names are resolved)
+	 */
+	public int[] getSlotTable(int classHandle) {
+		ClassTranslator trans = handleToClass.get(classHandle);
+		if (trans == null)
+			throw new IllegalArgumentException("class " + classHandle + " not registered");
+		else
+			return trans.slotByHandle;
+	}
+	
+	/**
+	 * @see #getSlotTable(int)
+	 */
+	public int[] getSlotTable(Class c) {
+		return classToHandle.get(c).slotByHandle;
+	}
+	
+	/**
+	 * @param table a table obtained from {@link #getSlotTable(int)}
+	 * @param varHandle an RTI-assigned attribute handle
+	 * @return the slot for the attribute or -1 if it isn't a variable of the
+	 * 	table's class
+	 */
+	public static int slotOf(int[] table, int varHandle) {
+		if (varHandle < 0 || varHandle >= table.length)
+			return -1;
+		return table[varHandle];
+	}
+
+	/**
+	 * Get the attributes of the given class this federate subscribes to,
+	 * this is all of them unless the subscription has been narrowed (see
+	 * {@link #subscribeVariables(int, String[])}).
+	 * 
+	 * @param classHandle the RTI-assinged class handle (see 
+	 * 	{@link #getClassHandle(Class)})
+	 * @return the RTI-assigned handles of the subscribed attributes
+	 */
+	public int[] getSubscribedHandles(int classHandle) {
+		ClassTranslator trans = handleToClass.get(classHandle);
+		if (trans == null)
+			throw new IllegalArgumentException("class " + classHandle + " not registered");
+		else
+			return trans.subscribed.clone();
+	}
+	
+	/**
+	 * Replaces this federate's subscription to the given class with one to
+	 * just the given variables, so updates to the others are no longer 
+	 * reflected.
+	 * 
+	 * @param classHandle the RTI-assinged class handle (see 
+	 * 	{@link #getClassHandle(Class)})
+	 * @param varNames the variables to subscribe to, there must be at least
+	 * 	one
+	 * @throws RTIexception
+	 */
+	public void subscribeVariables(int classHandle, String[] varNames) throws RTIexception {
+		ClassTranslator trans = handleToClass.get(classHandle);
+		if (trans == null)
+			throw new IllegalArgumentException("class " + classHandle + " not registered");
+		int[] handles = new int[varNames.length];
+		for (int i = 0; i < varNames.length; i++)
+			handles[i] = trans.getHandle(varNames[i]);
+		trans.subscribe(LocalManager.getRTI(), handles);
 	}
 
 	/**
@@ -283,6 +375,12 @@ public class ClassLookup {
 		private Hashtable<String, Integer> nameToHandle;
 		private Hashtable<Integer, String> handleToName;
 		private String[] varNames;
+		
+		/* attribute handle -> index in varNames, -1 for unused handles */
+		private int[] slotByHandle = new int[0];
+		
+		/* the attribute handles currently subscribed to */
+		private int[] subscribed = new int[0];
 	
 		ClassTranslator(Class c, String HLAName, String[] varNames) {		
 			this.theClass = c;
@@ -305,11 +403,20 @@ public class ClassLookup {
 		}
 	
 		void resolveVariables(RTIambassador amb) throws RTIexception {		
-			for (String s : varNames) {
+			int[] handles = new int[varNames.length];
+			int maxHandle = -1;
+			for (int i = 0; i < varNames.length; i++) {
+				String s = varNames[i];
 				int handle = amb.getAttributeHandle(s, classHandle);
 				nameToHandle.put(s, handle);
 				handleToName.put(handle, s);
+				handles[i] = handle;
+				maxHandle = Math.max(maxHandle, handle);
 			}
+			slotByHandle = new int[maxHandle + 1];
+			Arrays.fill(slotByHandle, -1);
+			for (int i = 0; i < handles.length; i++)
+				slotByHandle[handles[i]] = i;
 		}
 		
 		/*
@@ -321,14 +428,25 @@ public class ClassLookup {
 		 */				
 		void notifyFed(RTIambassador amb) throws RTIexception {						
 			AttributeHandleSet handles = LocalManager.getHandleSet(varNames.length);
-			for (String var : varNames) {
-				handles.add(this.getHandle(var));
+			subscribed = new int[varNames.length];
+			for (int i = 0; i < varNames.length; i++) {
+				subscribed[i] = this.getHandle(varNames[i]);
+				handles.add(subscribed[i]);
 			}
 			amb.subscribeObjectClassAttributes(classHandle, handles);
 			Threads.RTI_LONG_TICK();
 			amb.publishObjectClass(classHandle, handles);
 			Threads.RTI_LONG_TICK();
 		}
+		
+		/* replaces the subscription, the class stays published in full */
+		void subscribe(RTIambassador amb, int[] attrs) throws RTIexception {
+			AttributeHandleSet handles = LocalManager.getHandleSet(attrs.length);
+			for (int handle : attrs)
+				handles.add(handle);
+			amb.subscribeObjectClassAttributes(classHandle, handles);
+			subscribed = attrs.clone();
+		}
 	
 		Class getContainedClass() {
 		
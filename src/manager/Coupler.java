@@ -71,6 +71,15 @@ public class Coupler implements LogicalTimeListener {
 	static String TS = "ts";
 	int tsHandle;
 	int fedexidInstHandle = -1;
+	
+	/* not used in coupling, carries bundled updates when bundling is on
+	 * (see LocalManager.setBundling) */
+	public static String BUNDLE = "bundle";
+	public static String BATCH = "batch";
+	/* not used in coupling, carries claims on exclusive variables when 
+	 * deterministic exclusion is on (see LocalManager.setDeterministicExclusion) */
+	public static String INTENT = "intent";
+	public static String CLAIMS = "claims";
 	  
 	boolean isLeader = false;
 	int numFederates;
@@ -124,6 +133,11 @@ public class Coupler implements LogicalTimeListener {
 	 * 		</ul>
 	 * 	</li>
 	 * </ul>
+	 * The .fed files shipped with HLA_RePast also declare a <code>bundle</code>
+	 * class (with a single <code>batch</code> attribute), which is only 
+	 * needed if update bundling is switched on, and an <code>intent</code>
+	 * class (with a single <code>claims</code> attribute), which is only
+	 * needed if deterministic exclusion is switched on.
 	 */
 	public void initialise() throws RTIexception {
 		
@@ -156,18 +170,27 @@ public class Coupler implements LogicalTimeListener {
 	 * @throws Exception
 	 */
 	public Timestamp finalise(double time) throws RTIexception {
+		return finalise(time, 0);
+	}
+	
+	/**
+	 * As {@link #finalise(double)} for a federate which is regulating with
+	 * a positive lookahead, the fedexid is sent (and waited for) at 
+	 * time + lookahead.
+	 */
+	public Timestamp finalise(double time, double lookahead) throws RTIexception {
 		
 		this.time = time;
 		
 		if (isLeader) {
-			while (numFederates > 0) {
-				Threads.RTI_LONG_TICK();
-			}
+			Threads.RTI_WAIT(new Threads.Condition() {
+				public boolean holds() { return numFederates <= 0; }
+			});
 			SuppliedAttributes supAtt = SuppliedAttributesFactory.create(1);
 			fedexid = new Timestamp(System.currentTimeMillis());
 			byte[] tsSerial = Bytes.getBytes(fedexid);
 			supAtt.add(tsHandle, tsSerial);
-			byte[] encTime = Bytes.getBytes(time);
+			byte[] encTime = Bytes.getBytes(time + lookahead);
 			fedexidInstHandle = 
 				LocalManager.getRTI().registerObjectInstance(fedexidHandle);
 			Threads.RTI_SHORT_TICK();
@@ -178,19 +201,22 @@ public class Coupler implements LogicalTimeListener {
 		}  	
 		else {
 			LocalManager.getRTI().registerObjectInstance(nodeHandle);
-			while (fedexidInstHandle == -1) {  			
-				Threads.RTI_SHORT_TICK();
-			}
+			Threads.RTI_WAIT(new Threads.Condition() {
+				public boolean holds() { return fedexidInstHandle != -1; }
+			});
 			DEV_TOOLS.print("discovered fedexidInstance");
-			NERACall(time);
+			NERACall(time + lookahead);
+			Threads.Condition grantOrId = new Threads.Condition() {
+				public boolean holds() { return granted || fedexid != null; }
+			};
 			while (fedexid == null) {
 				if (granted)
-					NERACall(time);
-				Threads.RTI_SHORT_TICK();
-			}
-			while (!granted) {
-				Threads.RTI_SHORT_TICK();
+					NERACall(time + lookahead);
+				Threads.RTI_WAIT(grantOrId);
 			}
+			Threads.RTI_WAIT(new Threads.Condition() {
+				public boolean holds() { return granted; }
+			});
 			DEV_TOOLS.print("follower finalised");
 		}
 		coupled = true;
@@ -270,6 +296,14 @@ public class Coupler implements LogicalTimeListener {
 		Threads.RTI_LONG_TICK();
 	}
 	
+	/**
+	 * @return the most recent time the coupler was granted to
+	 */
+	public double getTime() {
+		
+		return time;
+	}
+	
 	public boolean isCoupled() {
 		
 		return coupled;
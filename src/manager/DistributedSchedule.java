@@ -32,6 +32,13 @@ package manager;
 import io.DEV_TOOLS;
 import hla.rti13.java1.RTIexception;
 import logging.StopWatch;
+import rtidep.Pump;
+import rtidep.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uchicago.src.sim.engine.ActionQueue;
 import uchicago.src.sim.engine.BasicAction;
 import uchicago.src.sim.engine.Schedule;
 
@@ -59,6 +66,17 @@ public class DistributedSchedule extends Schedule {
 	
 	public static StopWatch repastTimer = new StopWatch();
 	public static StopWatch hlaTimer = new StopWatch();
+	/* the ownership reset at the start of each tick (part of hlaTimer) */
+	public static StopWatch resetTimer = new StopWatch();
+	/* pipelined mode: time the grant was being pumped for while the model's
+	 * thread did other work, and time still spent waiting for it afterwards */
+	public static StopWatch overlapTimer = new StopWatch();
+	public static StopWatch residualTimer = new StopWatch();
+	
+	private Pump pump = null;
+	private Threads.Condition isGranted = new Threads.Condition() {
+		public boolean holds() { return !advancer.isAdvancing(); }
+	};
 
 	/**
 	 * Create a DistributedSchedule that will use the given datastructures
@@ -95,6 +113,11 @@ public class DistributedSchedule extends Schedule {
 	 * external events to the local model (see the flushCall references below)
 	 */
 	public void preExecute() {
+		
+		if (LocalManager.isOptimistic()) {
+			optimisticPreExecute();
+			return;
+		}
 
 //		System.out.println("<DistributedSchedule> preExecute()");
 		
@@ -121,6 +144,16 @@ public class DistributedSchedule extends Schedule {
 			DEV_TOOLS.print("<DistributedSchedule.preExecute> advancing to " + nextEventTime);		
 			
 			hlaTimer.start();
+			if (pump != null && pump.isPumping()) {
+				/* the request for this time was made at the end of the last
+				 * tick, collect whatever the pump has received */
+				overlapTimer.stop();
+				residualTimer.start();
+				pump.await();
+				LocalManager.getManager().flushCallbackBuffer();
+				residualTimer.stop();
+			}
+			LocalManager.getManager().flushOutgoing();
 			advancer.advanceTo(nextEventTime, true);
 			hlaTimer.stop();
 		}
@@ -129,6 +162,140 @@ public class DistributedSchedule extends Schedule {
 		}
 	}
 	
+	/*
+	 * Sends this tick's updates, asks to advance to the next local event and
+	 * leaves the pump collecting the grant while the display is drawn. The
+	 * next preExecute picks up the result. Deletions and all other RTI calls
+	 * have been made by now: nothing but the pump may use the RTI until 
+	 * then.
+	 */
+	private void pipelineAdvance() {
+		double nextEventTime = Double.POSITIVE_INFINITY;
+		if (!actionQueue.isEmpty())
+			nextEventTime = actionQueue.peekMin().getNextTime();
+		if (!lastQueue.isEmpty())
+			nextEventTime = Math.min(nextEventTime, lastQueue.peekMin().getNextTime());
+		hlaTimer.start();
+		try {
+			LocalManager.getManager().flushOutgoing();
+			if (nextEventTime != Double.POSITIVE_INFINITY) {
+				advancer.requestAdvance(nextEventTime);
+				if (advancer.isAdvancing()) {
+					if (pump == null) {
+						pump = new Pump();
+						pump.start();
+					}
+					pump.pump(isGranted);
+					overlapTimer.start();
+				}
+			}
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.showException(e);
+		}
+		hlaTimer.stop();
+		
+		if (displayAction != null) {
+			repastTimer.start(); 
+			displayAction.execute();
+			repastTimer.stop();
+		}
+	}
+	
+	/*
+	 * The optimistic version of preExecute. The time of the next local event
+	 * is requested from the RTI but the tick is executed straight away unless
+	 * that would put it more than the optimism window ahead of the granted 
+	 * time. The state before each tick is checkpointed and if a straggler 
+	 * has been received (now or while executing an earlier tick) we roll 
+	 * back first.
+	 */
+	private void optimisticPreExecute() {
+		LocalManager manager = LocalManager.getManager();
+		TimeWarp timeWarp = manager.timeWarp;
+		hlaTimer.start();
+		try {
+			manager.flushOutgoing();
+			while (true) {
+				if (timeWarp.hasStraggler())
+					timeWarp.rollback(this);
+				double nextEventTime = Math.min(peekTime(actionQueue), peekTime(lastQueue));
+				if (nextEventTime == Double.POSITIVE_INFINITY) {
+					super.preExecute();
+					break;
+				}
+				timeWarp.checkpoint(nextEventTime, this);
+				super.preExecute();
+				DEV_TOOLS.print("<DistributedSchedule.preExecute> optimistically executing " + nextEventTime);
+				advancer.advanceOptimistically(nextEventTime, LocalManager.OPTIMISM_WINDOW);
+				if (!timeWarp.hasStraggler()) {
+					timeWarp.setLocalTime(nextEventTime);
+					timeWarp.fossilCollect(advancer.getTime());
+					break;
+				}
+			}
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.showException(e);
+		}
+		hlaTimer.stop();
+	}
+	
+	private static double peekTime(ActionQueue q) {
+		if (q.isEmpty())
+			return Double.POSITIVE_INFINITY;
+		return q.peekMin().getNextTime();
+	}
+	
+	/**
+	 * The contents of the schedule's queues at some tick, so that it can be
+	 * put back if the federate rolls back.
+	 */
+	static class ScheduleState {
+		double ticks;
+		ArrayList<BasicAction> actions = new ArrayList<BasicAction>();
+		ArrayList<Double> actionTimes = new ArrayList<Double>();
+		ArrayList<BasicAction> last = new ArrayList<BasicAction>();
+		ArrayList<Double> lastTimes = new ArrayList<Double>();
+	}
+	
+	ScheduleState saveState() {
+		ScheduleState st = new ScheduleState();
+		st.ticks = ticks;
+		copy(actionQueue, st.actions, st.actionTimes);
+		copy(lastQueue, st.last, st.lastTimes);
+		return st;
+	}
+	
+	void restoreState(ScheduleState st) {
+		if (groupToExecute != null)
+			groupToExecute.clear();
+		preExecuted = false;
+		ticks = st.ticks;
+		refill(actionQueue, st.actions, st.actionTimes);
+		refill(lastQueue, st.last, st.lastTimes);
+	}
+	
+	/* ActionQueue has no iterator, so the heap is emptied and rebuilt */
+	private static void copy(ActionQueue q, ArrayList<BasicAction> actions, ArrayList<Double> times) {
+		while (!q.isEmpty()) {
+			BasicAction a = q.popMin();
+			actions.add(a);
+			times.add(a.getNextTime());
+		}
+		for (BasicAction a : actions)
+			q.insert(a);
+	}
+	
+	private static void refill(ActionQueue q, ArrayList<BasicAction> actions, ArrayList<Double> times) {
+		q.clear();
+		for (int i = 0; i < actions.size(); i++) {
+			BasicAction a = actions.get(i);
+			a.setNextTime(times.get(i));
+			q.insert(a);
+		}
+	}
+	
 	public void execute() {
 		
 		//this is exactly the same as the normal Schedule class' execute
@@ -158,7 +325,7 @@ public class DistributedSchedule extends Schedule {
 		hlaTimer.stop();		
 		/* at this point all those events have been applied in the local model */
 		
-		if (displayAction != null) {
+		if (displayAction != null && !LocalManager.isPipelined()) {
 			repastTimer.start(); 
 			displayAction.execute();
 			repastTimer.stop();
@@ -190,9 +357,23 @@ public class DistributedSchedule extends Schedule {
 		repastTimer.stop();
 		/* at this point all local events at 'now' have been executed */
 		
+		if (LocalManager.isPipelined())
+			pipelineAdvance();
+		
 		preExecuted = false;		
 	}
 	
+	/**
+	 * Schedules the named method to be called on every object in the list 
+	 * each interval, with the calls spread over several threads. The calls
+	 * must be independent of each other (see {@link ParallelAction}).
+	 */
+	public BasicAction scheduleActionAtIntervalParallel(double interval, 
+														List<?> list, 
+														String methodName) {
+		return scheduleActionAtInterval(interval, new ParallelAction(list, methodName));
+	}
+	
 	/**
 	 * This allows for the scheduling of a single BasicAction that should be used
 	 * for refreshing the display surface during a gui-based run. It is extremely 
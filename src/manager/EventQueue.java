@@ -32,13 +32,20 @@ This file is part of HLA_RePast.
  */
 package manager;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import hla.rti13.java1.EventRetractionHandle;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
 
 /**
  * Just a logical-time sorted queue of events.
  * 
+ * Events are held in a binary heap ordered on their logical time, 
+ * ties being broken by order of arrival. Enqueueing and dequeueing
+ * are therefore O(log n) rather than requiring a re-sort of the
+ * whole queue on every insertion.
+ * 
  * This version is <b>not</b> thread-safe and should
  * only be used in single-threaded execution models.
  * 
@@ -47,21 +54,42 @@ import java.util.List;
  */
 class EventQueue {
 
-	private List<LoggedCall> events;
+	private PriorityQueue<LoggedCall> events;
 	private double lastTime = Double.POSITIVE_INFINITY;
+	private long arrivals = 0;
+	
+	/* every event already executed, retractable or not, only kept for 
+	 * optimistic federates which may need to execute them again after a 
+	 * rollback */
+	private LinkedList<LoggedCall> history = null;
 	
 	protected EventQueue() {	
-		events = new ArrayList<LoggedCall>();
+		events = new PriorityQueue<LoggedCall>();
 	}
 
 	protected int size() {
 		return events.size();
 	}
 	
-	@SuppressWarnings("unchecked")
 	protected void enque(Call c, double logTime) {
-		events.add(new LoggedCall(c, logTime));
-		Collections.sort(events);
+		events.add(new LoggedCall(c, logTime, arrivals++));
+	}
+	
+	/**
+	 * Enqueues a timestamped event which the sender may later retract.
+	 */
+	protected void enque(Call c, double logTime, EventRetractionHandle retraction) {
+		LoggedCall lc = new LoggedCall(c, logTime, arrivals++);
+		lc.retraction = retraction;
+		events.add(lc);
+	}
+	
+	/**
+	 * Start (or stop) remembering the events which have been executed, see
+	 * {@link #replayFrom(double)}.
+	 */
+	protected void keepHistory(boolean keep) {
+		history = keep ? new LinkedList<LoggedCall>() : null;
 	}
 
 	protected boolean isEmpty() {	
@@ -69,7 +97,7 @@ class EventQueue {
 	}
 
 	protected double peekTime() {	
-		return ((LoggedCall)events.get(0)).getTime();
+		return events.peek().getTime();
 	}
 	
 	protected double findLast() {
@@ -77,17 +105,129 @@ class EventQueue {
 	}
 
 	protected Call next() {
-		LoggedCall next = (LoggedCall)events.remove(0);
+		LoggedCall next = events.poll();
 		lastTime = next.logTime;
 		return next;
 	}
+	
+	/**
+	 * Executes, in timestamp order, every queued event with a logical
+	 * time less than or equal to the given time. Events enqueued by
+	 * the executing calls themselves are also drained if they fall
+	 * within the bound. Events stamped later than the bound stay queued
+	 * until a drain reaches them.
+	 * 
+	 * @param time the (inclusive) upper bound on the events to execute
+	 * @return the number of events executed
+	 */
+	protected int drainUpTo(double time) {
+		int drained = 0;
+		while (!events.isEmpty() && events.peek().getTime() <= time) {
+			LoggedCall next = events.peek();
+			next().execute();
+			if (history != null) {
+				next.appliedAt = time;
+				history.addLast(next);
+			}
+			drained++;
+		}
+		return drained;
+	}
+	
+	/**
+	 * Removes the event with the given retraction handle. 
+	 * 
+	 * @return the time at which the event was executed, if it already had
+	 * 	been (and is still remembered), otherwise NaN
+	 */
+	protected double retract(EventRetractionHandle retraction) {
+		for (Iterator<LoggedCall> it = events.iterator(); it.hasNext(); ) {
+			if (retraction.equals(it.next().retraction)) {
+				it.remove();
+				return Double.NaN;
+			}
+		}
+		if (history != null) {
+			for (Iterator<LoggedCall> it = history.iterator(); it.hasNext(); ) {
+				LoggedCall lc = it.next();
+				if (retraction.equals(lc.retraction)) {
+					it.remove();
+					return lc.appliedAt;
+				}
+			}
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * Puts back in to the queue every remembered event which was executed
+	 * at or after the given time.
+	 * 
+	 * @return the number of events re-queued
+	 */
+	protected int replayFrom(double time) {
+		if (history == null)
+			return 0;
+		int replayed = 0;
+		while (!history.isEmpty() && history.getLast().appliedAt >= time) {
+			events.add(history.removeLast());
+			replayed++;
+		}
+		return replayed;
+	}
+	
+	/**
+	 * Forgets the events executed before the given time, they can no longer
+	 * be rolled back.
+	 */
+	protected void forget(double time) {
+		if (history == null)
+			return;
+		while (!history.isEmpty() && history.getFirst().appliedAt < time)
+			history.removeFirst();
+	}
 
-	class LoggedCall implements Call, Comparable {		
+	/*
+	 * Checks the draining order: events are executed in timestamp order,
+	 * ties in order of arrival, and an event stamped later than the bound 
+	 * stays queued until a later drain reaches it.
+	 */
+	public static void main(String[] args) {
+		final StringBuilder log = new StringBuilder();
+		EventQueue q = new EventQueue();
+		String[] names = {"c@2", "a@1", "later@3", "b@1"};
+		double[] times = {2, 1, 3, 1};
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			q.enque(new Call() {
+				public void execute() {
+					log.append(name).append(' ');
+				}
+			}, times[i]);
+		}
+		int first = q.drainUpTo(2);
+		check("drained to 2", first == 3 && log.toString().equals("a@1 b@1 c@2 "), log);
+		check("later event kept", q.size() == 1 && q.peekTime() == 3, log);
+		int second = q.drainUpTo(3);
+		check("drained to 3", second == 1 && q.isEmpty() && log.toString().endsWith("later@3 "), log);
+		System.out.println("EventQueue OK");
+	}
+	
+	private static void check(String what, boolean ok, StringBuilder log) {
+		if (!ok)
+			throw new IllegalStateException(what + " failed, executed: " + log);
+	}
+
+	class LoggedCall implements Call, Comparable<LoggedCall> {		
 		Call c;
 		double logTime;
-		LoggedCall(Call c, double logTime) {
+		long sequence;
+		EventRetractionHandle retraction;
+		double appliedAt;
+		LoggedCall(Call c, double logTime, long sequence) {
 			this.c = c;
 			this.logTime = logTime;
+			this.sequence = sequence;
 		}
 		public void execute() {
 			c.execute();
@@ -96,14 +236,17 @@ class EventQueue {
 		double getTime() {
 			return logTime;
 		}
-		public int compareTo(Object o) {
-			double otherTime = ((LoggedCall)o).getTime();
-			if (otherTime > logTime)
+		public int compareTo(LoggedCall o) {
+			if (logTime < o.logTime)
+				return -1;
+			else if (logTime > o.logTime)
 				return 1;
-			else if (otherTime == logTime)
-				return 0;
-			else
+			else if (sequence < o.sequence)
 				return -1;
+			else if (sequence > o.sequence)
+				return 1;
+			else
+				return 0;
 		}
 	}
 }
@@ -31,6 +31,7 @@ package manager;
 
 import hla.rti13.java1.AttributeHandleSet;
 import hla.rti13.java1.AttributeHandleSetFactory;
+import hla.rti13.java1.EventRetractionHandle;
 import hla.rti13.java1.FederateInternalError;
 import hla.rti13.java1.FederateNotExecutionMember;
 import hla.rti13.java1.FederatesCurrentlyJoined;
@@ -48,11 +49,14 @@ import hla.rti13.java1.ValueCountExceeded;
 import io.DEV_TOOLS;
 import io.ReflectedAttributes13;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.List;
 
 import exceptions.BadClassException;
@@ -63,8 +67,13 @@ import exceptions.ObjectNotFoundException;
 import logging.DBLogger;
 import logging.Logger;
 import object.ObjectLookup;
+import object.OwnershipRequest;
 import object.ProxyList;
 import object.PublicObject;
+import object.variables.PublicVariable;
+import object.variables.ViewableVariable;
+import rtidep.Pump;
+import rtidep.Threads;
 import uchicago.src.sim.engine.SimEvent;
 import uchicago.src.sim.engine.SimEventListener;
 import uchicago.src.sim.engine.SimModel;
@@ -97,9 +106,21 @@ public class LocalManager implements SimEventListener {
 	public static RTIambassador getRTI() throws IllegalStateException {
 		if (singletonManager == null)
 			throw new IllegalStateException("LocalManager class not yet initialised");
+		checkNotPumping();
 		return singletonManager.rtiAmb;
 	}
 
+	/*
+	 * Every use of the RTI from outside the pump comes through here, see 
+	 * setPipelined.
+	 */
+	private static void checkNotPumping() throws IllegalStateException {
+		if (Threads.isPumping())
+			throw new IllegalStateException("the RTI is being ticked for the " +
+					"next grant while pipelined: it cannot be used from the " +
+					"display action, use an ordinary action instead");
+	}
+
 	/**
 	 * The IPv4 address of the host machine.
 	 */
@@ -133,6 +154,444 @@ public class LocalManager implements SimEventListener {
 		LAZY_DELETION = lazy;
 	}
 	
+	public static boolean isLazyDeletion() {
+		return LAZY_DELETION;
+	}
+	
+	/* watch for collected objects on a separate thread */
+	static boolean BACKGROUND_REAPING = false;
+	
+	/**
+	 * With lazy deletion on, collected objects are normally found by polling
+	 * at the end of each tick. If background reaping is on, a daemon thread
+	 * waits for them instead and passes them to the model's thread to be 
+	 * deleted at the end of the tick. This must be set before the manager
+	 * is created to have any effect.
+	 * 
+	 * @see #setLazyDeletion(boolean)
+	 */
+	public static void setBackgroundReaping(boolean reaping) {
+		BACKGROUND_REAPING = reaping;
+	}
+	
+	public static boolean isBackgroundReaping() {
+		return BACKGROUND_REAPING;
+	}
+	
+	/* coalesce attribute updates and send them once per tick */
+	static boolean WRITE_BEHIND = false;
+	
+	/**
+	 * In write-behind mode changes to {@link object.variables.PublicVariable}s are not sent
+	 * to the RTI as they happen, instead one update per changed object is 
+	 * sent at the end of each tick, just before the federate requests its
+	 * next time advance. A variable set several times in a tick is only 
+	 * sent once (with its latest value, or for a 
+	 * {@link object.variables.CumulativeVariable} the sum of the 
+	 * modifications).
+	 */
+	public static void setWriteBehind(boolean writeBehind) {
+		WRITE_BEHIND = writeBehind;
+	}
+	
+	public static boolean isWriteBehind() {
+		return WRITE_BEHIND || BUNDLING;
+	}
+	
+	/* send all of a tick's updates in a single bundle message */
+	static boolean BUNDLING = false;
+	
+	/**
+	 * When bundling is on, the updates made by this federate in a tick 
+	 * (coalesced as in write-behind mode, which bundling implies) are packed
+	 * in to a single message sent on the federate's instance of the 
+	 * HLA_RePast <code>bundle</code> class, rather than one message per 
+	 * object. Receivers unpack the bundle so the model sees the same updates.
+	 * 
+	 * Every federate receives the whole bundle, so the savings of a 
+	 * routing space are lost and the two can't be used together. Receivers
+	 * still only apply the variables their proxies subscribe to, and 
+	 * entries for objects they don't know are dropped and counted (see 
+	 * {@link #getBundleEntriesDropped()}).
+	 * 
+	 * The .fed file must declare the <code>bundle</code> class (see 
+	 * {@link Coupler#initialise()}) and this must be set before the 
+	 * manager is created.
+	 * 
+	 * @throws IllegalStateException if a routing space is set
+	 */
+	public static void setBundling(boolean bundling) {
+		if (bundling && isRegionRouting())
+			throw new IllegalStateException("bundled updates are not routed, " + 
+					"bundling can't be used with a routing space");
+		BUNDLING = bundling;
+	}
+	
+	public static boolean isBundling() {
+		return BUNDLING;
+	}
+	
+	/* keep uncontested ownership for up to this many idle ticks */
+	static int LEASE_TICKS = 0;
+	
+	/**
+	 * Normally ownership of every {@link object.variables.ExclusiveVariable} 
+	 * and {@link object.variables.CumulativeVariable} written in a tick is 
+	 * given up at the start of the next tick, and acquired again on the 
+	 * next write. With a lease, ownership is kept across ticks until 
+	 * another federate asks for it or it has not been used for the given 
+	 * number of ticks, so a variable only one federate writes costs one
+	 * acquisition rather than one per tick.
+	 * 
+	 * A federate which finds a variable is leased by another asks the 
+	 * holder to release it. A refused cumulative variable is always a 
+	 * lease, but a refused exclusive variable may be owned because the 
+	 * holder is writing it this tick, so it is only asked for once it has
+	 * been refused in ticks at least two apart. Requests still unanswered 
+	 * at the end of the tick are cancelled, and a variable acquired after
+	 * the tick it was asked for has passed is given straight back. The 
+	 * holder gives it up straight away, unless 
+	 * it is an exclusive variable the holder has written in its current 
+	 * tick, in which case the asker is excluded and the variable is given
+	 * up at the start of the holder's next tick. How often this happens
+	 * for each variable is counted (see 
+	 * {@link object.variables.PublicVariable#getContention()}).
+	 * 
+	 * @param idleTicks the number of ticks ownership is kept without being
+	 * 	used, 0 (the default) turns leases off
+	 */
+	public static void setOwnershipLease(int idleTicks) {
+		LEASE_TICKS = idleTicks;
+	}
+	
+	public static int getOwnershipLease() {
+		return LEASE_TICKS;
+	}
+	
+	public static boolean isLeasing() {
+		return LEASE_TICKS > 0;
+	}
+	
+	/* send cumulative modifications as deltas, without ownership */
+	static boolean COMMUTATIVE_CUMULATIVES = false;
+	
+	/**
+	 * Since modifications to a {@link object.variables.CumulativeVariable}
+	 * commute, they do not need ownership. With commutative cumulatives on,
+	 * each federate sums its modifications to each cumulative variable over
+	 * a tick and sends the sums at the end of the tick, in a single bundle 
+	 * on its own instance of the HLA_RePast <code>bundle</code> class. 
+	 * Receivers add the deltas to their copies in timestamp order, so once 
+	 * every federate has been granted past the last modification all 
+	 * copies of a {@link object.variables.CumulativeInteger} or 
+	 * {@link object.variables.CumulativeLong} hold the same value. This is
+	 * not true of {@link object.variables.CumulativeDouble}: a federate adds
+	 * its own modifications at once and deltas with the same timestamp in 
+	 * the order they arrive, and since floating point addition is not 
+	 * associative copies may differ by rounding error.
+	 * 
+	 * A federate sees its own modifications at once and other federates' 
+	 * modifications after the next grant. The .fed file must declare the
+	 * <code>bundle</code> class (see {@link Coupler#initialise()}), all 
+	 * federates must use the same setting and it must be set before the 
+	 * manager is created.
+	 */
+	public static void setCommutativeCumulatives(boolean commutative) {
+		COMMUTATIVE_CUMULATIVES = commutative;
+	}
+	
+	public static boolean isCommutativeCumulatives() {
+		return COMMUTATIVE_CUMULATIVES;
+	}
+	
+	/* resolve exclusive writes by claims rather than ownership */
+	static boolean DETERMINISTIC_EXCLUSION = false;
+	
+	/**
+	 * Ownership management is not synchronised with logical time, so two
+	 * federates writing an {@link object.variables.ExclusiveVariable} in 
+	 * the same tick can both be excluded, and every contested write blocks
+	 * while ownership is negotiated. With deterministic exclusion on, a 
+	 * write is instead sent (with the rest of the tick's writes) as a 
+	 * claim stamped with the current tick. Once granted past that tick 
+	 * every federate has all the claims for it and applies the same 
+	 * winner to each variable: the claim of the lowest ranked federate, 
+	 * then the earliest claim. No ownership is requested and only a write
+	 * which loses to another write in the same tick is excluded.
+	 * 
+	 * Writes are therefore not visible, even locally, until the tick after
+	 * they are made, and are never refused with an 
+	 * {@link exceptions.ExcludedException}: the outcome can be read from 
+	 * {@link object.variables.ExclusiveVariable#getClaim()}. The .fed file
+	 * must declare the <code>intent</code> class (see 
+	 * {@link Coupler#initialise()}), all federates must use the same 
+	 * setting and it must be set before the manager is created. It is 
+	 * ignored if the federate is optimistic.
+	 */
+	public static void setDeterministicExclusion(boolean deterministic) {
+		DETERMINISTIC_EXCLUSION = deterministic;
+	}
+	
+	public static boolean isDeterministicExclusion() {
+		return DETERMINISTIC_EXCLUSION && !OPTIMISTIC;
+	}
+	
+	/* route updates by region in this space, null to send them everywhere */
+	static String ROUTING_SPACE = null;
+	static Rectangle ROUTING_BOUNDS = null;
+	
+	/**
+	 * By default every federate subscribes to every attribute of every 
+	 * class, so it reflects every update made anywhere in the federation.
+	 * With a routing space set, HLA data distribution management is used
+	 * for the attributes the .fed file puts in that space: each locally 
+	 * registered object with a spatial key (see 
+	 * {@link PublicObject#getSpatialKey()}) sends its updates in a region 
+	 * which follows the key as it is written, and a {@link ProxyList} given
+	 * a region of interest (see 
+	 * {@link ProxyList#setRegionOfInterest(Rectangle)}) only reflects the 
+	 * updates of objects inside it. Proxy lists without a region of 
+	 * interest still see everything.
+	 * 
+	 * The space must be declared in the .fed file with dimensions named
+	 * <code>x</code> and <code>y</code>, and the attributes to be routed
+	 * must name it. The bounds are the model coordinates the space covers,
+	 * eg. the size of the grid, positions outside them are treated as 
+	 * being on the nearest edge. Updates sent by a federate which has 
+	 * acquired an attribute of another federate's object are not routed. 
+	 * This must be set before the manager is created.
+	 * 
+	 * @param space the name of the routing space, null to route nothing
+	 * @param bounds the area of the model the space covers
+	 * @throws IllegalStateException if bundling is on, bundles are not 
+	 * 	routed (see {@link #setBundling(boolean)})
+	 */
+	public static void setRoutingSpace(String space, Rectangle bounds) {
+		if (BUNDLING && space != null && bounds != null)
+			throw new IllegalStateException("bundled updates are not routed, " + 
+					"a routing space can't be used with bundling");
+		ROUTING_SPACE = space;
+		ROUTING_BOUNDS = bounds == null ? null : new Rectangle(bounds);
+	}
+	
+	public static String getRoutingSpace() {
+		return ROUTING_SPACE;
+	}
+	
+	public static Rectangle getRoutingBounds() {
+		return ROUTING_BOUNDS == null ? null : new Rectangle(ROUTING_BOUNDS);
+	}
+	
+	public static boolean isRegionRouting() {
+		return ROUTING_SPACE != null && ROUTING_BOUNDS != null;
+	}
+	
+	/* per-class variables whose updates are sent receive ordered or best 
+	 * effort rather than as the .fed file declares */
+	static Hashtable<Class<?>, String[]> RECEIVE_ORDERED = new Hashtable<Class<?>, String[]>();
+	static Hashtable<Class<?>, String[]> BEST_EFFORT = new Hashtable<Class<?>, String[]>();
+	
+	/**
+	 * Normally every reflected update is held in the timestamp ordered 
+	 * event queue until the grant to its tick. Updates to attributes with
+	 * receive ordering instead take a fast path and are applied to the 
+	 * proxy as soon as they arrive, which suits variables only used for
+	 * display, like the positions of remote agents. Receive ordering can be
+	 * declared for an attribute in the .fed file, or set here for the 
+	 * instances of a class this federate registers, overriding the .fed 
+	 * file.
+	 * 
+	 * Only {@link object.variables.ViewableVariable}s can be receive 
+	 * ordered, others are ignored, since exclusive and cumulative variables
+	 * need their updates in timestamp order. A receive ordered value can be
+	 * seen before the tick it was sent for. Must be set before objects of 
+	 * the class are registered.
+	 * 
+	 * @param c the class of the objects
+	 * @param varNames the variables to send receive ordered, an empty array
+	 * 	to go back to the .fed file's ordering
+	 * @see #getMeanArrivalLatency()
+	 */
+	public static void setReceiveOrdered(Class<?> c, String[] varNames) {
+		RECEIVE_ORDERED.put(c, varNames.clone());
+	}
+	
+	public static String[] getReceiveOrdered(Class<?> c) {
+		String[] vars = RECEIVE_ORDERED.get(c);
+		return vars == null ? new String[0] : vars.clone();
+	}
+	
+	/**
+	 * Sends updates to the given variables of the instances of a class 
+	 * this federate registers best effort, so they may be lost, overriding
+	 * the .fed file. As with {@link #setReceiveOrdered(Class, String[])} 
+	 * only {@link object.variables.ViewableVariable}s can be best effort, 
+	 * and this must be set before objects of the class are registered.
+	 * 
+	 * @param c the class of the objects
+	 * @param varNames the variables to send best effort, an empty array to
+	 * 	go back to the .fed file's transport
+	 */
+	public static void setBestEffort(Class<?> c, String[] varNames) {
+		BEST_EFFORT.put(c, varNames.clone());
+	}
+	
+	public static String[] getBestEffort(Class<?> c) {
+		String[] vars = BEST_EFFORT.get(c);
+		return vars == null ? new String[0] : vars.clone();
+	}
+	
+	/* local proxy classes whose proxies are stored in columns */
+	static Hashtable<Class<?>, Boolean> COLUMNAR = new Hashtable<Class<?>, Boolean>();
+	
+	/**
+	 * Stores the proxies of a class in columns rather than as an instance 
+	 * of the class each. Every variable the class declares is kept in 
+	 * primitive arrays shared by all the proxies in the list, which takes
+	 * a fraction of the memory of the instances and their variables and
+	 * lets a model scan the values of every proxy without touching the
+	 * proxies, see {@link object.ProxyList#getColumns()}.
+	 * 
+	 * The proxies in the list are then {@link object.ProxyColumns.Proxy} 
+	 * views instead of instances of the class, and the class is only 
+	 * instantiated once to find its variables. All of them must be 
+	 * {@link object.variables.ViewableInteger}s, 
+	 * {@link object.variables.ViewableBoolean}s or 
+	 * {@link object.variables.ViewablePoint}s. Must be set before the 
+	 * proxies are asked for with {@link #getProxies(Class, Class)}.
+	 * 
+	 * @param local the local class of the proxies
+	 */
+	public static void setColumnar(Class<?> local, boolean columnar) {
+		COLUMNAR.put(local, columnar);
+	}
+	
+	public static boolean isColumnar(Class<?> local) {
+		Boolean columnar = COLUMNAR.get(local);
+		return columnar != null && columnar;
+	}
+	
+	/* global classes whose discovered instances are not kept as shells */
+	static Hashtable<Class<?>, Boolean> NEVER_PROXIED = new Hashtable<Class<?>, Boolean>();
+	
+	/**
+	 * Declares that this federate will never ask for proxies of a class, so
+	 * instances of it discovered before then needn't be kept as 
+	 * {@link object.ObjectShell}s holding every value reflected in to them. 
+	 * Their updates are dropped as they arrive and asking for their proxies
+	 * with {@link #getProxies(Class, Class)} is an error. 
+	 * {@link #getShellMemory()} reports what the shells of the other 
+	 * classes are taking.
+	 * 
+	 * @param global the class as registered with the federation
+	 */
+	public static void setNeverProxied(Class<?> global, boolean never) {
+		NEVER_PROXIED.put(global, never);
+	}
+	
+	public static boolean isNeverProxied(Class<?> global) {
+		Boolean never = NEVER_PROXIED.get(global);
+		return never != null && never;
+	}
+	
+	static boolean LAZY_DECODING = false;
+	
+	/**
+	 * With lazy decoding, a value reflected in to a 
+	 * {@link object.variables.ViewablePoint} is kept as it arrived and only
+	 * decoded when the variable is read, so proxies the model doesn't look
+	 * at cost little to update and a value replaced before it is read is 
+	 * never decoded. Other variables are always decoded as they arrive, 
+	 * decoding a primitive costs less than keeping it to decode later.
+	 * Compare {@link #getValuesDecoded()} with {@link #getDecodesSkipped()}
+	 * to see how much decoding is avoided.
+	 */
+	public static void setLazyDecoding(boolean lazy) {
+		LAZY_DECODING = lazy;
+	}
+	
+	public static boolean isLazyDecoding() {
+		return LAZY_DECODING;
+	}
+	
+	static boolean PIPELINED = false;
+	
+	/**
+	 * When pipelined, the request to advance to the next tick is made as
+	 * soon as the current tick's actions have run and its updates have been
+	 * sent, and the RTI is ticked for the grant on a background thread while
+	 * the display action runs, instead of at the start of the next tick. 
+	 * Intended for fixed-step models (see 
+	 * {@link #createManager(Class[], int, String, String, String, boolean, double)}). 
+	 * Ignored if the federate is optimistic. Grants are then received on 
+	 * the pump's thread, but {@link LogicalTimeListener}s are still told of
+	 * them on the model's thread, when it collects the pump's callbacks at
+	 * the start of the next tick. This must be set before the 
+	 * manager is created.
+	 * <p>
+	 * While the grant is being collected the pump has the RTI, so the 
+	 * display action (and anything else run between ticks) must not use it:
+	 * no registering, updating, deleting or ownership requests. Doing so 
+	 * throws an IllegalStateException rather than racing the pump inside
+	 * the RTI. Such work belongs in an ordinary action, which runs once the
+	 * pump has finished.
+	 * 
+	 * @see DistributedSchedule#overlapTimer
+	 */
+	public static void setPipelined(boolean pipelined) {
+		PIPELINED = pipelined;
+	}
+	
+	public static boolean isPipelined() {
+		return PIPELINED && !OPTIMISTIC;
+	}
+	
+	static boolean OPTIMISTIC = false;
+	static double OPTIMISM_WINDOW = 10;
+	
+	/**
+	 * When optimistic, the schedule executes each tick as soon as it can 
+	 * rather than waiting until the RTI grants the federate that time, 
+	 * staying at most the optimism window (see 
+	 * {@link #setOptimismWindow(double)}) ahead of the granted time. 
+	 * 
+	 * Before each tick the visible proxies and the schedule are 
+	 * checkpointed, and from then on each local or reflected variable's 
+	 * value is saved the first time it changes. If an update then
+	 * arrives with a timestamp before the tick being executed (or one which 
+	 * has been used is retracted) the federate rolls back to the first 
+	 * affected tick: the checkpoint is restored, updates sent since are 
+	 * retracted and the received updates are executed again.
+	 * 
+	 * Only the engine's state is rolled back. Models keeping state anywhere
+	 * else must restore it themselves (see 
+	 * {@link #addRollbackListener(RollbackListener)}), and object 
+	 * registration, deletion and ownership changes are not undone. This must
+	 * be set before the manager is created.
+	 */
+	public static void setOptimistic(boolean optimistic) {
+		OPTIMISTIC = optimistic;
+	}
+	
+	public static boolean isOptimistic() {
+		return OPTIMISTIC;
+	}
+	
+	/**
+	 * @param window how far (in ticks) an optimistic federate may run ahead
+	 * 	of the time it has been granted
+	 */
+	public static void setOptimismWindow(double window) {
+		OPTIMISM_WINDOW = window;
+	}
+	
+	/* number of pre-allocated records in the callback ring, must be set
+	 * before the manager is created to have any effect */
+	static int CALLBACK_CAPACITY = CallbackBuffer.DEFAULT_CAPACITY;
+	public static void setCallbackCapacity(int capacity) {
+		CALLBACK_CAPACITY = capacity;
+	}
+	
 	private static String PUBLIC_OBJECT_USAGE_VIOLATION = "Federates cannot publish instances of PublicObject itself, "
 			+ "only subclasses thereof, PublicObject must be removed from the "
 			+ "class tree";
@@ -211,6 +670,13 @@ public class LocalManager implements SimEventListener {
 	 * The Advancer13 used to manage the time-advance of this manager
 	 */
 	protected Advancer13 advancer;
+	
+	/**
+	 * The fixed step of the local model, if it has one, which is then used 
+	 * as the lookahead of a {@link SteppedAdvancer13}. 0 if the model is 
+	 * event driven.
+	 */
+	protected double timeStep = 0;
 
 	/**
 	 * The initial declaration of classes reflected or published by the local
@@ -230,6 +696,11 @@ public class LocalManager implements SimEventListener {
 	 * normal execution of the RePast schedule.
 	 */
 	protected EventQueue externQueue = new EventQueue();
+	
+	/**
+	 * Checkpoints and rollback, only used by optimistic federates
+	 */
+	TimeWarp timeWarp = null;
 
 	/**
 	 * A large catalogue of all published and discovered objects in the
@@ -298,7 +769,7 @@ public class LocalManager implements SimEventListener {
 		 * communication machinery between ourselves and the RTI:
 		 */
 		rtiAmb = new RTIambassador(); 		//for sending messages 	
-		cbDispatcher = new CallbackBuffer(this);	//for receiving messages 	
+		cbDispatcher = new CallbackBuffer(this, CALLBACK_CAPACITY);	//for receiving messages 	
 	}
 
 	protected void join() throws RTIexception {
@@ -329,19 +800,28 @@ public class LocalManager implements SimEventListener {
 		
 		DEV_TOOLS.print("<LocalManager::init> time synchronising...");
 		DEV_TOOLS.indent();
-		advancer = new Advancer13();
+		if (timeStep > 0)
+			advancer = new SteppedAdvancer13(timeStep);
+		else
+			advancer = new Advancer13();
 		/* we have to call this outside the constructor as the callback accesses the
 		 * 'advancer' variable, which is null within the constructor.
 		 */
 		advancer.initialise();		
 		
-		sessionID = coupler.finalise(advancer.getTime());
+		sessionID = coupler.finalise(advancer.getTime(), advancer.getLookahead());
+		/* with a lookahead followers are granted past their start time in 
+		 * order to receive the fedexid */
+		if (coupler.getTime() > advancer.getTime())
+			advancer.grantTo(coupler.getTime());
 		DEV_TOOLS.undent();
 	}
 	
 	protected void initDatabase() throws RTIexception {
 		classLookup = new ClassLookup(classes);
 		obLookup = new ObjectLookup(classLookup, logger);
+		if (OPTIMISTIC)
+			timeWarp = new TimeWarp(this, advancer, externQueue);
 		DEV_TOOLS.print("<LocalManager::initDatabase> done");
 	}
 
@@ -412,6 +892,43 @@ public class LocalManager implements SimEventListener {
 		return singletonManager;
 	}
 	
+	/**
+	 * Creates a LocalManager for a model which schedules all of its actions
+	 * at a fixed interval. Time is advanced with timeAdvanceRequest and 
+	 * timeStep as the lookahead (see {@link SteppedAdvancer13}), which 
+	 * allows the RTI to grant each step with far less synchronisation than
+	 * the event driven form. All federates in the federation should be 
+	 * created with the same timeStep.
+	 * 
+	 * @see #createManager(Class[], int, String, String, String, boolean)
+	 * 
+	 * @param timeStep the interval between the model's scheduled actions
+	 * @return A LocalManager connected to the required federation
+	 * @throws Exception
+	 */
+	public static LocalManager createManager(	Class<?>[] classes,
+												int numNodes,
+												String federateID,
+												String federationName,
+												String fedFile,
+												boolean create,
+												double timeStep) throws Exception {
+		if (singletonManager != null)
+			return singletonManager;
+		
+		singletonManager = new LocalManager(classes, 
+											numNodes, 
+											federateID, 
+											federationName, 
+											fedFile, 
+											create);
+		singletonManager.timeStep = timeStep;
+		singletonManager.join();
+		singletonManager.couple();
+		singletonManager.initDatabase();
+		return singletonManager;
+	}
+	
 	/**
 	 * This form is the same as the larger form but always tries to create
 	 * the federation.
@@ -470,6 +987,7 @@ public class LocalManager implements SimEventListener {
 	 * @return the ambassador currently being used by this LocalManager
 	 */
 	public RTIambassador getAmbassador() {
+		checkNotPumping();
 		return rtiAmb;
 	}
 
@@ -496,8 +1014,209 @@ public class LocalManager implements SimEventListener {
 	 * @return the current time recorded for this federate.
 	 */
 	public double getTick() {
+		if (timeWarp != null)
+			return timeWarp.getLocalTime();
 		return advancer.getTime();
 	}
+	
+	/**
+	 * Records a timestamped message sent by this federate so that it can be
+	 * retracted if the federate rolls back. Does nothing unless the 
+	 * federate is optimistic.
+	 * 
+	 * @param handle the handle returned by the RTI for the message
+	 */
+	public void recordSend(EventRetractionHandle handle) {
+		if (timeWarp != null)
+			timeWarp.sent(handle);
+	}
+	
+	private List<RollbackListener> rollbackListeners = new ArrayList<RollbackListener>();
+	/**
+	 * Register a listener to be told when this (optimistic) federate rolls
+	 * back.
+	 * 
+	 * @see #setOptimistic(boolean)
+	 */
+	public void addRollbackListener(RollbackListener l) {
+		rollbackListeners.add(l);
+	}
+	
+	void fireRolledBack(double time) {
+		for (RollbackListener l : rollbackListeners)
+			l.rolledBack(time);
+	}
+	
+	/**
+	 * @return the number of times this federate has rolled back
+	 */
+	public int getRollbacks() {
+		return timeWarp == null ? 0 : timeWarp.getRollbacks();
+	}
+	
+	/**
+	 * @return the total number of ticks undone by rollbacks
+	 */
+	public int getTicksRolledBack() {
+		return timeWarp == null ? 0 : timeWarp.getTicksRolledBack();
+	}
+	
+	/**
+	 * @return the number of sent messages retracted by rollbacks
+	 */
+	public int getRetractions() {
+		return timeWarp == null ? 0 : timeWarp.getRetractions();
+	}
+	
+	/**
+	 * @return the time outgoing timestamped messages are stamped with, 
+	 * 	this is the current tick plus the advancer's lookahead. An 
+	 * 	optimistic federate stamps them with the tick being executed, 
+	 * 	which may be ahead of its granted time.
+	 */
+	public double getSendTime() {
+		if (timeWarp != null)
+			return getTick() + advancer.getLookahead();
+		return advancer.getTime() + advancer.getLookahead();
+	}
+	
+	/**
+	 * @return the number of attribute values reflected in to proxies, with 
+	 * 	regions of interest (see {@link #setRoutingSpace(String, Rectangle)})
+	 * 	this only counts updates to objects inside them
+	 */
+	public long getValuesReflected() {
+		return obLookup.getValuesReflected();
+	}
+	
+	/**
+	 * @return the number of entries in received bundles (see 
+	 * 	{@link #setBundling(boolean)}) dropped because their object was not
+	 * 	known to this federate or had been deleted
+	 */
+	public long getBundleEntriesDropped() {
+		return obLookup.getBundleEntriesDropped();
+	}
+	
+	/**
+	 * @return the number of values reflected in to viewable variables 
+	 * 	which have been decoded
+	 * @see #setLazyDecoding(boolean)
+	 */
+	public long getValuesDecoded() {
+		return ViewableVariable.getValuesDecoded();
+	}
+	
+	/**
+	 * @return the number of values reflected in to viewable variables 
+	 * 	which were replaced before being read, and so never decoded
+	 * @see #setLazyDecoding(boolean)
+	 */
+	public long getDecodesSkipped() {
+		return ViewableVariable.getDecodesSkipped();
+	}
+	
+	/**
+	 * @return roughly the bytes taken by the shells of discovered instances
+	 * 	whose proxies haven't been asked for yet
+	 * @see #setNeverProxied(Class, boolean)
+	 */
+	public long getShellMemory() {
+		return obLookup.getShellMemory();
+	}
+	
+	/**
+	 * @return the number of discovered instances held as shells
+	 */
+	public int getShellCount() {
+		return obLookup.getShellCount();
+	}
+	
+	/**
+	 * @return the number of discovered instances of never proxied classes,
+	 * 	which have no shell
+	 * @see #setNeverProxied(Class, boolean)
+	 */
+	public int getShellsDropped() {
+		return obLookup.getShellsDropped();
+	}
+	
+	/**
+	 * @return the number of times this federate has moved an update or 
+	 * 	subscription region
+	 */
+	public long getRegionModifications() {
+		return obLookup.getRegionModifications();
+	}
+	
+	/**
+	 * @return the mean time (in milliseconds) between a timestamp ordered
+	 * 	reflection arriving and it being applied after the grant to its tick
+	 */
+	public double getMeanOrderedLatency() {
+		if (orderedApplied == 0)
+			return 0;
+		return orderedNanos / 1e6 / orderedApplied;
+	}
+	
+	/**
+	 * @return the mean time (in milliseconds) between a receive ordered 
+	 * 	reflection arriving and it being applied (see 
+	 * 	{@link #setReceiveOrdered(Class, String[])})
+	 */
+	public double getMeanArrivalLatency() {
+		if (arrivalApplied == 0)
+			return 0;
+		return arrivalNanos / 1e6 / arrivalApplied;
+	}
+	
+	/**
+	 * @return the number of receive ordered reflections applied on arrival
+	 */
+	public long getArrivalReflections() {
+		return arrivalApplied;
+	}
+	
+	/**
+	 * @return the number of times ownership of a variable has been kept 
+	 * 	from one tick to the next (see {@link #setOwnershipLease(int)})
+	 */
+	public long getLeasesKept() {
+		return obLookup.getLeasesKept();
+	}
+	
+	/**
+	 * @return the number of writes to exclusive variables this federate has
+	 * 	had excluded by another federate's write to the same variable in 
+	 * 	the same tick (see {@link #setDeterministicExclusion(boolean)})
+	 */
+	public long getClaimsLost() {
+		return obLookup.getClaimsLost();
+	}
+	
+	/**
+	 * @return the number of writes this federate has made to exclusive 
+	 * 	variables with deterministic exclusion on
+	 */
+	public long getClaimsMade() {
+		return obLookup.getClaimsMade();
+	}
+	
+	/**
+	 * @return the mean time (in milliseconds) spent waiting for each time
+	 * 	advance grant
+	 */
+	public double getMeanGrantLatency() {
+		return advancer.getMeanGrantLatency();
+	}
+	
+	/**
+	 * @return the fixed step the manager was created with, 0 if the model
+	 * 	is event driven
+	 */
+	public double getTimeStep() {
+		return timeStep;
+	}
 
 	/**
 	 * The String id for this federate (not necessarily unique).
@@ -548,18 +1267,78 @@ public class LocalManager implements SimEventListener {
 	}
 	
 	
+	/**
+	 * @return the number of RTI callbacks received but not yet executed
+	 */
+	public int getCallbackDepth() {
+		return cbDispatcher.depth();
+	}
+	
+	/**
+	 * @return the largest number of RTI callbacks that have been waiting
+	 * 	to be executed at any one time
+	 */
+	public int getPeakCallbackDepth() {
+		return cbDispatcher.peakDepth();
+	}
+	
+	/**
+	 * @return the number of RTI callbacks which overflowed the callback 
+	 * 	ring (see {@link #setCallbackCapacity(int)})
+	 */
+	public long getCallbackOverflows() {
+		return cbDispatcher.overflows();
+	}
+	
+	/**
+	 * @return the total number of RTI callbacks executed by this manager
+	 */
+	public long getCallbacksProcessed() {
+		return cbDispatcher.processed();
+	}
+	
 	/* single-threaded stuff callback handling */
 	public void flushCallbackBuffer() {
+		/* parallel actions may be reading what the callbacks would change,
+		 * only the ownership answers they may be waiting on are executed 
+		 * until they finish */
+		if (Threads.isParallel()) {
+			cbDispatcher.executeOwnership();
+			return;
+		}
+		cbDispatcher.executeHeld();
 		while (!cbDispatcher.isEmpty())
 			cbDispatcher.executeNext();
+		firePumpedGrants();
 	}
+	/**
+	 * Executes the buffered callbacks, then every queued external event 
+	 * stamped at or before the current tick. Events stamped later, which
+	 * an optimistic federate receives ahead of time, stay queued until the
+	 * tick they are stamped with. The RTI only delivers a conservative 
+	 * federate's events up to its grant, so for one this drains the whole
+	 * queue.
+	 */
 	public void flushExternalEventQueueSngThrd() {
 		flushCallbackBuffer();
 		if (singletonManager != null) {
-			while (!singletonManager.externQueue.isEmpty())
-				singletonManager.externQueue.next().execute();			
+			singletonManager.externQueue.drainUpTo(getTick());
+			if (isDeterministicExclusion())
+				singletonManager.obLookup.resolveClaims(getTick());
 		}
 	}
+	
+	/* sends whatever has been held back until the end of the tick */
+	void flushOutgoing() throws RTIexception {
+		if (isRegionRouting())
+			obLookup.flushRegions();
+		if (isWriteBehind())
+			obLookup.flushUpdates();
+		if (isDeterministicExclusion())
+			obLookup.flushClaims();
+		if (isCommutativeCumulatives())
+			obLookup.flushDeltas();
+	}
 	void resetOwnership() throws RTIexception {
 		if (singletonManager != null) {
 			singletonManager.obLookup.resetOwnership();
@@ -603,6 +1382,20 @@ public class LocalManager implements SimEventListener {
 		obLookup.localDelete(obj);
 	}
 	
+	/**
+	 * Asks for the ownership of a group of variables (which may belong to
+	 * any number of local or remote objects) without waiting for the answer.
+	 * One request is sent per object and the variables are resolved as the
+	 * RTI's answers arrive.
+	 * 
+	 * @param vars the variables to acquire
+	 * @return a handle on the request which can be waited on
+	 */
+	public OwnershipRequest acquireOwnership(PublicVariable... vars) 
+			throws RTIexception {
+		return obLookup.acquire(Arrays.asList(vars));
+	}
+	
 	/**
 	 * Obtains a list of objects of type local which are reflecting remotely
 	 * published instances of type global. This list will be of indeterminate
@@ -615,6 +1408,14 @@ public class LocalManager implements SimEventListener {
 	 * Note that although global and local need not be unique, if the public
 	 * attributes retrievable from local are not a strict subset of those
 	 * retrievable from global, this list will remain at size 0 for ever.
+	 * <p>
+	 * If local declares fewer variables than global, this federate stops 
+	 * subscribing to the viewable variables of global which local does 
+	 * not declare, so updates to them are no longer reflected at all. 
+	 * Exclusive and cumulative variables stay subscribed, as other 
+	 * federates may write them to objects registered here. Only one list is
+	 * kept per global class, so the local class of the first request for 
+	 * it decides this.
 	 * 
 	 * @param global
 	 *            the Class of the objects as they were published remotely
@@ -688,6 +1489,7 @@ public class LocalManager implements SimEventListener {
 	 */
 	public void endParticipation(boolean destroy) {
 
+		checkNotPumping();
 		try {
 			rtiAmb.resignFederationExecution(ResignAction.DELETE_OBJECTS_AND_RELEASE_ATTRIBUTES);
 			DEV_TOOLS.print("resigned from federation");
@@ -816,6 +1618,18 @@ public class LocalManager implements SimEventListener {
 			} catch (RTIexception e1) {
 				print("failed to re-divest on object deletion exception");
 			}
+		} catch (RTIexception e) {
+			standardErrorProcedure(e);
+		}
+	}
+	
+	// when a request for ownership (see ObjectLookup.askRelease) has been
+	// withdrawn
+	void acquisitionCancelled(int theObject, AttributeHandleSet attrs) {
+		try {
+			obLookup.acquisitionCancelled(theObject, attrs);
+		} catch (ObjectNotFoundException e) {
+		} catch (ObjectDeletedException e) {
 		}
 	}
 
@@ -830,11 +1644,20 @@ public class LocalManager implements SimEventListener {
 
 	// we will probably receive this quite regularly, when a clash occurs with
 	// a CumulativeVariable or an ExclusiveVariable
-	void releaseRequest(int theObject, AttributeHandleSet attrs) {
+	void releaseRequest(int theObject, AttributeHandleSet attrs) throws RTIexception {
 
 		print("<LocalManager::releaseRequest> ownership requested by remote federate for object " + theObject);
+		if (isLeasing())
+			obLookup.releaseRequested(theObject, attrs);
 	}
 
+	// when the attributes of some object we bound by region move in to or
+	// out of our regions of interest
+	void scopeChanged(int theObject, boolean inScope) {
+		if (obLookup != null)
+			obLookup.scopeChanged(theObject, inScope);
+	}
+	
 	// when a PublicObject at some federate has been garbage-collected or 
 	// explicitly delete and is no longer being simulated
 	void removeInstance(int theObject, double time) {
@@ -843,8 +1666,25 @@ public class LocalManager implements SimEventListener {
 		print("object removed: " + theObject + " at time " + time);
 	}
 
-	// when the value of some PublicVariable has changed which we subscribe to
+	// when the value of some PublicVariable has changed which we subscribe to.
+	// attrs may be a view the callback buffer re-uses, so it is copied if it
+	// is kept beyond the call
 	void reflectValues(int theObject, ReflectedAttributes13 attrs, double time) {
+		reflectValues(theObject, attrs, time, null);
+	}
+	
+	void reflectValues(	int theObject, 
+						ReflectedAttributes13 attrs, 
+						double time, 
+						EventRetractionHandle retraction) {
+		reflectValues(theObject, attrs, time, retraction, System.nanoTime());
+	}
+	
+	void reflectValues(	int theObject, 
+						ReflectedAttributes13 attrs, 
+						double time, 
+						EventRetractionHandle retraction,
+						long arrived) {
 
 		/* if this happens during federation coupling, it is meta-management
 		 * so execute it out-of-band
@@ -864,12 +1704,52 @@ public class LocalManager implements SimEventListener {
 		else {
 
 			try {
-				externQueue.enque(new ReflectCallBack(theObject, attrs, time),
-						time);
+				if (timeWarp != null)
+					timeWarp.received(time);
+				externQueue.enque(new ReflectCallBack(theObject, attrs.copy(), time, arrived),
+						time, retraction);
+			} catch (Exception e) {
+				standardErrorProcedure(e);
+			}
+		}
+	}
+	
+	// when the value of some receive ordered PublicVariable has changed, this
+	// is applied straight away rather than after the next grant
+	void reflectOnArrival(int theObject, ReflectedAttributes13 attrs, long arrived) {
+		if (!coupler.isCoupled()) {
+			try {
+				coupler.delegatedReflect(theObject, attrs);
 			} catch (Exception e) {
 				standardErrorProcedure(e);
 			}
 		}
+		/* parallel actions may be reading the proxies, so it waits for the
+		 * next drain of the queue */
+		else if (Threads.isParallel()) {
+			externQueue.enque(new ReflectCallBack(theObject, attrs.copy(), getTick(), arrived, false), 
+					getTick());
+		}
+		else {
+			arrivalApplied++;
+			arrivalNanos += System.nanoTime() - arrived;
+			applyReflection(theObject, attrs, getTick());
+		}
+	}
+	
+	/* arrival to application of reflections, by path */
+	private long orderedApplied = 0;
+	private long orderedNanos = 0;
+	private long arrivalApplied = 0;
+	private long arrivalNanos = 0;
+
+	// when a timestamped message we received is withdrawn by its sender
+	void retractionRequested(EventRetractionHandle retraction) {
+		print("retraction requested " + retraction);
+		if (timeWarp != null)
+			timeWarp.retracted(retraction);
+		else
+			externQueue.retract(retraction);
 	}
 
 	class ReflectCallBack implements Call {
@@ -878,29 +1758,61 @@ public class LocalManager implements SimEventListener {
 		private ReflectedAttributes13 attrs;
 
 		private double time;
+		
+		private long arrived;
+		
+		private boolean ordered;
 
 		public ReflectCallBack(int theObject,
 				ReflectedAttributes13 attrs, double time) {
+			this(theObject, attrs, time, System.nanoTime());
+		}
+		
+		public ReflectCallBack(int theObject,
+				ReflectedAttributes13 attrs, double time, long arrived) {
+			this(theObject, attrs, time, arrived, true);
+		}
+		
+		ReflectCallBack(int theObject, ReflectedAttributes13 attrs, 
+				double time, long arrived, boolean ordered) {
 			this.theObject = theObject;
 			this.attrs = attrs;
 			this.time = time;
+			this.arrived = arrived;
+			this.ordered = ordered;
 		}
 
 		public void execute() {
-
-			try {
-				obLookup.resolveUpdate(theObject, attrs, time);
-			} catch (ObjectNotFoundException e) {
-				// do nothing, doesn't really matter
-			} catch (ObjectDeletedException e) {
-				// again, it will come out in the wash
-			} catch (IOException e) {
-				standardErrorProcedure(e);
-			} catch (RTIinternalError e) {
-				standardErrorProcedure(e);
-			} catch (FederateInternalError e) {
-				standardErrorProcedure(e);
+			/* re-executions after a rollback aren't counted again */
+			if (arrived != 0) {
+				long latency = System.nanoTime() - arrived;
+				if (ordered) {
+					orderedApplied++;
+					orderedNanos += latency;
+				}
+				else {
+					arrivalApplied++;
+					arrivalNanos += latency;
+				}
+				arrived = 0;
 			}
+			applyReflection(theObject, attrs, time);
+		}
+	}
+	
+	private void applyReflection(int theObject, ReflectedAttributes13 attrs, double time) {
+		try {
+			obLookup.resolveUpdate(theObject, attrs, time);
+		} catch (ObjectNotFoundException e) {
+			// do nothing, doesn't really matter
+		} catch (ObjectDeletedException e) {
+			// again, it will come out in the wash
+		} catch (IOException e) {
+			standardErrorProcedure(e);
+		} catch (RTIinternalError e) {
+			standardErrorProcedure(e);
+		} catch (FederateInternalError e) {
+			standardErrorProcedure(e);
 		}
 	}
 	
@@ -925,20 +1837,47 @@ public class LocalManager implements SimEventListener {
 	public void addLogicalTimeListener(LogicalTimeListener ltl) {
 		LTListeners.add(ltl);
 	}	
+	/* grants received on a pump's thread, whose listeners are told when
+	 * the model's thread next flushes the callback buffer */
+	private List<Double> pumpedGrants = new ArrayList<Double>();
+	
 	void timeAdvanceGrant(double newTime) {
+		Threads.signal();
 		if (!coupler.isCoupled())
 			coupler.grantTo(newTime);
 		else
 			advancer.grantTo(newTime);
+		if (Thread.currentThread() instanceof Pump) {
+			synchronized (pumpedGrants) {
+				pumpedGrants.add(newTime);
+			}
+			return;
+		}
 		for (LogicalTimeListener ltl : LTListeners)
 			ltl.grantTo(newTime);
 	}
+	
+	private void firePumpedGrants() {
+		Double[] grants;
+		synchronized (pumpedGrants) {
+			if (pumpedGrants.isEmpty())
+				return;
+			grants = pumpedGrants.toArray(new Double[pumpedGrants.size()]);
+			pumpedGrants.clear();
+		}
+		for (double time : grants) {
+			for (LogicalTimeListener ltl : LTListeners)
+				ltl.grantTo(time);
+		}
+	}
 
 	void regulationEnabled(double time) {
+		Threads.signal();
 		advancer.regulating(time);
 	}
 
 	public void constrainedEnabled(double time) {
+		Threads.signal();
 		advancer.constrain(time);
 	}
 
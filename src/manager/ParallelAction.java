@@ -0,0 +1,235 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package manager;
+
+import hla.rti13.java1.RTIexception;
+import io.DEV_TOOLS;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import rtidep.Threads;
+import uchicago.src.sim.engine.BasicAction;
+
+/**
+ * A scheduled action made up of independent parts which are executed in
+ * parallel on a shared fork-join pool, eg. stepping every agent in a 
+ * model:
+ * 
+ * <pre>
+ * schedule.scheduleActionAtInterval(1.0, new ParallelAction(agents, "step"));
+ * </pre>
+ * 
+ * The parts must be safe to run in parallel with each other: they must 
+ * not share ordinary Java state and must not write the same 
+ * {@link object.variables.PublicVariable}. Writes to PublicVariables are 
+ * allowed, the RTI work they cause is handed to the thread running the 
+ * schedule: updates are queued and sent in order, and ownership 
+ * negotiation is done there while the writing part waits for the answer.
+ * Objects may be registered and deleted, which is also done on that 
+ * thread. All of it has happened by the time the action returns.
+ * 
+ * Other than ownership answers, the callbacks the RTI delivers while the
+ * parts run are held back until they have all finished, so reflections,
+ * deletions and scope changes never touch objects the parts are reading.
+ * 
+ * @see DistributedSchedule#scheduleActionAtIntervalParallel(double, List, String)
+ */
+public class ParallelAction extends BasicAction {
+
+	static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool pool = null;
+	
+	/**
+	 * Sets the number of threads used by all ParallelActions, 1 runs the
+	 * parts in order on the schedule's thread. Must be set before the first
+	 * ParallelAction executes.
+	 */
+	public static void setParallelism(int threads) {
+		PARALLELISM = threads;
+	}
+	
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(PARALLELISM);
+		return pool;
+	}
+	
+	/* the smallest number of parts given to one task */
+	private static final int GRAIN = 4;
+	
+	private List<?> targets;
+	private String methodName;
+	private Hashtable<Class<?>, Method> methods = new Hashtable<Class<?>, Method>();
+	
+	/**
+	 * @param actions the independent actions to execute
+	 */
+	public ParallelAction(List<? extends BasicAction> actions) {
+		this(actions, "execute");
+	}
+	
+	/**
+	 * @param targets the objects to call the method on, eg. a list of agents
+	 * @param methodName the name of a public, no argument method of each
+	 * 	target
+	 */
+	public ParallelAction(List<?> targets, String methodName) {
+		this.targets = targets;
+		this.methodName = methodName;
+	}
+	
+	public void execute() {
+		int size = targets.size();
+		if (PARALLELISM <= 1 || size <= GRAIN) {
+			for (int i = 0; i < size; i++)
+				call(targets.get(i));
+			return;
+		}
+		/* take a copy so the model can't change the list under the workers */
+		List<Object> parts = new ArrayList<Object>(targets);
+		Threads.beginParallel();
+		ForkJoinTask<Void> task = getPool().submit(new Split(parts, 0, parts.size()));
+		try {
+			Threads.serviceUntil(task);
+		}
+		finally {
+			try {
+				Threads.endParallel();
+			}
+			catch (RTIexception e) {
+				DEV_TOOLS.showException(e);
+			}
+		}
+		/* a part which threw is rethrown here, the callbacks held back and
+		 * the work marshalled while the parts ran still have to be done */
+		try {
+			task.join();
+		}
+		finally {
+			if (LocalManager.singletonManager != null)
+				LocalManager.singletonManager.flushCallbackBuffer();
+		}
+	}
+	
+	private void call(Object target) {
+		try {
+			getMethod(target.getClass()).invoke(target);
+		}
+		catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new IllegalStateException(methodName + " failed", e.getCause());
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("cannot call " + methodName + " on " + target, e);
+		}
+	}
+	
+	private Method getMethod(Class<?> c) throws NoSuchMethodException {
+		Method m = methods.get(c);
+		if (m == null) {
+			m = c.getMethod(methodName);
+			m.setAccessible(true);
+			methods.put(c, m);
+		}
+		return m;
+	}
+	
+	private class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Object> parts;
+		private int from, to;
+		Split(List<Object> parts, int from, int to) {
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+		}
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				for (int i = from; i < to; i++)
+					call(parts.get(i));
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Split(parts, from, mid), new Split(parts, mid, to));
+			}
+		}
+	}
+	
+	/**
+	 * Benchmark of ticks per second against thread count for a TileWorld
+	 * sized population of agents, each step being a fixed amount of 
+	 * deliberation (no RTI is needed).
+	 * 
+	 * usage: ParallelAction [agents] [work per step] [ticks]
+	 */
+	public static void main(String[] args) {
+		int agents = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int work = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		List<BenchAgent> population = new ArrayList<BenchAgent>();
+		for (int i = 0; i < agents; i++)
+			population.add(new BenchAgent(i, work));
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			pool = new ForkJoinPool(threads);
+			PARALLELISM = threads;
+			ParallelAction step = new ParallelAction(population, "step");
+			for (int t = 0; t < ticks / 10; t++)
+				step.execute();
+			long start = System.nanoTime();
+			for (int t = 0; t < ticks; t++)
+				step.execute();
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.println(threads + " threads: " + (int)(ticks / secs) + " ticks/sec");
+			pool.shutdown();
+		}
+		pool = null;
+	}
+	
+	public static class BenchAgent {
+		private double state;
+		private int work;
+		BenchAgent(int seed, int work) {
+			this.state = seed;
+			this.work = work;
+		}
+		public void step() {
+			double s = state;
+			for (int i = 0; i < work; i++)
+				s = Math.sin(s) + i * 1e-9;
+			state = s;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package manager;
+
+/**
+ * A listener for models running optimistically which keep state outside 
+ * of {@link object.variables.PublicVariable}s. Such state is not 
+ * checkpointed by the engine, so the model must restore it itself when 
+ * told the federate has rolled back.
+ * 
+ * @see LocalManager#addRollbackListener(RollbackListener)
+ * @see LocalManager#setOptimistic(boolean)
+ */
+public interface RollbackListener {
+
+	/**
+	 * Called after the federate has been rolled back. The schedule will
+	 * next execute the tick at the given time again.
+	 * 
+	 * @param time the time of the first tick being re-executed
+	 */
+	public void rolledBack(double time);
+}
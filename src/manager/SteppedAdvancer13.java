@@ -0,0 +1,84 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package manager;
+
+import io.DEV_TOOLS;
+import hla.rti13.java1.RTIexception;
+
+/**
+ * An {@link Advancer13} for models which only schedule actions at a fixed
+ * interval (eg. every 1.0 ticks).
+ * 
+ * Time-regulation is enabled with a positive lookahead and time is 
+ * advanced with timeAdvanceRequest instead of nextEventRequestAvailable. 
+ * Since every federate then promises not to send anything earlier than
+ * its current time + lookahead the RTI can grant all the federates their
+ * next step together rather than computing the zero-lookahead bound 
+ * message by message. In return, all timestamped messages from this 
+ * federate are stamped at the current time + lookahead 
+ * (see {@link LocalManager#getSendTime()}).
+ * 
+ * @see LocalManager#createManager(Class[], int, String, String, String, boolean, double)
+ */
+public class SteppedAdvancer13 extends Advancer13 {
+
+	private double lookahead;
+	
+	/**
+	 * @param lookahead the lookahead to declare, normally the model's step
+	 * 	size. Must be greater than 0.
+	 */
+	public SteppedAdvancer13(double lookahead) throws RTIexception {
+		super();
+		if (lookahead <= 0)
+			throw new IllegalArgumentException("lookahead must be positive: " + lookahead);
+		this.lookahead = lookahead;
+	}
+	
+	public double getLookahead() {
+		return lookahead;
+	}
+	
+	/**
+	 * Federates may have been granted past their first step during 
+	 * coupling, a request to advance to a time we already hold returns
+	 * immediately.
+	 */
+	public void advanceTo(double time, boolean block) throws RTIexception {
+		if (time <= getTime()) {
+			DEV_TOOLS.print("<SteppedAdvancer13> already at " + getTime() + ", not advancing to " + time);
+			return;
+		}
+		super.advanceTo(time, block);
+	}
+	
+	protected void advanceTo(byte[] serTime) throws RTIexception {
+		LocalManager.getRTI().timeAdvanceRequest(serTime);
+		advancing = true;
+		grantTimer.start();
+	}
+}
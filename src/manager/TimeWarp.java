@@ -0,0 +1,237 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package manager;
+
+import hla.rti13.java1.EventRetractionHandle;
+import hla.rti13.java1.RTIexception;
+import io.DEV_TOOLS;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import object.ObjectLookup;
+import object.StateCheckpoint;
+
+/**
+ * The bookkeeping for a federate executing optimistically (see 
+ * {@link LocalManager#setOptimistic(boolean)}).
+ * 
+ * The schedule executes each tick without waiting to be granted to it, 
+ * checkpointing the model's shared state first. If an event then arrives
+ * from the past (a straggler), or an event which has already been 
+ * executed is retracted by its sender, the federate is rolled back to the
+ * latest tick which is unaffected: the schedule, variables and proxy lists
+ * are restored, the updates it sent since are retracted and the external 
+ * events it received since are queued to be executed again.
+ * 
+ * Anything older than the federate's granted time can never be rolled 
+ * back to and is discarded as time is granted.
+ * 
+ * @author Rob Minson
+ */
+class TimeWarp {
+
+	private LocalManager manager;
+	private ObjectLookup obLookup;
+	private EventQueue extQ;
+	private Advancer13 advancer;
+	
+	private LinkedList<Checkpoint> checkpoints = new LinkedList<Checkpoint>();
+	private LinkedList<SentMessage> sent = new LinkedList<SentMessage>();
+	
+	/* the time of the most recently executed tick */
+	private double localTime = Double.NEGATIVE_INFINITY;
+	
+	/* the earliest time affected by a straggler or retraction */
+	private double rollbackTo = Double.POSITIVE_INFINITY;
+	
+	private int rollbacks = 0;
+	private int ticksRolledBack = 0;
+	private int retractions = 0;
+	
+	TimeWarp(LocalManager manager, Advancer13 advancer, EventQueue extQ) {
+		this.manager = manager;
+		this.obLookup = manager.obLookup;
+		this.advancer = advancer;
+		this.extQ = extQ;
+		extQ.keepHistory(true);
+	}
+	
+	/**
+	 * @return the time of the tick being (or most recently) executed, this
+	 * 	may be ahead of the time granted by the RTI
+	 */
+	double getLocalTime() {
+		return Math.max(localTime, advancer.getTime());
+	}
+	
+	void setLocalTime(double time) {
+		localTime = time;
+	}
+	
+	/**
+	 * Saves the state the federate is in before executing the tick at the 
+	 * given time.
+	 */
+	void checkpoint(double time, DistributedSchedule schedule) {
+		checkpoints.addLast(new Checkpoint(	time, 
+											localTime, 
+											schedule.saveState(), 
+											obLookup.checkpoint()));
+	}
+	
+	void sent(EventRetractionHandle handle) {
+		if (handle != null)
+			sent.addLast(new SentMessage(getLocalTime(), handle));
+	}
+	
+	/**
+	 * Called for every timestamped event received, events earlier than the
+	 * tick already executed are stragglers.
+	 */
+	void received(double time) {
+		if (time < getLocalTime()) {
+			DEV_TOOLS.print("<TimeWarp> straggler at " + time + " (local time " + getLocalTime() + ")");
+			requestRollback(time);
+		}
+	}
+	
+	void retracted(EventRetractionHandle handle) {
+		double appliedAt = extQ.retract(handle);
+		if (!Double.isNaN(appliedAt)) {
+			DEV_TOOLS.print("<TimeWarp> executed event retracted, applied at " + appliedAt);
+			requestRollback(appliedAt);
+		}
+	}
+	
+	private void requestRollback(double time) {
+		rollbackTo = Math.min(rollbackTo, time);
+	}
+	
+	boolean hasStraggler() {
+		return rollbackTo != Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Rolls back to the state before the earliest tick affected by the 
+	 * stragglers (or retractions) received since the last rollback.
+	 */
+	void rollback(DistributedSchedule schedule) throws RTIexception {
+		/* newest first, the last is the first tick executed at or after the
+		 * straggler's time */
+		ArrayList<Checkpoint> undone = new ArrayList<Checkpoint>();
+		while (!checkpoints.isEmpty() && checkpoints.getLast().time >= rollbackTo)
+			undone.add(checkpoints.removeLast());
+		double time = rollbackTo;
+		rollbackTo = Double.POSITIVE_INFINITY;
+		if (undone.isEmpty()) {
+			DEV_TOOLS.print("<TimeWarp> nothing to roll back for event at " + time);
+			return;
+		}
+		Checkpoint target = undone.get(undone.size() - 1);
+		DEV_TOOLS.print("<TimeWarp> rolling back to " + target.time + " (" + undone.size() + " ticks)");
+		
+		schedule.restoreState(target.schedule);
+		/* each checkpoint only journals the variables changed after it */
+		for (Checkpoint cp : undone.subList(0, undone.size() - 1))
+			obLookup.undo(cp.state);
+		obLookup.restore(target.state);
+		obLookup.setJournal(checkpoints.isEmpty() ? null : checkpoints.getLast().state);
+		int replayed = extQ.replayFrom(target.time);
+		while (!sent.isEmpty() && sent.getLast().time >= target.time) {
+			try {
+				LocalManager.getRTI().retract(sent.removeLast().handle);
+				retractions++;
+			}
+			catch (RTIexception e) {
+				DEV_TOOLS.showException("<TimeWarp::rollback> retraction failed", e);
+			}
+		}
+		localTime = target.previous;
+		rollbacks++;
+		ticksRolledBack += undone.size();
+		DEV_TOOLS.print("<TimeWarp> " + replayed + " events to re-execute");
+		manager.fireRolledBack(target.time);
+	}
+	
+	/**
+	 * Discards everything which can no longer be rolled back to, since 
+	 * nothing earlier than the granted time can arrive.
+	 */
+	void fossilCollect(double granted) {
+		Iterator<Checkpoint> it = checkpoints.iterator();
+		while (it.hasNext() && it.next().time < granted)
+			it.remove();
+		if (checkpoints.isEmpty())
+			obLookup.setJournal(null);
+		while (!sent.isEmpty() && sent.getFirst().time < granted)
+			sent.removeFirst();
+		extQ.forget(granted);
+	}
+	
+	int getRollbacks() {
+		return rollbacks;
+	}
+	
+	int getTicksRolledBack() {
+		return ticksRolledBack;
+	}
+	
+	int getRetractions() {
+		return retractions;
+	}
+	
+	int getCheckpointCount() {
+		return checkpoints.size();
+	}
+	
+	private static class Checkpoint {
+		double time;
+		double previous;
+		DistributedSchedule.ScheduleState schedule;
+		StateCheckpoint state;
+		Checkpoint(	double time, 
+					double previous, 
+					DistributedSchedule.ScheduleState schedule, 
+					StateCheckpoint state) {
+			this.time = time;
+			this.previous = previous;
+			this.schedule = schedule;
+			this.state = state;
+		}
+	}
+	
+	private static class SentMessage {
+		double time;
+		EventRetractionHandle handle;
+		SentMessage(double time, EventRetractionHandle handle) {
+			this.time = time;
+			this.handle = handle;
+		}
+	}
+}
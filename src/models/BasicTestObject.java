@@ -40,7 +40,9 @@ import uchicago.src.sim.gui.SimGraphics;
 import hla.rti13.java1.RTIexception;
 import object.PublicObject;
 import object.RemoteObject;
+import object.variables.CumulativeDouble;
 import object.variables.CumulativeInteger;
+import object.variables.CumulativeLong;
 import object.variables.ExclusiveInteger;
 import object.variables.PublicVariable;
 import object.variables.ViewableInteger;
@@ -55,13 +57,17 @@ public class BasicTestObject extends PublicObject implements RemoteObject, Drawa
 	protected static final Font display_font = new Font("Sans Serif", Font.PLAIN, 12);
 	private static String[] vars = new String[] {	"ExclusiveAttribute", 
 													"CumulativeAttribute", 
-													"ViewableAttribute"};
+													"ViewableAttribute", 
+													"CumulativeLongAttribute", 
+													"CumulativeDoubleAttribute"};
 	
 	
 	/* the globally visible portions of the object */
 	private ExclusiveInteger excAttr;
 	private CumulativeInteger cumulAttr;
 	private ViewableInteger viewAttr;
+	private CumulativeLong cumulLongAttr;
+	private CumulativeDouble cumulDoubleAttr;
 	private Hashtable<String, PublicVariable> varMap = 
 									new Hashtable<String, PublicVariable>();
 	
@@ -80,6 +86,10 @@ public class BasicTestObject extends PublicObject implements RemoteObject, Drawa
 			varMap.put(vars[1], cumulAttr);
 		viewAttr = new ViewableInteger(viewVal);
 			varMap.put(vars[2], viewAttr);
+		cumulLongAttr = new CumulativeLong(0);
+			varMap.put(vars[3], cumulLongAttr);
+		cumulDoubleAttr = new CumulativeDouble(0);
+			varMap.put(vars[4], cumulDoubleAttr);
 		this.x = x;
 		this.y = y;
 		
@@ -105,6 +115,22 @@ public class BasicTestObject extends PublicObject implements RemoteObject, Drawa
 		cumulAttr.set(increment);
 	}
 	
+	public long getCumulativeLong() {
+		return cumulLongAttr.get();
+	}
+	
+	public void setCumulativeLong(long increment) throws RTIexception {
+		cumulLongAttr.set(increment);
+	}
+	
+	public double getCumulativeDouble() {
+		return cumulDoubleAttr.get();
+	}
+	
+	public void setCumulativeDouble(double increment) throws RTIexception {
+		cumulDoubleAttr.set(increment);
+	}
+	
 	public int getViewable() {
 		return viewAttr.get();
 	}
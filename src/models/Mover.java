@@ -0,0 +1,93 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package models;
+
+import hla.rti13.java1.RTIexception;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import object.PublicObject;
+import object.RemoteObject;
+import object.variables.PublicVariable;
+import object.variables.ViewableInteger;
+import object.variables.ViewablePoint;
+
+/**
+ * An object which wanders around a grid, used to test routing updates by
+ * region (see {@link manager.LocalManager#setRoutingSpace(String, java.awt.Rectangle)}).
+ * Its position is its spatial key, the owner records which federate 
+ * registered it.
+ * 
+ * @author Rob Minson
+ */
+public class Mover extends PublicObject implements RemoteObject {
+
+	private static String[] vars = new String[] {"position", "owner"};
+	
+	private ViewablePoint position;
+	private ViewableInteger owner;
+	private Hashtable<String, PublicVariable> varMap = 
+									new Hashtable<String, PublicVariable>();
+	
+	public Mover() {
+		this(0, 0, -1);
+	}
+	
+	public Mover(int x, int y, int owner) {
+		position = new ViewablePoint(x, y);
+			varMap.put(vars[0], position);
+		this.owner = new ViewableInteger(owner);
+			varMap.put(vars[1], this.owner);
+	}
+	
+	public PublicVariable getVariable(String varName) {
+		return varMap.get(varName);
+	}
+	
+	public String[] getPublicVariables() {
+		return vars;
+	}
+	
+	public Point getPosition() {
+		return position.get();
+	}
+	
+	public void moveTo(int x, int y) throws RTIexception, IOException {
+		position.set(new Point(x, y));
+	}
+	
+	public int getOwner() {
+		return owner.get();
+	}
+	
+	public String toString() {
+		Point p = position.get();
+		return "mover of " + owner.get() + " at " + (p == null ? "-" : p.x + "," + p.y);
+	}
+}
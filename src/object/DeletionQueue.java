@@ -32,35 +32,93 @@ This file is part of HLA_RePast.
  */
 package object;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Collects the {@link LookupReference}s whose objects have been garbage
+ * collected.
+ * 
+ * All references created through {@link #track(PublicObject)} share a 
+ * single {@link ReferenceQueue} on to which the JVM places them once their
+ * object has been collected, so finding the dead references costs time
+ * proportional to the number of deaths rather than the number of objects.
+ * No collection is ever forced, objects are reported whenever the JVM 
+ * happens to collect them.
+ * 
+ * By default the queue is polled (without blocking) by 
+ * {@link #flushDeletions()}. Alternatively a background reaper thread can
+ * be started which waits on the queue and hands the references over to be
+ * collected by the next call to {@link #flushDeletions()}, which is made
+ * from the model's thread.
+ * 
  * @author Rob Minson
  *
  */
 public class DeletionQueue {
 
-	private List<LookupReference> references;
+	private ReferenceQueue<PublicObject> queue = new ReferenceQueue<PublicObject>();
+	
+	/* references taken off the queue by the reaper, if there is one */
+	private List<LookupReference> reaped = new ArrayList<LookupReference>();
+	private Thread reaper = null;
 	
 	public DeletionQueue() {	
-		references = new ArrayList<LookupReference>();
 	}
-
-	public void add(LookupReference ref) {	
-		references.add(ref);
+	
+	/**
+	 * @return a new reference to the given object which will be reported
+	 * by this queue once the object has been collected
+	 */
+	public LookupReference track(PublicObject ob) {
+		return new LookupReference(ob, queue);
 	}
 
+	/**
+	 * @return the references which have died since the last call
+	 */
 	public List<LookupReference> flushDeletions() {	
-		List<LookupReference> deleted = new ArrayList<LookupReference>();
-		List<LookupReference> saved = new ArrayList<LookupReference>();
-		for (LookupReference lr : references) {
-			if (lr.isGCd())
-				deleted.add(lr);
-			else
-				saved.add(lr);
+		List<LookupReference> deleted;
+		if (reaper != null) {
+			synchronized (reaped) {
+				deleted = reaped;
+				reaped = new ArrayList<LookupReference>();
+			}
+		}
+		else {
+			deleted = new ArrayList<LookupReference>();
+			Reference<? extends PublicObject> ref;
+			while ((ref = queue.poll()) != null)
+				deleted.add((LookupReference)ref);
 		}
-		references = saved;
 		return deleted;
 	}
+	
+	/**
+	 * Starts a daemon thread which removes dead references from the queue
+	 * as soon as the JVM enqueues them.
+	 */
+	public synchronized void startReaper() {
+		if (reaper != null)
+			return;
+		reaper = new Thread("HLA_RePast reaper") {
+			public void run() {
+				while (true) {
+					try {
+						LookupReference ref = (LookupReference)queue.remove();
+						synchronized (reaped) {
+							reaped.add(ref);
+						}
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		reaper.setDaemon(true);
+		reaper.start();
+	}
 }
@@ -0,0 +1,320 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.RTIambassador;
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.SuppliedAttributes;
+import io.DEV_TOOLS;
+import io.ReflectedAttributes13;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import manager.Coupler;
+import manager.LocalManager;
+import object.variables.ExclusiveVariable;
+import rtidep.RTIDep;
+
+/**
+ * Resolves writes to {@link ExclusiveVariable}s without ownership 
+ * management when deterministic exclusion is switched on (see 
+ * {@link LocalManager#setDeterministicExclusion(boolean)}).
+ * 
+ * A write is made as a claim (an intent to write) stamped with the time
+ * the federate's updates are sent at. Each federate registers a single 
+ * instance of the HLA_RePast <code>intent</code> class and sends all of 
+ * its claims for a tick in one <code>claims</code> update. Once a 
+ * federate has been granted past a claim's time it has received every
+ * claim made for that time, and all federates pick the same winner for 
+ * each variable: the claim from the lowest ranked federate (the handle of
+ * its intent instance) and then the lowest sequence number. The winning 
+ * value is applied to every copy of the variable, local or proxy, and 
+ * the losing claims are dropped.
+ * 
+ * A batch is laid out as a claim count followed by, for each claim, the
+ * object instance handle, the attribute handle, the sequence number, the
+ * value length and the value.
+ * 
+ * @author Rob Minson
+ */
+class IntentResolver {
+
+	private int classHandle = -1;
+	private int claimsHandle = -1;
+	private int instanceHandle = -1;
+	
+	/* the intent instances of the other federates */
+	private HashSet<Integer> senders = new HashSet<Integer>();
+	
+	/* claims by time, waiting to be resolved */
+	private TreeMap<Double, ArrayList<Claim>> claims = new TreeMap<Double, ArrayList<Claim>>();
+	
+	/* this federate's claims not yet sent, by time and then variable */
+	private TreeMap<Double, Hashtable<Long, Claim>> outgoing = new TreeMap<Double, Hashtable<Long, Claim>>();
+	
+	private int sequence = 0;
+	private ByteBuffer out = ByteBuffer.allocate(4096);
+	
+	private long made = 0;
+	private long lost = 0;
+	private long resolved = 0;
+	
+	private ObjectLookup lookup;
+	
+	IntentResolver(ObjectLookup lookup) {
+		this.lookup = lookup;
+	}
+	
+	/**
+	 * Resolves the intent class, publishes and subscribes to it and 
+	 * registers this federate's intent instance.
+	 */
+	void initialise() throws RTIexception {
+		RTIambassador rti = LocalManager.getRTI();
+		classHandle = rti.getObjectClassHandle(Coupler.INTENT);
+		claimsHandle = rti.getAttributeHandle(Coupler.CLAIMS, classHandle);
+		AttributeHandleSet handles = LocalManager.getHandleSet(1);
+		handles.add(claimsHandle);
+		rti.subscribeObjectClassAttributes(classHandle, handles);
+		rti.publishObjectClass(classHandle, handles);
+		instanceHandle = rti.registerObjectInstance(classHandle);
+		DEV_TOOLS.print("<IntentResolver::initialise> claiming with rank " + instanceHandle);
+	}
+	
+	boolean isIntentClass(int handle) {
+		return classHandle != -1 && handle == classHandle;
+	}
+	
+	void discovered(int instance) {
+		senders.add(instance);
+	}
+	
+	boolean removed(int instance) {
+		return senders.remove(instance);
+	}
+	
+	boolean isSender(int instance) {
+		return senders.contains(instance);
+	}
+	
+	/**
+	 * Records a claim by this federate, replacing any claim it has already
+	 * made on the same variable for the same time.
+	 */
+	void claim(ExclusiveVariable var, byte[] value, double time) {
+		Hashtable<Long, Claim> forTime = outgoing.get(time);
+		if (forTime == null) {
+			forTime = new Hashtable<Long, Claim>();
+			outgoing.put(time, forTime);
+		}
+		long key = key(var.getOwnersHandle(), var.getHandle());
+		Claim c = forTime.get(key);
+		if (c != null) {
+			c.value = value;
+			return;
+		}
+		c = new Claim(instanceHandle, sequence++, var.getOwnersHandle(), var.getHandle(), value);
+		c.var = var;
+		forTime.put(key, c);
+		pending(time).add(c);
+		made++;
+	}
+	
+	/**
+	 * Sends this federate's unsent claims, one message per claim time.
+	 * 
+	 * @return the number of messages sent
+	 */
+	int flush() throws RTIexception {
+		int sent = 0;
+		for (Map.Entry<Double, Hashtable<Long, Claim>> e : outgoing.entrySet()) {
+			out.clear();
+			out.putInt(e.getValue().size());
+			for (Claim c : e.getValue().values()) {
+				ensureRemaining(16 + c.value.length);
+				out.putInt(c.object);
+				out.putInt(c.attribute);
+				out.putInt(c.sequence);
+				out.putInt(c.value.length);
+				out.put(c.value);
+			}
+			byte[] batch = new byte[out.position()];
+			out.flip();
+			out.get(batch);
+			SuppliedAttributes attrs = LocalManager.getSuppliedAttributes(1);
+			attrs.add(claimsHandle, batch);
+			LocalManager.getRTI().updateAttributeValues(instanceHandle, attrs, 
+														RTIDep.getLogTime(e.getKey()), "");
+			sent++;
+		}
+		outgoing.clear();
+		return sent;
+	}
+	
+	/**
+	 * Unpacks the claims sent by another federate.
+	 */
+	void received(int sender, ReflectedAttributes13 attrs, double time) {
+		for (int i = 0; i < attrs.size(); i++) {
+			ByteBuffer in = ByteBuffer.wrap(attrs.getValue(i));
+			try {
+				int count = in.getInt();
+				ArrayList<Claim> forTime = pending(time);
+				for (int j = 0; j < count; j++) {
+					int object = in.getInt();
+					int attribute = in.getInt();
+					int seq = in.getInt();
+					byte[] value = new byte[in.getInt()];
+					in.get(value);
+					forTime.add(new Claim(sender, seq, object, attribute, value));
+				}
+			}
+			catch (BufferUnderflowException e) {
+				DEV_TOOLS.print("<IntentResolver::received> truncated batch from " + sender);
+			}
+		}
+	}
+	
+	/**
+	 * Picks the winning claim on each variable for every time before the 
+	 * given (granted) time and applies it.
+	 * 
+	 * Claims stamped with the granted time itself are left: with a zero 
+	 * lookahead other federates may still send claims for that time after
+	 * the grant, and resolving without them would let federates pick 
+	 * different winners. Only once granted past a time can no more claims
+	 * for it arrive.
+	 * 
+	 * @return the number of variables written
+	 */
+	int resolve(double time) {
+		int written = 0;
+		Iterator<Map.Entry<Double, ArrayList<Claim>>> times = claims.headMap(time, false).entrySet().iterator();
+		while (times.hasNext()) {
+			ArrayList<Claim> forTime = times.next().getValue();
+			times.remove();
+			Hashtable<Long, Claim> winners = new Hashtable<Long, Claim>();
+			for (Claim c : forTime) {
+				long key = key(c.object, c.attribute);
+				Claim best = winners.get(key);
+				if (best == null || c.beats(best))
+					winners.put(key, c);
+			}
+			for (Claim c : forTime) {
+				boolean won = winners.get(key(c.object, c.attribute)) == c;
+				if (c.var != null) {
+					c.var.claimResolved(won);
+					if (!won)
+						lost++;
+				}
+			}
+			for (Claim c : winners.values()) {
+				lookup.applyClaim(c.object, c.attribute, c.value);
+				written++;
+			}
+			resolved += forTime.size();
+		}
+		return written;
+	}
+	
+	/**
+	 * @return the number of claims made by this federate
+	 */
+	long claimsMade() {
+		return made;
+	}
+	
+	/**
+	 * @return the number of claims made by this federate which lost to
+	 * 	another federate's
+	 */
+	long claimsLost() {
+		return lost;
+	}
+	
+	/**
+	 * @return the number of claims (from all federates) resolved here
+	 */
+	long claimsResolved() {
+		return resolved;
+	}
+	
+	private ArrayList<Claim> pending(double time) {
+		ArrayList<Claim> forTime = claims.get(time);
+		if (forTime == null) {
+			forTime = new ArrayList<Claim>();
+			claims.put(time, forTime);
+		}
+		return forTime;
+	}
+	
+	private static long key(int object, int attribute) {
+		return ((long)object << 32) | (attribute & 0xffffffffL);
+	}
+	
+	private void ensureRemaining(int bytes) {
+		if (out.remaining() < bytes) {
+			ByteBuffer bigger = 
+				ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+	}
+	
+	static class Claim {
+		int rank;
+		int sequence;
+		int object;
+		int attribute;
+		byte[] value;
+		/* only set for this federate's own claims */
+		ExclusiveVariable var;
+		
+		Claim(int rank, int sequence, int object, int attribute, byte[] value) {
+			this.rank = rank;
+			this.sequence = sequence;
+			this.object = object;
+			this.attribute = attribute;
+			this.value = value;
+		}
+		
+		boolean beats(Claim other) {
+			if (rank != other.rank)
+				return rank < other.rank;
+			return sequence < other.sequence;
+		}
+	}
+}
@@ -32,6 +32,7 @@ package object;
 import hla.rti13.java1.AttributeHandleSet;
 import hla.rti13.java1.AttributeNotOwned;
 import hla.rti13.java1.FederateInternalError;
+import hla.rti13.java1.RTIambassador;
 import hla.rti13.java1.RTIexception;
 import hla.rti13.java1.RTIinternalError;
 import hla.rti13.java1.SuppliedAttributes;
@@ -45,6 +46,7 @@ import java.util.List;
 import object.variables.CumulativeVariable;
 import object.variables.ExclusiveVariable;
 import object.variables.PublicVariable;
+import object.variables.ViewableVariable;
 import rtidep.RTIDep;
 
 import exceptions.ObjectDeletedException;
@@ -82,6 +84,8 @@ class LocalBase {
 	
 	private ClassLookup cl;
 	
+	private RegionManager regions;
+	
 	/**
 	 * Create a LocalBase with a 'back reference' to the given 
 	 * set of class/handle associations as represented by the 
@@ -89,11 +93,15 @@ class LocalBase {
 	 * 
 	 * @param cl the {@link ClassLookup} configured for this 
 	 * federation.
+	 * @param regions the update regions of local objects
 	 */
-	public LocalBase(ClassLookup cl) {
+	public LocalBase(ClassLookup cl, RegionManager regions) {
 		
 		this.instances = new ReferenceTable();	
 		this.cl = cl;
+		this.regions = regions;
+		if (LocalManager.isLazyDeletion() && LocalManager.isBackgroundReaping())
+			instances.startReaper();
 	}
 
 	boolean hasInstance(int handle) {
@@ -121,6 +129,7 @@ class LocalBase {
 		
 		/* register a weak reference to the instance in the reference table */
 		instances.register(ob);
+		ob.bindSlots(cl.getVarNames(ob.getClass()));
 		
 		/* register and do an initial update for all attributes of object */
 		SuppliedAttributes attrs = 
@@ -133,7 +142,10 @@ class LocalBase {
 			attrs.add(var.getHandle(), var.getBytes());
 			DEV_TOOLS.print("<LocalBase::registerObject> updating var " + var.getHandle() + " of object " + ob.getHandle() + " with time " + LocalManager.getManager().getTick());
 		}
-		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getTick());
+		setDelivery(ob);
+		if (regions.register(ob, classHandle))
+			DEV_TOOLS.print("<LocalBase::registerObject> object " + ob.getHandle() + " routed by region");
+		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getSendTime());
 		LocalManager.getRTI().updateAttributeValues(ob.getHandle(), 
 													attrs, 
 													time,
@@ -145,14 +157,44 @@ class LocalBase {
 		resetObject(ob);
 	}
 
+	/* overrides the .fed file's ordering and transport for the variables
+	 * named by LocalManager.setReceiveOrdered and setBestEffort, this has
+	 * to be done while the object still owns all its attributes */
+	private void setDelivery(PublicObject ob) throws RTIexception {
+		RTIambassador rti = LocalManager.getRTI();
+		AttributeHandleSet ordered = viewableHandles(ob, LocalManager.getReceiveOrdered(ob.getClass()));
+		if (ordered != null)
+			rti.changeAttributeOrderType(ob.getHandle(), ordered, rti.getOrderingHandle("receive"));
+		AttributeHandleSet bestEffort = viewableHandles(ob, LocalManager.getBestEffort(ob.getClass()));
+		if (bestEffort != null)
+			rti.changeAttributeTransportationType(ob.getHandle(), bestEffort, rti.getTransportationHandle("best_effort"));
+	}
+	
+	/* the handles of the named viewable variables, null if there are none */
+	private AttributeHandleSet viewableHandles(PublicObject ob, String[] varNames) throws RTIexception {
+		AttributeHandleSet handles = null;
+		for (String vname : varNames) {
+			PublicVariable var = ob.getVariable(vname);
+			if (!(var instanceof ViewableVariable)) {
+				DEV_TOOLS.print("<LocalBase::viewableHandles> " + vname + " is not viewable, left as declared");
+				continue;
+			}
+			if (handles == null)
+				handles = LocalManager.getHandleSet(varNames.length);
+			handles.add(var.getHandle());
+		}
+		return handles;
+	}
+
 	void updateInstance(int objectHandle, ReflectedAttributes13 attrs) 
 		throws IOException, ObjectNotFoundException, ObjectDeletedException, FederateInternalError, RTIinternalError{
 			
 		PublicObject ob = (PublicObject)instances.getObject(objectHandle);
+		int[] slots = cl.getSlotTable(ob.getClass());
 		for (int i = 0; i < attrs.size(); i++) {
-			String varName = cl.getVariableName(cl.getClassHandle(ob.getClass()), attrs.getHandle(i));			
-			PublicVariable var = ob.getVariable(varName);
-			var.update(attrs.getValue(i));
+			PublicVariable var = ob.getVariable(ClassLookup.slotOf(slots, attrs.getHandle(i)));
+			if (var != null)
+				var.update(attrs.getValue(i));
 		}
 	}	
 
@@ -181,59 +223,53 @@ class LocalBase {
 	void deleteObject(PublicObject obj) throws 	RTIexception, 
 															ObjectNotFoundException {		instances.deregister(obj);
 		int handle = obj.getHandle();
-		double time = LocalManager.getManager().getTick();
+		double time = LocalManager.getManager().getSendTime();
 		LocalManager.getRTI().deleteObjectInstance(handle, RTIDep.getLogTime(time), "");
+		regions.deleted(handle);
 	}
 	
 	void deleteObject(int handle) throws 	RTIexception, 
 														ObjectNotFoundException {		
 		instances.deregister(handle);
-		double time = LocalManager.getManager().getTick();
+		double time = LocalManager.getManager().getSendTime();
 		LocalManager.getRTI().deleteObjectInstance(handle, RTIDep.getLogTime(time), "");
+		regions.deleted(handle);
 	}	
 	
-	//The LocalBase resets with these criteria
+	//A newly registered object is reset with these criteria
 	//ExclusiveVariable --> divestsownership, resets to AMBIGUOUS
 	//CumulativeVariable --> divestsownership, resets to AMBIGUOUS	
-	//NB (the only ones which should be divested anyway are a subset of the set of ExclusvieVariables)
-	void resetAll() throws RTIexception {
-		for (int handle : instances.allHandles()) {
-			try {
-				PublicObject ob = instances.getObject(handle);
-				if (ob != null)
-					resetObject(ob);
-			}
-			catch (ObjectNotFoundException e) {}
-			catch (ObjectDeletedException e) {}
-		}
-	}
-
+	//ViewableVariable --> OWNED for good
+	//after this only variables whose ownership gets resolved need resetting 
+	//each tick (see OwnershipSet)
 	private void resetObject(PublicObject obj) throws RTIexception {
 	
 		String[] publicVars = cl.getVarNames(obj.getClass());
+		int contested = 0;
 		for (int i = 0; i < publicVars.length; i++) {
 			PublicVariable nextVar = obj.getVariable(publicVars[i]);
-			initOwnership(nextVar);
-		}			
-	}
-
-	private void initOwnership(PublicVariable var) throws RTIexception {
-					
-//		System.out.println("<LocalBase.initOwnership> resetting var " + var.getHandle() + " currently set to " + var.getOwnership());
-		
-		if (var instanceof ExclusiveVariable || var instanceof CumulativeVariable) {
+			if (nextVar instanceof ExclusiveVariable || nextVar instanceof CumulativeVariable)
+				contested++;
+		}
+		if (contested > 0) {
+			AttributeHandleSet handles = LocalManager.getHandleSet(contested);
+			for (int i = 0; i < publicVars.length; i++) {
+				PublicVariable nextVar = obj.getVariable(publicVars[i]);
+				if (nextVar instanceof ExclusiveVariable || nextVar instanceof CumulativeVariable)
+					handles.add(nextVar.getHandle());
+			}
 			try {
-				AttributeHandleSet handles = LocalManager.getHandleSet(1);
-				handles.add(var.getHandle());
 				LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(
-										var.getOwnersHandle(), handles);
-			}
-			catch (AttributeNotOwned e) {
-//				System.out.println("<LocalBase.initOwnership> tried to divest ownership of unowned variable " + var.getHandle());
+										obj.getHandle(), handles);
 			}
-			var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+			catch (AttributeNotOwned e) {}
+		}
+		for (int i = 0; i < publicVars.length; i++) {
+			PublicVariable nextVar = obj.getVariable(publicVars[i]);
+			if (nextVar instanceof ExclusiveVariable || nextVar instanceof CumulativeVariable)
+				nextVar.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+			else
+				nextVar.setOwnership(PublicVariable.OwnershipState.OWNED);
 		}
-		else
-			var.setOwnership(PublicVariable.OwnershipState.OWNED);
 	}
 }
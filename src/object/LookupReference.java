@@ -55,12 +55,21 @@ public class LookupReference extends WeakReference<PublicObject> {
 	private int ID;
 
 	public LookupReference(PublicObject ob) {
-		super(ob, new ReferenceQueue<PublicObject>());
+		this(ob, new ReferenceQueue<PublicObject>());
+	}
+	
+	/**
+	 * @param ob the object to track
+	 * @param queue the queue this reference will be placed on once the 
+	 * 	object has been collected (see {@link DeletionQueue})
+	 */
+	public LookupReference(PublicObject ob, ReferenceQueue<PublicObject> queue) {
+		super(ob, queue);
 		this.ID = ob.getHandle();
 	}
 	
 	public boolean isGCd() {
-		return isEnqueued();
+		return get() == null;
 	}
 
 	public int getID() {	
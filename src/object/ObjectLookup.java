@@ -33,26 +33,35 @@ This file is part of HLA_RePast.
 package object;
 
 import hla.rti13.java1.ArrayIndexOutOfBounds;
+import hla.rti13.java1.AttributeAcquisitionWasNotRequested;
 import hla.rti13.java1.AttributeAlreadyBeingAcquired;
+import hla.rti13.java1.AttributeAlreadyOwned;
 import hla.rti13.java1.AttributeHandleSet;
 import hla.rti13.java1.FederateInternalError;
 import hla.rti13.java1.FederateOwnsAttributes;
 import hla.rti13.java1.ObjectNotKnown;
 import hla.rti13.java1.RTIexception;
 import hla.rti13.java1.RTIinternalError;
+import hla.rti13.java1.Region;
 import hla.rti13.java1.SuppliedAttributes;
 import io.Bytes;
 import io.DEV_TOOLS;
 import io.ReflectedAttributes13;
 
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Hashtable;
+import java.util.List;
 
 import object.variables.CumulativeVariable;
 import object.variables.ExclusiveVariable;
 import object.variables.PublicVariable;
+import object.variables.ViewablePoint;
 import object.variables.ViewableVariable;
 import rtidep.RTIDep;
+import rtidep.Threads;
 
 import exceptions.BadClassException;
 import exceptions.ObjectDeletedException;
@@ -61,7 +70,6 @@ import exceptions.VariableException;
 
 
 import logging.Logger;
-import logging.StopWatch;
 import manager.ClassLookup;
 import manager.DistributedSchedule;
 import manager.LocalManager;
@@ -85,6 +93,9 @@ import manager.LocalManager;
  */
 public class ObjectLookup {
 
+	/* the latest checkpoint of an optimistic federate, see changing */
+	private volatile StateCheckpoint journal = null;
+	
 	private ClassLookup clLookup;	
 	
 	private LocalBase local;
@@ -93,6 +104,26 @@ public class ObjectLookup {
 	private Logger logger;
 	private boolean loggingOn;
 	
+	/* variables changed this tick, only used in write-behind mode */
+	private UpdateBuffer pending = new UpdateBuffer();
+	
+	/* cumulative deltas made this tick, only used with commutative 
+	 * cumulatives, these are always sent in a bundle */
+	private UpdateBuffer deltas = new UpdateBuffer(false);
+	
+	/* the transport for bundled updates, used to send if bundling is on and
+	 * always used to receive */
+	private UpdateBundle bundle = new UpdateBundle();
+	
+	/* variables whose ownership needs resetting at the start of the next tick */
+	private OwnershipSet resolved = new OwnershipSet();
+	
+	/* claims on exclusive variables, only used with deterministic exclusion */
+	private IntentResolver intents = new IntentResolver(this);
+	
+	/* update and subscription regions, only used with a routing space */
+	private RegionManager regions;
+	
 	/**
 	 * Creates an ObjectLookup with a ClassLookup configured for this
 	 * federation.
@@ -109,8 +140,14 @@ public class ObjectLookup {
 		if (!clLookup.isResolved())
 			clLookup.resolveNames();	
 	
+		regions = new RegionManager(clLookup);
+		if (LocalManager.isRegionRouting())
+			regions.initialise(LocalManager.getRoutingSpace(), LocalManager.getRoutingBounds());
 		remotes = new RemoteBase(this, clLookup);		
-		local = new LocalBase(clLookup);
+		local = new LocalBase(clLookup, regions);
+		bundle.initialise(LocalManager.isBundling() || LocalManager.isCommutativeCumulatives());
+		if (LocalManager.isDeterministicExclusion())
+			intents.initialise();
 		
 		this.logger = logger;
 		loggingOn = false;
@@ -145,9 +182,28 @@ public class ObjectLookup {
 	
 	////////////////////OBJECT CREATION/DISCOVERY////////////////////////
 	
-	public void registerPublicObject(PublicObject obj) 
+	public void registerPublicObject(final PublicObject obj) 
 			throws RTIexception, IOException {
 		
+		/* registered on the RTI thread when called from a parallel action,
+		 * the handle is needed straight away so the caller waits */
+		if (!Threads.isRTIThread()) {
+			final IOException[] failure = new IOException[1];
+			Threads.onRTIThread(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					try {
+						registerPublicObject(obj);
+					}
+					catch (IOException e) {
+						failure[0] = e;
+					}
+					return null;
+				}
+			});
+			if (failure[0] != null)
+				throw failure[0];
+			return;
+		}
 		DistributedSchedule.hlaTimer.start();
 		for (String vname : obj.getPublicVariables())
 			obj.getVariable(vname).setLookup(this);
@@ -211,6 +267,11 @@ public class ObjectLookup {
 	
 		DEV_TOOLS.print("<ObjectLookup::resolveUpdate> instance " + objectHandle + " at time " + time);
 		
+		if (intents.isSender(objectHandle)) {
+			intents.received(objectHandle, attrs, time);
+			return;
+		}
+		
 		if (remotes.hasInstance(objectHandle))
 			remotes.update(objectHandle, attrs);
 		else
@@ -229,9 +290,57 @@ public class ObjectLookup {
 		}		
 	}
 
+	boolean isBundleClass(int classHandle) {
+		return bundle.isBundleClass(classHandle);
+	}
+	
+	/* returns true if the instance is another federate's intent instance, 
+	 * which is then remembered rather than discovered as an object */
+	boolean discoveredIntent(int instanceHandle, int classHandle) {
+		if (!intents.isIntentClass(classHandle))
+			return false;
+		intents.discovered(instanceHandle);
+		return true;
+	}
+	
+	/* delivers one object's share of a received bundle to a locally 
+	 * registered object (the bundle's sender changed one of our variables),
+	 * returning false if the object is unknown or deleted */
+	boolean bundledLocalUpdate(int objectHandle, ReflectedAttributes13 attrs) 
+			throws IOException, FederateInternalError, RTIinternalError {
+		try {
+			local.updateInstance(objectHandle, attrs);
+			return true;
+		}
+		catch (ObjectNotFoundException e) {
+			DEV_TOOLS.print("<ObjectLookup::bundledLocalUpdate> dropped bundle entry for unknown object " + objectHandle);
+		}
+		catch (ObjectDeletedException e) {
+			DEV_TOOLS.print("<ObjectLookup::bundledLocalUpdate> dropped bundle entry for deleted object " + objectHandle);
+		}
+		return false;
+	}
+
 	public void internalUpdate(PublicVariable var) throws 	IllegalStateException, 
 													RTIexception, 
 													IOException {
+		if (!Threads.isRTIThread()) {
+			/* called from a parallel action, the update is sent from the 
+			 * RTI thread once it gets to it */
+			final PublicVariable v = var;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					try {
+						internalUpdate(v);
+					}
+					catch (IOException e) {
+						throw new VariableException("serialisation error", e);
+					}
+					return null;
+				}
+			});
+			return;
+		}
 		DEV_TOOLS.print("<ObjectLookup::internalUpdate> sending update to object " + var.getOwnersHandle() + ", var " + var.getHandle());
 		DistributedSchedule.hlaTimer.start();
 	
@@ -239,11 +348,21 @@ public class ObjectLookup {
 			throw new IllegalStateException("variable is not " + 
 											"owned by this federate");
 		}
+		var.used(getTick());
+		if (var instanceof ViewablePoint && regions.isRouting())
+			regions.written(var);
+		
+		if (LocalManager.isWriteBehind()) {
+			pending.mark(var);
+			DistributedSchedule.hlaTimer.stop();
+			return;
+		}
 	
 		SuppliedAttributes attrs = LocalManager.getSuppliedAttributes(1);
 		attrs.add(var.getHandle(), var.getBytes());
-		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getTick());
-		LocalManager.getRTI().updateAttributeValues(var.getOwnersHandle(), attrs, time, "");
+		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getSendTime());
+		LocalManager.getManager().recordSend(
+			LocalManager.getRTI().updateAttributeValues(var.getOwnersHandle(), attrs, time, ""));
 		if (loggingOn && logger != null) {
 			try {
 				LocalManager manager = LocalManager.getManager();
@@ -261,11 +380,185 @@ public class ObjectLookup {
 	
 	public void sendUpdate(PublicVariable var, byte[] value) 
 														throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			final PublicVariable v = var;
+			final byte[] val = value;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					sendUpdate(v, val);
+					return null;
+				}
+			});
+			return;
+		}
 		DEV_TOOLS.print("<ObjectLookup::sendUpdate> sending update to object " + var.getOwnersHandle() + ", var " + var.getHandle());
+		var.used(getTick());
 		SuppliedAttributes attrs = LocalManager.getSuppliedAttributes(1);
 		attrs.add(var.getHandle(), value);
-		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getTick());
-		LocalManager.getRTI().updateAttributeValues(var.getOwnersHandle(), attrs, time, "");
+		byte[] time = RTIDep.getLogTime(LocalManager.getManager().getSendTime());
+		LocalManager.getManager().recordSend(
+			LocalManager.getRTI().updateAttributeValues(var.getOwnersHandle(), attrs, time, ""));
+	}
+	
+	/**
+	 * Sends the updates buffered during this tick, one per changed object,
+	 * when the federate is in write-behind mode.
+	 * 
+	 * @see LocalManager#setWriteBehind(boolean)
+	 */
+	public void flushUpdates() throws RTIexception {
+		if (pending.isEmpty())
+			return;
+		int sent = pending.flush(LocalManager.getManager().getSendTime(), bundle.canSend() ? bundle : null);
+		DEV_TOOLS.print("<ObjectLookup::flushUpdates> sent " + sent + " updates (" + 
+						pending.valuesWritten() + " writes absorbed in to " + 
+						pending.updatesSent() + " updates so far)");
+	}
+	
+	/**
+	 * Moves the update regions of local objects whose spatial keys have 
+	 * been written since the last flush, this is done before the updates
+	 * are sent.
+	 * 
+	 * @see LocalManager#setRoutingSpace(String, java.awt.Rectangle)
+	 */
+	public void flushRegions() throws RTIexception {
+		regions.flush();
+	}
+	
+	/**
+	 * @return the number of times an update or subscription region has 
+	 * 	been moved
+	 */
+	public long getRegionModifications() {
+		return regions.modifications();
+	}
+	
+	/**
+	 * @return the number of attribute values reflected in to proxies (or 
+	 * 	shells waiting to become proxies)
+	 */
+	public long getValuesReflected() {
+		return remotes.valuesReflected();
+	}
+	
+	/**
+	 * @return the number of entries in received bundles which were dropped
+	 * 	because their object was unknown or deleted
+	 */
+	public long getBundleEntriesDropped() {
+		return remotes.bundleEntriesDropped();
+	}
+	
+	/**
+	 * @return roughly the bytes taken by the shells of instances of classes 
+	 * 	no proxies have been asked for yet
+	 */
+	public long getShellMemory() {
+		return remotes.shellMemory();
+	}
+	
+	public int getShellCount() {
+		return remotes.shellCount();
+	}
+	
+	public int getShellsDropped() {
+		return remotes.shellsDropped();
+	}
+	
+	/* the subscription region of a proxy list, see RegionManager#subscribe */
+	Region subscribe(int classHandle, Region current, Rectangle area) throws RTIexception {
+		return regions.subscribe(classHandle, current, area);
+	}
+	
+	/**
+	 * Records a modification to a cumulative variable, to be sent as part 
+	 * of this federate's delta for the tick. No ownership is needed.
+	 * 
+	 * @see LocalManager#setCommutativeCumulatives(boolean)
+	 */
+	public void addDelta(CumulativeVariable var) throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			final CumulativeVariable v = var;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					addDelta(v);
+					return null;
+				}
+			});
+			return;
+		}
+		deltas.mark(var);
+	}
+	
+	/**
+	 * Sends the summed modifications to cumulative variables made since the
+	 * last flush, in a single bundle.
+	 */
+	public void flushDeltas() throws RTIexception {
+		if (deltas.isEmpty())
+			return;
+		deltas.flush(LocalManager.getManager().getSendTime(), bundle);
+		DEV_TOOLS.print("<ObjectLookup::flushDeltas> " + deltas.valuesWritten() + 
+						" modifications sent in " + deltas.updatesSent() + " bundles so far");
+	}
+	
+	/**
+	 * Records which proxies are visible and starts journaling in to a new
+	 * checkpoint, so the federate can be restored to this point if it has 
+	 * to roll back. Variable values are not copied now, each is copied in 
+	 * to the checkpoint just before it is first changed.
+	 * 
+	 * @see LocalManager#setOptimistic(boolean)
+	 */
+	public StateCheckpoint checkpoint() {
+		StateCheckpoint cp = new StateCheckpoint();
+		remotes.saveState(cp);
+		journal = cp;
+		return cp;
+	}
+	
+	/**
+	 * Called by a {@link PublicVariable} before its value is replaced.
+	 */
+	public void changing(PublicVariable var) {
+		StateCheckpoint cp = journal;
+		if (cp != null)
+			cp.changing(var);
+	}
+	
+	/**
+	 * Sets the checkpoint changes are journaled in to, the latest one kept 
+	 * after a rollback or null if there is none.
+	 */
+	public void setJournal(StateCheckpoint cp) {
+		journal = cp;
+	}
+	
+	/**
+	 * Puts back the values the variables changed since the checkpoint had 
+	 * when it was taken. Undoing each checkpoint from the newest to the 
+	 * one being rolled back to leaves every variable as it was then.
+	 */
+	public void undo(StateCheckpoint cp) throws RTIexception {
+		StateCheckpoint current = journal;
+		journal = null;
+		try {
+			for (PublicVariable var : cp.values.keySet())
+				var.restore(cp.values.get(var));
+		}
+		finally {
+			journal = current;
+		}
+	}
+	
+	/**
+	 * Undoes the checkpoint and puts every proxy list back to the state
+	 * held in it, all later checkpoints must have been undone first.
+	 */
+	public void restore(StateCheckpoint cp) throws RTIexception {
+		undo(cp);
+		remotes.restoreState(cp);
 	}
 	
 	public void loggingOn(boolean on) {
@@ -286,14 +579,42 @@ public class ObjectLookup {
 		local.cleanReferences();
 	}
 
-	public void localDelete(PublicObject obj) 
+	public void localDelete(final PublicObject obj) 
 								throws RTIexception, ObjectNotFoundException {
+		/* from a parallel action the deletion is handed to the RTI thread, 
+		 * in order with the caller's updates */
+		if (!Threads.isRTIThread()) {
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					try {
+						localDelete(obj);
+					}
+					catch (ObjectNotFoundException e) {
+						DEV_TOOLS.showException("<ObjectLookup::localDelete> " + obj.getHandle(), e);
+					}
+					return null;
+				}
+			});
+			return;
+		}
+		pending.discard(obj.getHandle());
+		deltas.discard(obj.getHandle());
 		local.deleteObject(obj);
 	}
 	
+	/**
+	 * Hides a proxy whose routed attributes have gone out of the local
+	 * subscription regions, or shows it again once they are back in.
+	 */
+	public void scopeChanged(int objectHandle, boolean inScope) {
+		DEV_TOOLS.print("<ObjectLookup::scopeChanged> instance " + objectHandle + (inScope ? " in" : " out of") + " scope");
+		remotes.scopeChanged(objectHandle, inScope);
+	}
+	
 	public void removeInstance(int objectHandle) {
 		DEV_TOOLS.print("<ObjectLookup::removeInstance> instance " + objectHandle);
-		remotes.delete(objectHandle);
+		if (!intents.removed(objectHandle))
+			remotes.delete(objectHandle);
 	}
 	
 	////////////////////////////OBJECT REGISTRATION HELPER /////////////
@@ -320,6 +641,13 @@ public class ObjectLookup {
 	
 		boolean answer = false;
 		try {
+			/* never wait on another federate whilst holding on to ownership
+			 * for a deferred update, or two federates could wait on each other */
+			if (!(var instanceof ViewableVariable) 
+					&& var.getOwnership() != PublicVariable.OwnershipState.OWNED
+					&& pending.holdsOwnership())
+				flushUpdates();
+			
 			if (var instanceof ExclusiveVariable) {
 				answer = oneTimeCheck(var);
 			}
@@ -355,6 +683,91 @@ public class ObjectLookup {
 		return answer;
 	}
 
+	/**
+	 * Asks for the ownership of all the given variables, with one request 
+	 * per object, without waiting for the answers.
+	 * 
+	 * @see LocalManager#acquireOwnership(PublicVariable[])
+	 */
+	public OwnershipRequest acquire(final Collection<? extends PublicVariable> vars) 
+			throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			return Threads.onRTIThread(new Threads.RTICall<OwnershipRequest>() {
+				public OwnershipRequest call() throws RTIexception {
+					return acquire(vars);
+				}
+			});
+		}
+		DistributedSchedule.hlaTimer.start();
+		try {
+			OwnershipRequest request = new OwnershipRequest(this, vars);
+			submitAcquisition(request.getVariables());
+			return request;
+		}
+		finally {
+			DistributedSchedule.hlaTimer.stop();
+		}
+	}
+	
+	void submitAcquisition(List<PublicVariable> vars) throws RTIexception {
+		Hashtable<Integer, ArrayList<PublicVariable>> byObject = 
+								new Hashtable<Integer, ArrayList<PublicVariable>>();
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (PublicVariable var : vars) {
+			if (var instanceof ViewableVariable || var.isOwned()
+					|| var.getOwnership() == PublicVariable.OwnershipState.DELETED)
+				continue;
+			/* exclusive variables only get one chance per tick */
+			if (var instanceof ExclusiveVariable 
+					&& var.getOwnership() == PublicVariable.OwnershipState.NOT_OWNED)
+				continue;
+			var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+			ArrayList<PublicVariable> group = byObject.get(var.getOwnersHandle());
+			if (group == null) {
+				group = new ArrayList<PublicVariable>();
+				byObject.put(var.getOwnersHandle(), group);
+				order.add(var.getOwnersHandle());
+			}
+			group.add(var);
+		}
+		for (int owner : order) {
+			ArrayList<PublicVariable> group = byObject.get(owner);
+			AttributeHandleSet handles = LocalManager.getHandleSet(group.size());
+			for (PublicVariable var : group)
+				handles.add(var.getHandle());
+			try {
+				LocalManager.getRTI().attributeOwnershipAcquisitionIfAvailable(owner, handles);
+			}
+			catch (FederateOwnsAttributes e) {
+				requestEach(group);
+			}
+			catch (AttributeAlreadyBeingAcquired e) {
+				requestEach(group);
+			}
+			catch (ObjectNotKnown e) {
+				/* not NOT_OWNED, or cumulative variables would be asked for 
+				 * again for ever */
+				for (PublicVariable var : group)
+					var.setOwnership(PublicVariable.OwnershipState.DELETED);
+			}
+		}
+	}
+	
+	/* the whole request fails if any one attribute can't be asked for, so 
+	 * fall back to asking for them one at a time */
+	private void requestEach(List<PublicVariable> group) throws RTIexception {
+		for (PublicVariable var : group) {
+			try {
+				requestOwnership(var);
+			}
+			catch (AttributeAlreadyBeingAcquired e) {}
+		}
+	}
+	
+	boolean holdsDeferredOwnership() {
+		return pending.holdsOwnership();
+	}
+
 	public void requestOwnership(PublicVariable var) throws RTIexception {		
 		AttributeHandleSet handles = LocalManager.getHandleSet(1);
 		handles.add(var.getHandle());
@@ -366,6 +779,21 @@ public class ObjectLookup {
 		catch (FederateOwnsAttributes e) {
 			var.setOwnership(PublicVariable.OwnershipState.OWNED);
 		}
+		catch (AttributeAlreadyBeingAcquired e) {
+			alreadyAsked(var);
+		}
+		catch (ObjectNotKnown e) {
+			/* the object was deleted, as in submitAcquisition */
+			var.setOwnership(PublicVariable.OwnershipState.DELETED);
+		}
+	}
+	
+	/* we have asked another federate to release its lease on the variable
+	 * and are waiting for it. Never wait for an exclusive variable, the 
+	 * holder may keep it until its next tick */
+	private void alreadyAsked(PublicVariable var) {
+		if (var instanceof ExclusiveVariable)
+			var.setOwnership(PublicVariable.OwnershipState.NOT_OWNED);
 	}
 	
 	private boolean oneTimeCheck(PublicVariable var) 
@@ -382,6 +810,9 @@ public class ObjectLookup {
 			var.setOwnership(PublicVariable.OwnershipState.OWNED);
 			return true;
 		}
+		catch (AttributeAlreadyBeingAcquired e) {
+			alreadyAsked(var);
+		}
 		return var.waitForOwnershipResolution();
 	}
 
@@ -391,6 +822,8 @@ public class ObjectLookup {
 		AttributeHandleSet handles = LocalManager.getHandleSet(1);
 		handles.add(var.getHandle());
 		do {
+			/* so a refusal is waited for rather than re-read */
+			var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
 			try {
 				int ownHand = var.getOwnersHandle();
 				LocalManager.getRTI().attributeOwnershipAcquisitionIfAvailable(
@@ -411,6 +844,18 @@ public class ObjectLookup {
 	}
 
 	public void returnOwnership(PublicVariable var) throws RTIexception {
+		if (LocalManager.isLeasing())
+			return; /* kept until the lease runs out or is asked for */
+		if (!Threads.isRTIThread()) {
+			final PublicVariable v = var;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					returnOwnership(v);
+					return null;
+				}
+			});
+			return;
+		}
 
 		DistributedSchedule.hlaTimer.start();
 		AttributeHandleSet handles = LocalManager.getHandleSet(1);		
@@ -425,38 +870,120 @@ public class ObjectLookup {
 
 		DEV_TOOLS.print("resetting all ownerships...");
 		DEV_TOOLS.indent();		
-		StopWatch t = new StopWatch(); t.start();
+		DistributedSchedule.resetTimer.start();
 		
-		remotes.resetAll();
-		local.resetAll();
+		if (LocalManager.isLeasing())
+			cancelAsks();
+		int objects = resolved.size();
+		int calls = resolved.reset();
+		/* piggy-back a refresh request since this gets called regularly */
+		remotes.refreshIncompleteProxies();
 		
-		t.stop();
+		DistributedSchedule.resetTimer.stop();
 		DEV_TOOLS.undent();
-		DEV_TOOLS.print("took " + t.getTotal() + " millis");		
+		DEV_TOOLS.print("took " + DistributedSchedule.resetTimer.getLast() + " millis, " + 
+						calls + " divestitures for " + objects + " objects");		
+	}
+	
+	/**
+	 * Claims the right to write the given value to an exclusive variable at
+	 * this federate's current send time. The value is written (everywhere)
+	 * once the claim has been resolved against any other claims on the 
+	 * variable for the same time.
+	 * 
+	 * @see LocalManager#setDeterministicExclusion(boolean)
+	 */
+	public void claim(ExclusiveVariable var, byte[] value) throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			final ExclusiveVariable v = var;
+			final byte[] val = value;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					claim(v, val);
+					return null;
+				}
+			});
+			return;
+		}
+		intents.claim(var, value, LocalManager.getManager().getSendTime());
+	}
+	
+	/**
+	 * Sends the claims made by this federate since the last flush.
+	 */
+	public void flushClaims() throws RTIexception {
+		int sent = intents.flush();
+		if (sent > 0)
+			DEV_TOOLS.print("<ObjectLookup::flushClaims> sent " + sent + " claim batches");
+	}
+	
+	/**
+	 * Resolves all the claims made for times up to and including the given
+	 * time, this should only be called once the federate has been granted
+	 * that time and the received claims have been executed.
+	 */
+	public void resolveClaims(double time) {
+		intents.resolve(time);
+	}
+	
+	/* writes the winning value of a claim to the local or proxy copy of the
+	 * variable, if we have one */
+	void applyClaim(int objectHandle, int attributeHandle, byte[] value) {
+		ReflectedAttributes13 attrs = 
+			new ReflectedAttributes13(new int[] {attributeHandle}, new byte[][] {value}, 1);
+		try {
+			if (remotes.hasInstance(objectHandle))
+				remotes.update(objectHandle, attrs);
+			else if (local.hasInstance(objectHandle))
+				local.updateInstance(objectHandle, attrs);
+		}
+		catch (ObjectNotFoundException e) {}
+		catch (ObjectDeletedException e) {}
+		catch (Exception e) {
+			DEV_TOOLS.showException("<ObjectLookup::applyClaim> " + objectHandle, e);
+		}
+	}
+	
+	/**
+	 * @return the number of claims made by this federate
+	 */
+	public long getClaimsMade() {
+		return intents.claimsMade();
+	}
+	
+	/**
+	 * @return the number of claims made by this federate which lost to
+	 * 	another federate's claim on the same variable
+	 */
+	public long getClaimsLost() {
+		return intents.claimsLost();
+	}
+	
+	/**
+	 * Called by a {@link PublicVariable} when its ownership becomes OWNED,
+	 * NOT_OWNED or DELETED, so that it will be reset at the start of the next tick.
+	 */
+	public void ownershipResolved(PublicVariable var) {
+		if (var instanceof ExclusiveVariable || var instanceof CumulativeVariable)
+			resolved.add(var);
 	}
 	
 	
 	public void notifyOwnership(int objectHandle, AttributeHandleSet handles) 
-		throws ObjectNotFoundException, ObjectDeletedException {				
+		throws ObjectNotFoundException, ObjectDeletedException, RTIexception {				
+		if (LocalManager.isLeasing())
+			handles = dropUnwanted(objectHandle, handles);
 		try {		
 			if (remotes.hasProxy(objectHandle)) {
 				RemoteObject ob = remotes.getProxy(objectHandle);
 				Class globalClass = instantiationMap.get(ob.getClass());
-				int gcHandle = clLookup.getClassHandle(globalClass);
-				for (int i = 0; i < handles.size(); i++) {
-					String varName = 
-						clLookup.getVariableName(gcHandle, handles.getHandle(i));
-					ob.getVariable(varName).setOwnership(PublicVariable.OwnershipState.OWNED);
-				}
+				setOwnership(ob, globalClass, handles, 
+								PublicVariable.OwnershipState.OWNED);
 			}
 			else if (local.hasInstance(objectHandle)) {		
 				PublicObject ob = local.getObject(objectHandle);
-				int cHandle = clLookup.getClassHandle(ob.getClass());
-				for (int i = 0; i < handles.size(); i++) {
-					String varName =
-						clLookup.getVariableName(cHandle, handles.getHandle(i));
-					ob.getVariable(varName).setOwnership(PublicVariable.OwnershipState.OWNED);
-				}
+				setOwnership(ob, clLookup.getSlotTable(ob.getClass()), handles, 
+								PublicVariable.OwnershipState.OWNED);
 			}
 			else
 				DEV_TOOLS.print("<ObjectLookup::notifyOwnership> recieved ownership notification for an unknown object !");
@@ -474,21 +1001,13 @@ public class ObjectLookup {
 			if (remotes.hasProxy(objectHandle)) {
 				RemoteObject ob = remotes.getProxy(objectHandle);
 				Class globalClass = instantiationMap.get(ob.getClass());
-				int gcHandle = clLookup.getClassHandle(globalClass);
-				for (int i = 0; i < handles.size(); i++) {
-					String varName = 
-						clLookup.getVariableName(gcHandle, handles.getHandle(i));
-					ob.getVariable(varName).setOwnership(PublicVariable.OwnershipState.NOT_OWNED);
-				}
+				setOwnership(ob, globalClass, handles, 
+								PublicVariable.OwnershipState.NOT_OWNED);
 			}
 			else if (local.hasInstance(objectHandle)) {		
 				PublicObject ob = local.getObject(objectHandle);
-				int cHandle = clLookup.getClassHandle(ob.getClass());
-				for (int i = 0; i < handles.size(); i++) {
-					String varName =
-						clLookup.getVariableName(cHandle, handles.getHandle(i));
-					ob.getVariable(varName).setOwnership(PublicVariable.OwnershipState.NOT_OWNED);
-				}
+				setOwnership(ob, clLookup.getSlotTable(ob.getClass()), handles, 
+								PublicVariable.OwnershipState.NOT_OWNED);
 			}
 			else
 				DEV_TOOLS.print("<ObjectLookup::notifyOwnershipFailure> received ownership failure for an unkown object");
@@ -498,5 +1017,244 @@ public class ObjectLookup {
 		}
 		
 		DEV_TOOLS.print("<ObjectLookup::notifyOwnershipFailure> for object " + objectHandle);
+		
+		if (LocalManager.isLeasing())
+			askRelease(objectHandle, handles);
+	}
+	
+	/* variables whose holders have been asked to release them, and whose 
+	 * answers haven't arrived */
+	private ArrayList<PublicVariable> asking = new ArrayList<PublicVariable>();
+	
+	/* asks the holder to release those of the refused variables it is known
+	 * to hold as a lease. An owner only keeps a cumulative variable as a 
+	 * lease (without leases it is returned after each modification), but 
+	 * it may own an exclusive variable because it is writing it this tick.
+	 * That ownership is given up at the owner's next reset, so an exclusive
+	 * variable is only taken to be leased once it has been refused in 
+	 * ticks at least two apart without being acquired in between */
+	private void askRelease(int objectHandle, AttributeHandleSet handles) 
+		throws ObjectNotFoundException, ObjectDeletedException {
+		double tick = getTick();
+		ArrayList<PublicVariable> leased = new ArrayList<PublicVariable>();
+		for (PublicVariable var : variablesOf(objectHandle, handles)) {
+			var.contended(false);
+			var.refused(tick);
+			if (!Double.isNaN(var.getAskedAt()))
+				continue;
+			if (var instanceof CumulativeVariable || tick - var.getRefusedSince() >= 2)
+				leased.add(var);
+		}
+		if (leased.isEmpty())
+			return;
+		try {
+			AttributeHandleSet asked = LocalManager.getHandleSet(leased.size());
+			for (PublicVariable var : leased)
+				asked.add(var.getHandle());
+			LocalManager.getRTI().attributeOwnershipAcquisition(objectHandle, asked, "");
+			for (PublicVariable var : leased) {
+				var.asked(tick);
+				asking.add(var);
+			}
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.print("<ObjectLookup::askRelease> " + e);
+		}
+	}
+	
+	/* withdraws the requests for release which haven't been answered by the
+	 * end of the tick they were made in. If one has been granted meanwhile
+	 * the grant is given back when it arrives (see dropUnwanted) */
+	private void cancelAsks() throws RTIexception {
+		for (PublicVariable var : asking) {
+			if (Double.isNaN(var.getAskedAt()))
+				continue;
+			/* one at a time, the whole call fails if any one has been granted */
+			AttributeHandleSet handles = LocalManager.getHandleSet(1);
+			handles.add(var.getHandle());
+			try {
+				LocalManager.getRTI().cancelAttributeOwnershipAcquisition(var.getOwnersHandle(), handles);
+			}
+			catch (AttributeAcquisitionWasNotRequested e) {}
+			catch (AttributeAlreadyOwned e) {}
+			catch (ObjectNotKnown e) {
+				var.askAnswered();
+			}
+		}
+		asking.clear();
+	}
+	
+	/**
+	 * Called when the RTI confirms that a request for the release of the
+	 * given variables was withdrawn.
+	 */
+	public void acquisitionCancelled(int objectHandle, AttributeHandleSet handles) 
+		throws ObjectNotFoundException, ObjectDeletedException {
+		for (PublicVariable var : variablesOf(objectHandle, handles))
+			var.askAnswered();
+	}
+	
+	/* gives back any of the acquired variables which were asked for in an 
+	 * earlier tick, this federate has moved on and no longer wants them, 
+	 * and returns the handles of the rest */
+	private AttributeHandleSet dropUnwanted(int objectHandle, AttributeHandleSet handles) 
+		throws ObjectNotFoundException, ObjectDeletedException, RTIexception {
+		double tick = getTick();
+		ArrayList<PublicVariable> unwanted = new ArrayList<PublicVariable>();
+		ArrayList<PublicVariable> wanted = new ArrayList<PublicVariable>();
+		for (PublicVariable var : variablesOf(objectHandle, handles)) {
+			if (var.getAskedAt() < tick)
+				unwanted.add(var);
+			else
+				wanted.add(var);
+			var.askAnswered();
+		}
+		if (unwanted.isEmpty())
+			return handles;
+		AttributeHandleSet returned = LocalManager.getHandleSet(unwanted.size());
+		for (PublicVariable var : unwanted)
+			returned.add(var.getHandle());
+		try {
+			LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(objectHandle, returned);
+		}
+		catch (ObjectNotKnown e) {}
+		DEV_TOOLS.print("<ObjectLookup::dropUnwanted> gave back " + unwanted.size() + " variables of " + objectHandle);
+		AttributeHandleSet kept = LocalManager.getHandleSet(Math.max(wanted.size(), 1));
+		for (PublicVariable var : wanted)
+			kept.add(var.getHandle());
+		return kept;
+	}
+	
+	/**
+	 * Called when another federate asks for variables this federate holds
+	 * a lease on (see {@link LocalManager#setOwnershipLease(int)}). They
+	 * are released now unless they are exclusive variables which have 
+	 * been written this tick, these are released at the next reset.
+	 */
+	public void releaseRequested(int objectHandle, AttributeHandleSet handles) 
+		throws RTIexception {
+		ArrayList<PublicVariable> now = new ArrayList<PublicVariable>();
+		double tick = getTick();
+		try {
+			for (PublicVariable var : variablesOf(objectHandle, handles)) {
+				if (var.getOwnership() != PublicVariable.OwnershipState.OWNED)
+					continue;
+				boolean keep = var instanceof ExclusiveVariable && var.getLastUsed() >= tick;
+				var.contended(keep);
+				if (!keep)
+					now.add(var);
+			}
+		}
+		catch (ObjectNotFoundException e) {
+			return;
+		}
+		catch (ObjectDeletedException e) {
+			return;
+		}
+		if (now.isEmpty())
+			return;
+		/* writes held back under this ownership have to go first */
+		if (pending.holdsOwnership())
+			flushUpdates();
+		AttributeHandleSet released = LocalManager.getHandleSet(now.size());
+		for (PublicVariable var : now)
+			released.add(var.getHandle());
+		try {
+			LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(objectHandle, released);
+		}
+		catch (ObjectNotKnown e) {}
+		for (PublicVariable var : now) {
+			var.released();
+			var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+		}
+		DEV_TOOLS.print("<ObjectLookup::releaseRequested> released " + now.size() + " variables of " + objectHandle);
+	}
+	
+	/**
+	 * @return the number of times ownership of a variable has been kept
+	 * 	from one tick to the next
+	 */
+	public long getLeasesKept() {
+		return resolved.leasesKept();
+	}
+	
+	private ArrayList<PublicVariable> variablesOf(int objectHandle, AttributeHandleSet handles) 
+		throws ObjectNotFoundException, ObjectDeletedException {
+		ArrayList<PublicVariable> vars = new ArrayList<PublicVariable>();
+		int[] slots;
+		try {
+			if (remotes.hasProxy(objectHandle)) {
+				RemoteObject ob = remotes.getProxy(objectHandle);
+				Class globalClass = instantiationMap.get(ob.getClass());
+				slots = clLookup.getSlotTable(globalClass);
+				String[] names = clLookup.getVarNames(globalClass);
+				for (int i = 0; i < handles.size(); i++) {
+					PublicVariable var = variableAt(ob, ClassLookup.slotOf(slots, handles.getHandle(i)), names);
+					if (var != null)
+						vars.add(var);
+				}
+			}
+			else if (local.hasInstance(objectHandle)) {
+				PublicObject ob = local.getObject(objectHandle);
+				slots = clLookup.getSlotTable(ob.getClass());
+				for (int i = 0; i < handles.size(); i++) {
+					PublicVariable var = ob.getVariable(ClassLookup.slotOf(slots, handles.getHandle(i)));
+					if (var != null)
+						vars.add(var);
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBounds e) {
+			e.printStackTrace();
+		}
+		return vars;
+	}
+	
+	private void setOwnership(	RemoteObject ob, 
+								Class globalClass, 
+								AttributeHandleSet handles, 
+								PublicVariable.OwnershipState state) 
+		throws ArrayIndexOutOfBounds {
+		int[] slots = clLookup.getSlotTable(globalClass);
+		String[] names = clLookup.getVarNames(globalClass);
+		for (int i = 0; i < handles.size(); i++) {
+			PublicVariable var = variableAt(ob, ClassLookup.slotOf(slots, handles.getHandle(i)), names);
+			if (var != null) {
+				var.setOwnership(state);
+				if (state == PublicVariable.OwnershipState.OWNED)
+					var.used(getTick());
+			}
+		}
+	}
+	
+	private void setOwnership(	PublicObject ob, 
+								int[] slots, 
+								AttributeHandleSet handles, 
+								PublicVariable.OwnershipState state) 
+		throws ArrayIndexOutOfBounds {
+		for (int i = 0; i < handles.size(); i++) {
+			PublicVariable var = ob.getVariable(ClassLookup.slotOf(slots, handles.getHandle(i)));
+			if (var != null) {
+				var.setOwnership(state);
+				if (state == PublicVariable.OwnershipState.OWNED)
+					var.used(getTick());
+			}
+		}
+	}
+	
+	/**
+	 * Slot-indexed access to any proxy, those of model classes which only 
+	 * implement RemoteObject are looked up by name.
+	 * 
+	 * @param varNames the variable names of the proxy's global class, in 
+	 * 	slot order (see {@link ClassLookup#getVarNames(Class)})
+	 * @return the variable, or null if the slot isn't one of the object's
+	 */
+	static PublicVariable variableAt(RemoteObject ob, int slot, String[] varNames) {
+		if (ob instanceof SlotAccess)
+			return ((SlotAccess)ob).getVariable(slot);
+		if (slot < 0 || slot >= varNames.length)
+			return null;
+		return ob.getVariable(varNames[slot]);
 	}
 }
@@ -32,20 +32,19 @@ This file is part of HLA_RePast.
  */
 package object;
 
-import io.ReflectedAttributes13;
-
-import java.util.Hashtable;
-
 /**
  * Object Shells are needed to record the discovery and
  * updating of proxy objects before we know what class should
  * be used to instantiate those objects.
  * 
- * The shell simply stores the object's handle and a list
- * of &lt;attribute handle, byte value&gt; pairs. This list of
- * updates can be used when the object is instantiated for 
- * real to provide up to date attribute values without having
- * to request a refresh of the object with the federation.
+ * The shell records the object's handle and the last value
+ * reflected for each of its attributes. These values can be 
+ * used when the object is instantiated for real to provide up 
+ * to date attribute values without having to request a refresh 
+ * of the object with the federation.
+ * 
+ * The values themselves are kept by the {@link ShellList} of the
+ * object's class, a shell is just a view of one of its rows.
  * 
  * @see RemoteObject
  * @see RemoteBase
@@ -55,28 +54,21 @@ import java.util.Hashtable;
  */
 class ObjectShell {
 
-	protected Hashtable<Integer, byte[]> attributeTable;
-	protected int handle;
+	private ShellList list;
+	private int row;
+	private int handle;
 
-	ObjectShell(int handle) {	
+	ObjectShell(ShellList list, int row, int handle) {	
+		this.list = list;
+		this.row = row;
 		this.handle = handle;
-		this.attributeTable = new Hashtable<Integer, byte[]>();
 	}
 
 	int getHandle() {	
 		return this.handle;
 	}
 
-	void update(ReflectedAttributes13 attrs) {
-		for (int i = 0; i < attrs.size(); i++)
-			setAttribute(attrs.getHandle(i), attrs.getValue(i));
-	}
-	
-	synchronized void setAttribute(int handle, byte[] value) {	
-		attributeTable.put(new Integer(handle), value);
-	}
-
-	synchronized byte[] getAttribute(int handle) {
-		return (byte[])attributeTable.get(handle);
+	byte[] getAttribute(int handle) {
+		return list.getAttribute(row, handle);
 	}
 }
@@ -0,0 +1,197 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.RTIexception;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import object.variables.CumulativeVariable;
+import object.variables.PublicVariable;
+import rtidep.Threads;
+
+import manager.DistributedSchedule;
+import manager.LocalManager;
+
+/**
+ * A pending request for the ownership of a group of 
+ * {@link PublicVariable}s, possibly belonging to many objects.
+ * 
+ * Requests are made through {@link LocalManager#acquireOwnership(PublicVariable[])}
+ * which sends one acquisition request per object and returns straight 
+ * away. The answers arrive as the RTI is ticked, so a model can submit the 
+ * request early in an action, do other work, and only then 
+ * {@link #await()} the result (or pass the request to the 
+ * <code>set</code> variants which take one, eg. 
+ * {@link object.variables.ExclusiveInteger#set(int, OwnershipRequest)}).
+ * 
+ * The usual conflict resolution semantics apply: exclusive variables are
+ * asked for once and may come back NOT_OWNED, cumulative variables are
+ * asked for again until they are owned. Variables of objects deleted 
+ * meanwhile come back DELETED, and are not asked for again.
+ * 
+ * @author Rob Minson
+ */
+public class OwnershipRequest {
+
+	private ObjectLookup lookup;
+	private List<PublicVariable> vars;
+	
+	OwnershipRequest(ObjectLookup lookup, Collection<? extends PublicVariable> vars) {
+		this.lookup = lookup;
+		this.vars = new ArrayList<PublicVariable>(vars);
+	}
+	
+	/**
+	 * @return the variables covered by this request
+	 */
+	public List<PublicVariable> getVariables() {
+		return vars;
+	}
+	
+	/**
+	 * @return true if an answer has been received for every variable. This
+	 * 	does not tick the RTI.
+	 */
+	public boolean isResolved() {
+		for (PublicVariable var : vars) {
+			if (!isResolved(var))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Ticks the RTI until every variable in the request has been resolved.
+	 * 
+	 * @return true if all the variables are now owned by this federate
+	 */
+	public boolean await() throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			return Threads.onRTIThread(new Threads.RTICall<Boolean>() {
+				public Boolean call() throws RTIexception {
+					return await();
+				}
+			});
+		}
+		DistributedSchedule.hlaTimer.start();
+		try {
+			releaseDeferred();
+			while (true) {
+				while (!isResolved())
+					Threads.RTI_LONG_TICK();
+				List<PublicVariable> retry = new ArrayList<PublicVariable>();
+				for (PublicVariable var : vars) {
+					if (mustRetry(var))
+						retry.add(var);
+				}
+				if (retry.isEmpty())
+					break;
+				lookup.submitAcquisition(retry);
+			}
+		}
+		finally {
+			DistributedSchedule.hlaTimer.stop();
+		}
+		for (PublicVariable var : vars) {
+			if (!var.isOwned())
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Ticks the RTI until the given variable (which must be part of this 
+	 * request) has been resolved.
+	 * 
+	 * @return true if the variable is now owned by this federate
+	 */
+	public boolean await(final PublicVariable var) throws RTIexception {
+		if (!vars.contains(var))
+			throw new IllegalArgumentException("variable is not part of this request");
+		if (!Threads.isRTIThread()) {
+			return Threads.onRTIThread(new Threads.RTICall<Boolean>() {
+				public Boolean call() throws RTIexception {
+					return await(var);
+				}
+			});
+		}
+		DistributedSchedule.hlaTimer.start();
+		try {
+			releaseDeferred();
+			while (true) {
+				while (!isResolved(var))
+					Threads.RTI_LONG_TICK();
+				if (!mustRetry(var))
+					break;
+				List<PublicVariable> retry = new ArrayList<PublicVariable>(1);
+				retry.add(var);
+				lookup.submitAcquisition(retry);
+			}
+		}
+		finally {
+			DistributedSchedule.hlaTimer.stop();
+		}
+		return var.isOwned();
+	}
+	
+	private boolean isResolved(PublicVariable var) {
+		return var.getOwnership() != PublicVariable.OwnershipState.AMBIGUOUS;
+	}
+	
+	/* cumulative variables are persistently asked for, unless their object
+	 * has gone (DELETED) */
+	private boolean mustRetry(PublicVariable var) {
+		return var instanceof CumulativeVariable 
+				&& var.getOwnership() == PublicVariable.OwnershipState.NOT_OWNED;
+	}
+	
+	/* 
+	 * Before waiting on other federates we must give up ownership held for
+	 * deferred updates (see ObjectLookup.checkOwnership), any of our own 
+	 * variables released by this are asked for again.
+	 */
+	private void releaseDeferred() throws RTIexception {
+		if (isResolved() || !lookup.holdsDeferredOwnership())
+			return;
+		List<PublicVariable> owned = new ArrayList<PublicVariable>();
+		for (PublicVariable var : vars) {
+			if (var.isOwned())
+				owned.add(var);
+		}
+		lookup.flushUpdates();
+		List<PublicVariable> released = new ArrayList<PublicVariable>();
+		for (PublicVariable var : owned) {
+			if (!var.isOwned())
+				released.add(var);
+		}
+		if (!released.isEmpty())
+			lookup.submitAcquisition(released);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.AttributeNotOwned;
+import hla.rti13.java1.ObjectNotKnown;
+import hla.rti13.java1.RTIexception;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+import object.variables.PublicVariable;
+
+import manager.LocalManager;
+
+/**
+ * The set of {@link object.variables.ExclusiveVariable}s and 
+ * {@link object.variables.CumulativeVariable}s whose ownership has been
+ * resolved (to OWNED or NOT_OWNED) since the last reset.
+ * 
+ * At the start of each tick only these variables need to be returned to
+ * the AMBIGUOUS state, and only those which are OWNED need divesting, 
+ * which is done with one call per object rather than one per variable.
+ * 
+ * With ownership leases on (see {@link LocalManager#setOwnershipLease(int)}) 
+ * owned variables which nobody else has asked for, and which have been 
+ * used recently enough, are kept OWNED (and in the set) instead.
+ * 
+ * @author Rob Minson
+ */
+class OwnershipSet {
+
+	private Hashtable<Integer, ArrayList<PublicVariable>> touched = 
+								new Hashtable<Integer, ArrayList<PublicVariable>>();
+	private ArrayList<Integer> order = new ArrayList<Integer>();
+	
+	void add(PublicVariable var) {
+		Integer owner = var.getOwnersHandle();
+		ArrayList<PublicVariable> vars = touched.get(owner);
+		if (vars == null) {
+			vars = new ArrayList<PublicVariable>();
+			touched.put(owner, vars);
+			order.add(owner);
+		}
+		if (!vars.contains(var))
+			vars.add(var);
+	}
+	
+	int size() {
+		return order.size();
+	}
+	
+	/**
+	 * Divests the owned variables and returns all the tracked variables to
+	 * AMBIGUOUS, then empties the set.
+	 * 
+	 * @return the number of divestiture calls made to the RTI
+	 */
+	int reset() throws RTIexception {
+		int calls = 0;
+		ArrayList<PublicVariable> kept = new ArrayList<PublicVariable>();
+		double tick = LocalManager.isLeasing() ? LocalManager.getManager().getTick() : 0;
+		for (Integer owner : order) {
+			ArrayList<PublicVariable> vars = touched.get(owner);
+			if (LocalManager.isLeasing()) {
+				for (int i = vars.size() - 1; i >= 0; i--) {
+					if (isLeased(vars.get(i), tick))
+						kept.add(vars.remove(i));
+				}
+			}
+			int owned = 0;
+			for (PublicVariable var : vars) {
+				if (var.getOwnership() == PublicVariable.OwnershipState.OWNED)
+					owned++;
+			}
+			if (owned > 0) {
+				AttributeHandleSet handles = LocalManager.getHandleSet(owned);
+				for (PublicVariable var : vars) {
+					if (var.getOwnership() == PublicVariable.OwnershipState.OWNED) {
+						handles.add(var.getHandle());
+						var.released();
+					}
+				}
+				calls++;
+				try {
+					LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(owner, handles);
+				}
+				catch (AttributeNotOwned e) {
+					/* the whole call fails if any one attribute wasn't ours, so fall
+					 * back to divesting one at a time */
+					calls += divestEach(owner, vars);
+				}
+				catch (ObjectNotKnown e) {}
+			}
+			for (PublicVariable var : vars)
+				var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+		}
+		touched.clear();
+		order.clear();
+		for (PublicVariable var : kept)
+			add(var);
+		leasesKept += kept.size();
+		return calls;
+	}
+	
+	private boolean isLeased(PublicVariable var, double tick) {
+		return var.getOwnership() == PublicVariable.OwnershipState.OWNED
+				&& !var.isReleaseWanted()
+				&& tick - var.getLastUsed() < LocalManager.getOwnershipLease();
+	}
+	
+	private long leasesKept = 0;
+	
+	/**
+	 * @return the number of times a variable's ownership has been kept 
+	 * 	through a reset
+	 */
+	long leasesKept() {
+		return leasesKept;
+	}
+	
+	private int divestEach(int owner, ArrayList<PublicVariable> vars) 
+			throws RTIexception {
+		int calls = 0;
+		for (PublicVariable var : vars) {
+			if (var.getOwnership() != PublicVariable.OwnershipState.OWNED)
+				continue;
+			AttributeHandleSet handles = LocalManager.getHandleSet(1);
+			handles.add(var.getHandle());
+			calls++;
+			try {
+				LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(owner, handles);
+			}
+			catch (AttributeNotOwned e) {}
+		}
+		return calls;
+	}
+}
@@ -0,0 +1,525 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.FederateInternalError;
+import hla.rti13.java1.RTIinternalError;
+import io.Bytes;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+import object.variables.PublicVariable;
+import object.variables.ViewableBoolean;
+import object.variables.ViewableInteger;
+import object.variables.ViewablePoint;
+
+/**
+ * Column store for the values of the proxies in a {@link ProxyList}, used
+ * instead of an instance of the list's local class per proxy when the 
+ * class is stored in columns (see 
+ * {@link manager.LocalManager#setColumnar(Class, boolean)}).
+ * 
+ * Each variable the local class declares is held in primitive arrays 
+ * indexed by row, integers and booleans in one column and points in two,
+ * and each proxy is a small {@link Proxy} view of its row. The rows of
+ * the visible proxies come first and in the same order as 
+ * {@link ProxyList#getProxies()}, so row i of a column is the value of
+ * the i'th visible proxy and a model can scan a column for all of them 
+ * without touching the proxies at all, e.g.
+ * 
+ * <pre>
+ * ProxyColumns cols = tiles.getColumns();
+ * int[] xs = cols.getXs("position"), ys = cols.getYs("position");
+ * for (int i = 0; i < cols.size(); i++) 
+ *     ... xs[i], ys[i] ...
+ * </pre>
+ * 
+ * Only {@link ViewableInteger}, {@link ViewableBoolean} and 
+ * {@link ViewablePoint} variables can be stored in columns.
+ * 
+ * @author Rob Minson
+ */
+public class ProxyColumns {
+
+	private static final int INT = 0;
+	private static final int BOOLEAN = 1;
+	private static final int POINT = 2;
+	
+	private String[] names;
+	private int[] kinds;
+	
+	/* the column of each slot of the remote class, -1 if not declared */
+	private int[] columnBySlot;
+	
+	/* the values, second only for points (the y coordinates) */
+	private int[][] first;
+	private int[][] second;
+	private boolean[][] has;
+	
+	private Proxy[] owners;
+	
+	/* rows [0, visible) are the visible proxies, [visible, size) the rest */
+	private int size = 0;
+	private int visible = 0;
+	
+	/**
+	 * @param prototype an instance of the local class, only used to find
+	 * 	its variables
+	 * @param slotNames the variable names of the remote class in slot order
+	 * @throws IllegalArgumentException if the class declares a variable 
+	 * 	which can't be stored in a column
+	 */
+	ProxyColumns(RemoteObject prototype, String[] slotNames) {
+		names = prototype.getPublicVariables().clone();
+		kinds = new int[names.length];
+		for (int c = 0; c < names.length; c++) {
+			PublicVariable var = prototype.getVariable(names[c]);
+			if (var instanceof ViewableInteger)
+				kinds[c] = INT;
+			else if (var instanceof ViewableBoolean)
+				kinds[c] = BOOLEAN;
+			else if (var instanceof ViewablePoint)
+				kinds[c] = POINT;
+			else
+				throw new IllegalArgumentException("variable " + names[c] + " of " + 
+						prototype.getClass().getName() + " can't be stored in a column");
+		}
+		columnBySlot = new int[slotNames.length];
+		for (int s = 0; s < slotNames.length; s++)
+			columnBySlot[s] = indexOf(slotNames[s]);
+		
+		int capacity = 16;
+		first = new int[names.length][capacity];
+		second = new int[names.length][];
+		for (int c = 0; c < names.length; c++)
+			if (kinds[c] == POINT)
+				second[c] = new int[capacity];
+		has = new boolean[names.length][capacity];
+		owners = new Proxy[capacity];
+	}
+	
+	private int indexOf(String name) {
+		for (int c = 0; c < names.length; c++)
+			if (names[c].equals(name))
+				return c;
+		return -1;
+	}
+	
+	private int column(String name, int kind) {
+		int c = indexOf(name);
+		if (c < 0)
+			throw new IllegalArgumentException("no column " + name);
+		if (kinds[c] != kind && !(kind == INT && kinds[c] == BOOLEAN))
+			throw new IllegalArgumentException("column " + name + " holds " + 
+					(kinds[c] == POINT ? "points" : "integers"));
+		return c;
+	}
+	
+		//////////////////// ROWS, MOVED ALONG WITH THE ProxyTable ////////////////////
+	
+	/**
+	 * @return a new hidden proxy with no values
+	 */
+	Proxy add() {
+		if (size == owners.length)
+			grow();
+		Proxy p = new Proxy(this, size);
+		owners[size] = p;
+		for (int c = 0; c < names.length; c++)
+			has[c][size] = false;
+		size++;
+		return p;
+	}
+	
+	/* the proxy takes the first hidden row */
+	void show(Proxy p) {
+		swap(p.row, visible);
+		visible++;
+	}
+	
+	/* the proxy takes the last visible row, the table has moved the proxy
+	 * which was there to its old place */
+	void hide(Proxy p) {
+		visible--;
+		swap(p.row, visible);
+	}
+	
+	/* the proxy must be hidden */
+	void remove(Proxy p) {
+		size--;
+		swap(p.row, size);
+		owners[size] = null;
+		p.row = -1;
+	}
+	
+	private void swap(int r, int s) {
+		if (r == s)
+			return;
+		for (int c = 0; c < names.length; c++) {
+			swap(first[c], r, s);
+			if (second[c] != null)
+				swap(second[c], r, s);
+			boolean h = has[c][r];
+			has[c][r] = has[c][s];
+			has[c][s] = h;
+		}
+		Proxy p = owners[r];
+		owners[r] = owners[s];
+		owners[s] = p;
+		owners[r].row = r;
+		owners[s].row = s;
+	}
+	
+	private static void swap(int[] col, int r, int s) {
+		int v = col[r];
+		col[r] = col[s];
+		col[s] = v;
+	}
+	
+	private void grow() {
+		int capacity = owners.length * 2;
+		for (int c = 0; c < names.length; c++) {
+			first[c] = Arrays.copyOf(first[c], capacity);
+			if (second[c] != null)
+				second[c] = Arrays.copyOf(second[c], capacity);
+			has[c] = Arrays.copyOf(has[c], capacity);
+		}
+		owners = Arrays.copyOf(owners, capacity);
+	}
+	
+		//////////////////// VALUES ////////////////////
+	
+	/**
+	 * Decodes a reflected value in to the proxy's row.
+	 * 
+	 * @param slot the variable's slot in the remote class
+	 * @return false if the class doesn't declare the variable
+	 */
+	boolean set(Proxy p, int slot, byte[] value) throws FederateInternalError {
+		int c = slot < 0 || slot >= columnBySlot.length ? -1 : columnBySlot[slot];
+		if (c < 0)
+			return false;
+		int r = p.row;
+		switch (kinds[c]) {
+		case INT:
+			first[c][r] = Bytes.intValue(value);
+			break;
+		case BOOLEAN:
+			first[c][r] = Bytes.booleanValue(value) ? 1 : 0;
+			break;
+		case POINT:
+			Point pt = (Point)Bytes.objectValue(value);
+			first[c][r] = pt.x;
+			second[c][r] = pt.y;
+			break;
+		}
+		has[c][r] = true;
+		return true;
+	}
+	
+	boolean hasValue(Proxy p, int slot) {
+		int c = slot < 0 || slot >= columnBySlot.length ? -1 : columnBySlot[slot];
+		return c >= 0 && has[c][p.row];
+	}
+	
+	boolean hasValue(Proxy p, String name) {
+		int c = indexOf(name);
+		return c >= 0 && has[c][p.row];
+	}
+	
+	/**
+	 * @return the number of the proxy's variables without values
+	 */
+	int missing(Proxy p) {
+		int missing = 0;
+		for (int c = 0; c < names.length; c++)
+			if (!has[c][p.row])
+				missing++;
+		return missing;
+	}
+	
+	/* a detached variable holding the value in the row, or null */
+	private PublicVariable variable(int c, int r) throws RTIinternalError, FederateInternalError {
+		if (c < 0)
+			return null;
+		PublicVariable var;
+		switch (kinds[c]) {
+		case INT:
+			var = new ViewableInteger(first[c][r]);
+			break;
+		case BOOLEAN:
+			var = new ViewableBoolean(first[c][r] != 0);
+			break;
+		default:
+			var = new ViewablePoint(first[c][r], second[c][r]);
+			break;
+		}
+		/* marks it as having a value */
+		if (has[c][r])
+			var.update(var.getBytes());
+		return var;
+	}
+	
+		//////////////////// CHECKPOINTS ////////////////////
+	
+	Snapshot snapshot() {
+		Snapshot s = new Snapshot();
+		s.owners = Arrays.copyOf(owners, size);
+		s.first = new int[names.length][];
+		s.second = new int[names.length][];
+		s.has = new boolean[names.length][];
+		for (int c = 0; c < names.length; c++) {
+			s.first[c] = Arrays.copyOf(first[c], size);
+			if (second[c] != null)
+				s.second[c] = Arrays.copyOf(second[c], size);
+			s.has[c] = Arrays.copyOf(has[c], size);
+		}
+		return s;
+	}
+	
+	/* values the proxies have gained since are kept, as are the rows of 
+	 * proxies added since, proxies removed since are not brought back */
+	void restore(Snapshot s) {
+		for (int i = 0; i < s.owners.length; i++) {
+			int r = s.owners[i].row;
+			if (r < 0)
+				continue;
+			for (int c = 0; c < names.length; c++) {
+				if (!s.has[c][i])
+					continue;
+				first[c][r] = s.first[c][i];
+				if (second[c] != null)
+					second[c][r] = s.second[c][i];
+			}
+		}
+	}
+	
+	/* the rows as they were when a checkpoint was taken */
+	static class Snapshot {
+		Proxy[] owners;
+		int[][] first;
+		int[][] second;
+		boolean[][] has;
+	}
+	
+		//////////////////// MODEL INTERFACE ////////////////////
+	
+	/**
+	 * @return the number of visible proxies, the rows of the columns which
+	 * 	hold their values
+	 */
+	public int size() {
+		return visible;
+	}
+	
+	/**
+	 * @return the names of the variables stored
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+	
+	/**
+	 * The values of an integer or boolean variable (1 for true) of every
+	 * visible proxy, in the order of {@link ProxyList#getProxies()}. 
+	 * 
+	 * The array is the column itself, it must not be modified and is only
+	 * valid up to {@link #size()}. It is replaced when the list grows and
+	 * its rows move as proxies are shown and hidden, so it should be asked 
+	 * for again for each scan.
+	 * 
+	 * @throws IllegalArgumentException if there is no such column
+	 */
+	public int[] getInts(String name) {
+		return first[column(name, INT)];
+	}
+	
+	/**
+	 * The x coordinates of a point variable of every visible proxy, as 
+	 * {@link #getInts(String)}.
+	 */
+	public int[] getXs(String name) {
+		return first[column(name, POINT)];
+	}
+	
+	/**
+	 * The y coordinates of a point variable of every visible proxy, as 
+	 * {@link #getInts(String)}.
+	 */
+	public int[] getYs(String name) {
+		return second[column(name, POINT)];
+	}
+	
+	/**
+	 * A proxy stored in columns, a view of its row. 
+	 * 
+	 * The typed getters read the columns directly. The variables returned by
+	 * the {@link RemoteObject} methods are detached copies holding the 
+	 * current values, they are made on each call and don't follow later 
+	 * updates.
+	 */
+	public static final class Proxy implements RemoteObject, SlotAccess {
+		private final ProxyColumns columns;
+		
+		/* -1 once removed */
+		private int row;
+		
+		private Proxy(ProxyColumns columns, int row) {
+			this.columns = columns;
+			this.row = row;
+		}
+		
+		public String[] getPublicVariables() {
+			return columns.names;
+		}
+		
+		int missing() {
+			return columns.missing(this);
+		}
+		
+		public PublicVariable getVariable(String name) {
+			return detached(row < 0 ? -1 : columns.indexOf(name));
+		}
+		
+		public PublicVariable getVariable(int slot) {
+			int[] bySlot = columns.columnBySlot;
+			return detached(row < 0 || slot < 0 || slot >= bySlot.length ? -1 : bySlot[slot]);
+		}
+		
+		private PublicVariable detached(int c) {
+			try {
+				return columns.variable(c, row);
+			}
+			catch (RTIinternalError e) {
+				throw new IllegalStateException("could not copy variable " + columns.names[c], e);
+			}
+			catch (FederateInternalError e) {
+				throw new IllegalStateException("could not copy variable " + columns.names[c], e);
+			}
+		}
+		
+		public int getInt(String name) {
+			return columns.first[columns.column(name, INT)][row];
+		}
+		
+		public boolean getBoolean(String name) {
+			return columns.first[columns.column(name, INT)][row] != 0;
+		}
+		
+		public Point getPoint(String name) {
+			int c = columns.column(name, POINT);
+			return new Point(columns.first[c][row], columns.second[c][row]);
+		}
+		
+		public String toString() {
+			StringBuffer buf = new StringBuffer("proxy");
+			for (int c = 0; c < columns.names.length; c++) {
+				buf.append(' ').append(columns.names[c]).append('=');
+				if (row < 0 || !columns.has[c][row])
+					buf.append('-');
+				else if (columns.kinds[c] == POINT)
+					buf.append(columns.first[c][row]).append(',').append(columns.second[c][row]);
+				else
+					buf.append(columns.first[c][row]);
+			}
+			return buf.toString();
+		}
+	}
+	
+	/*
+	 * Compares the memory taken by a list of proxies stored as instances of
+	 * models.Mover and stored in columns, and the time to scan their 
+	 * positions. Pass the number of proxies, 100000 by default.
+	 */
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		String[] vars = new models.Mover().getPublicVariables();
+		byte[][] positions = new byte[n][];
+		byte[] owner = Bytes.getBytes(7);
+		java.util.Random random = new java.util.Random(1);
+		for (int i = 0; i < n; i++)
+			positions[i] = Bytes.getBytes(new Point(random.nextInt(1000), random.nextInt(1000)));
+		
+		long before = used();
+		java.util.ArrayList<models.Mover> objects = new java.util.ArrayList<models.Mover>();
+		for (int i = 0; i < n; i++) {
+			models.Mover m = new models.Mover();
+			m.getVariable(vars[0]).update(positions[i]);
+			m.getVariable(vars[1]).update(owner);
+			objects.add(m);
+		}
+		long objectBytes = used() - before;
+		
+		before = used();
+		ProxyColumns cols = new ProxyColumns(new models.Mover(), vars);
+		ProxyTable table = new ProxyTable(cols);
+		for (int i = 0; i < n; i++) {
+			Proxy p = cols.add();
+			cols.set(p, 0, positions[i]);
+			cols.set(p, 1, owner);
+			table.show(table.add(i, p, 0));
+		}
+		long columnBytes = used() - before;
+		
+		/* the first round warms up the JIT and isn't printed */
+		double objectScan = 0, columnScan = 0;
+		for (int round = 0; round < 2; round++) {
+			long sum = 0;
+			long start = System.nanoTime();
+			for (int k = 0; k < 20; k++)
+				for (models.Mover m : objects) {
+					Point p = m.getPosition();
+					sum += p.x + p.y;
+				}
+			objectScan = (System.nanoTime() - start) / 20e6;
+			start = System.nanoTime();
+			for (int k = 0; k < 20; k++) {
+				int[] xs = cols.getXs(vars[0]), ys = cols.getYs(vars[0]);
+				for (int i = 0; i < cols.size(); i++)
+					sum += xs[i] + ys[i];
+			}
+			columnScan = (System.nanoTime() - start) / 20e6;
+			sink += sum;
+		}
+		System.out.println(n + " proxies: objects " + (objectBytes / 1024) + " KB, scan " + 
+			String.format("%.2f", objectScan) + " ms; columns " + (columnBytes / 1024) + " KB, scan " + 
+			String.format("%.2f", columnScan) + " ms");
+		/* keep both alive until measured */
+		sink += objects.size() + table.size();
+	}
+	
+	private static long used() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	/* keeps the scans from being optimised away */
+	static long sink;
+}
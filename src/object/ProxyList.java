@@ -30,13 +30,19 @@ import hla.rti13.java1.AttributeHandleSet;
 import hla.rti13.java1.FederateInternalError;
 import hla.rti13.java1.RTIexception;
 import hla.rti13.java1.RTIinternalError;
+import hla.rti13.java1.Region;
 import io.DEV_TOOLS;
 
+import java.awt.Rectangle;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import object.variables.PublicVariable;
+import object.variables.ViewableVariable;
+import rtidep.Threads;
 
 
 
@@ -55,8 +61,12 @@ import manager.LocalManager;
  * federation. These events can be listened for by the local mode using the
  * {@link #registerInstanceListener(InstanceListener)} method.
  * 
- * Under no circumstances should the list returned by {@link #getProxies()} 
- * ever be directly modified. If it is, the behaviour is undefined :)
+ * The list returned by {@link #getProxies()} is read-only.
+ * 
+ * If the local class is stored in columns (see 
+ * {@link LocalManager#setColumnar(Class, boolean)}) the proxies are
+ * {@link ProxyColumns.Proxy} views rather than instances of the class, and
+ * the values of all of them can be read from {@link #getColumns()}.
  *  
  * @see LocalManager#getProxies(Class, Class)
  * @author Rob Minson
@@ -68,20 +78,59 @@ public class ProxyList {
 	private int remoteClass;
 	private ClassLookup clLookup;
 	private ObjectLookup obLookup;
-	private List<RemoteObject> visibleProxies = new ArrayList<RemoteObject>();
-	private Hashtable<Integer, RemoteObject> updateMap = 
-												new Hashtable<Integer, RemoteObject>();
-	private Hashtable<RemoteObject, Integer> incompleteProxies = 
-												new Hashtable<RemoteObject, Integer>();
+	private int[] slots;
+	private String[] varNames;
+	private ProxyTable proxies;
+	/* null unless the local class is stored in columns */
+	private ProxyColumns columns;
+	/* proxies whose values are asked for at the start of each tick */
+	private Hashtable<Integer, ProxyTable.Entry> incompleteProxies = 
+												new Hashtable<Integer, ProxyTable.Entry>();
+	
+	private Rectangle interest;
+	private Region interestRegion;
 	
 	
 	//////////// CONSTRUCTOR, ONLY CALLED BY INTERNAL ENGINE ///////////////
 	
-	ProxyList(int remoteClass, Class localClass, ClassLookup cl, ObjectLookup ol) {
+	ProxyList(int remoteClass, Class localClass, ClassLookup cl, ObjectLookup ol) 
+			throws InstantiationException, IllegalAccessException {
 		this.localClass = localClass;
 		this.remoteClass = remoteClass;
 		this.clLookup = cl;
 		this.obLookup = ol;
+		this.slots = cl.getSlotTable(remoteClass);
+		this.varNames = cl.getVarNames(remoteClass);
+		if (LocalManager.isColumnar(localClass))
+			columns = new ProxyColumns(instantiate(localClass), 
+										cl.getVarNames(remoteClass));
+		this.proxies = new ProxyTable(columns);
+	}
+	
+	/*
+	 * A new instance of the local class from its no-argument constructor, 
+	 * failing as Class.newInstance() would.
+	 */
+	static RemoteObject instantiate(Class<?> localClass) 
+			throws InstantiationException, IllegalAccessException {
+		try {
+			return (RemoteObject)localClass.getDeclaredConstructor().newInstance();
+		}
+		catch (NoSuchMethodException e) {
+			throw new InstantiationException(localClass.getName() + 
+					" has no no-argument constructor");
+		}
+		catch (InvocationTargetException e) {
+			InstantiationException ie = new InstantiationException(
+					"constructing " + localClass.getName() + " failed");
+			ie.initCause(e.getCause());
+			throw ie;
+		}
+	}
+	
+	/* the RTI handle of the global class the proxies are of */
+	int getRemoteClass() {
+		return remoteClass;
 	}
 	
 	
@@ -97,6 +146,8 @@ public class ProxyList {
 		pv.setLookup(obLookup);
 		pv.setHandle(attrHandle);
 		pv.setOwnersHandle(owner);
+		if (pv instanceof ViewableVariable)
+			pv.setOwnership(PublicVariable.OwnershipState.NOT_OWNED);
 		if (initVals != null) {
 			byte[] initVal = initVals.getAttribute(attrHandle);
 			if (initVal != null) {
@@ -152,39 +203,54 @@ public class ProxyList {
 		if (shell != null)
 			DEV_TOOLS.print("using shell");
 		
-		RemoteObject ob = (RemoteObject)localClass.newInstance();
-		for (String s : ob.getPublicVariables()) {
-			PublicVariable pv = ob.getVariable(s);
-			initVariable(pv, s, handle, shell);
+		RemoteObject ob;
+		if (columns != null) {
+			ProxyColumns.Proxy p = columns.add();
+			if (shell != null)
+				for (String s : p.getPublicVariables()) {
+					int attrHandle = clLookup.getVariableHandle(remoteClass, s);
+					byte[] initVal = shell.getAttribute(attrHandle);
+					if (initVal != null)
+						columns.set(p, ClassLookup.slotOf(slots, attrHandle), initVal);
+				}
+			ob = p;
 		}
-		updateMap.put(handle, ob);
-		if (isComplete(ob)) {
-			visibleProxies.add(ob);
+		else {
+			ob = instantiate(localClass);
+			for (String s : ob.getPublicVariables()) {
+				PublicVariable pv = ob.getVariable(s);
+				initVariable(pv, s, handle, shell);
+			}
+			if (ob instanceof PublicObject)
+				((PublicObject)ob).bindSlots(clLookup.getVarNames(remoteClass));
+		}
+		ProxyTable.Entry e = proxies.add(handle, ob, ProxyTable.countMissing(ob));
+		if (e.isComplete()) {
+			proxies.show(e);
 			fireInstanceAdded(ob);
 			DEV_TOOLS.print("proxy complete, added to visibles");
 		}
 		else {
-			incompleteProxies.put(ob, handle);
+			incompleteProxies.put(handle, e);
 			DEV_TOOLS.print("proxy incomplete");
 		}
 		DEV_TOOLS.undent();
 	}
 	
 	RemoteObject getProxy(int instanceHandle) {
-		return updateMap.get(instanceHandle);
+		ProxyTable.Entry e = proxies.get(instanceHandle);
+		return e == null ? null : e.proxy;
 	}	
 	
 	//////////////////// OBJECT DELETION ////////////////////
 	
 	void removeObject(int instance) {
-		RemoteObject ob = updateMap.get(instance);
-		if (ob == null)
+		ProxyTable.Entry e = proxies.remove(instance);
+		if (e == null)
 			return;
 		else {
-			visibleProxies.remove(ob);
-			updateMap.remove(instance);
-			incompleteProxies.remove(ob);
-			fireInstanceRemoved(ob);
+			incompleteProxies.remove(instance);
+			fireInstanceRemoved(e.proxy);
 		}
 	}	
 	
@@ -193,14 +259,39 @@ public class ProxyList {
 	void update(int instance, int handle, byte[] value) throws FederateInternalError, RTIinternalError {
 		DEV_TOOLS.print("<ProxyList::update> to " + instance);
 		DEV_TOOLS.indent();
-		RemoteObject ob = updateMap.get(instance);
-		ob.getVariable(clLookup.getVariableName(remoteClass, handle)).update(value);
-		if (!visibleProxies.contains(ob)) {
-			if (isComplete(ob)) {
+		ProxyTable.Entry e = proxies.get(instance);
+		int slot = ClassLookup.slotOf(slots, handle);
+		if (columns != null) {
+			ProxyColumns.Proxy p = (ProxyColumns.Proxy)e.proxy;
+			boolean had = columns.hasValue(p, slot);
+			if (!columns.set(p, slot, value)) {
+				DEV_TOOLS.print("unknown attribute " + handle);
+				DEV_TOOLS.undent();
+				return;
+			}
+			if (!had)
+				e.missing--;
+		}
+		else {
+			PublicVariable var = ObjectLookup.variableAt(e.proxy, slot, varNames);
+			if (var == null) {
+				DEV_TOOLS.print("unknown attribute " + handle);
+				DEV_TOOLS.undent();
+				return;
+			}
+			if (!var.hasValue())
+				e.missing--;
+			var.update(value);
+		}
+		if (e.outOfScope) {
+			DEV_TOOLS.print("proxy out of scope");
+		}
+		else if (!e.isVisible()) {
+			if (e.isComplete()) {
 				DEV_TOOLS.print("shifted proxy to visible list");
-				visibleProxies.add(ob);
-				incompleteProxies.remove(ob);
-				fireInstanceAdded(ob);
+				proxies.show(e);
+				incompleteProxies.remove(instance);
+				fireInstanceAdded(e.proxy);
 			}
 			else
 				DEV_TOOLS.print("proxy still missing variables");
@@ -211,29 +302,99 @@ public class ProxyList {
 		DEV_TOOLS.undent();
 	}
 	
-	private boolean isComplete(RemoteObject ob) {
-		for (String s : ob.getPublicVariables())
-			if (!ob.getVariable(s).hasValue())
-				return false;
-		return true;
+	/*
+	 * A proxy out of scope is hidden until it comes back in, when its values
+	 * are asked for (see refreshIncompleteProxies()) and it is shown again
+	 * on the next update.
+	 */
+	void scopeChanged(int instance, boolean inScope) {
+		ProxyTable.Entry e = proxies.get(instance);
+		if (e == null)
+			return;
+		if (!inScope) {
+			if (e.outOfScope)
+				return;
+			e.outOfScope = true;
+			incompleteProxies.remove(instance);
+			if (proxies.hide(e))
+				fireInstanceRemoved(e.proxy);
+		}
+		else if (e.outOfScope) {
+			e.outOfScope = false;
+			incompleteProxies.put(instance, e);
+		}
+	}
+	
+		////////////////// OPTIMISTIC CHECKPOINTS /////////////////
+	
+	/* the proxies' variables journal their own values, see 
+	 * ObjectLookup.changing, columns have none and are copied */
+	void saveState(StateCheckpoint cp) {
+		if (columns != null)
+			cp.save(columns, columns.snapshot());
+		cp.save(this, proxies.visible());
+	}
+	
+	/* 
+	 * Proxies which have become visible since the checkpoint are hidden
+	 * again until their values are re-reflected. Proxies removed since are
+	 * not brought back, deletions are not rolled back.
+	 */
+	void restoreState(StateCheckpoint cp) {
+		if (columns != null && cp.columns.containsKey(columns))
+			columns.restore(cp.columns.get(columns));
+		List<RemoteObject> saved = cp.visible.get(this);
+		IdentityHashMap<RemoteObject, Boolean> wasVisible = new IdentityHashMap<RemoteObject, Boolean>();
+		if (saved != null) {
+			for (RemoteObject ob : saved)
+				wasVisible.put(ob, Boolean.TRUE);
+		}
+		for (ProxyTable.Entry e : proxies.entries()) {
+			boolean was = wasVisible.containsKey(e.proxy) && !e.outOfScope;
+			if (e.isVisible() && !was) {
+				proxies.hide(e);
+				incompleteProxies.put(e.handle, e);
+				fireInstanceRemoved(e.proxy);
+			}
+			else if (!e.isVisible() && was) {
+				proxies.show(e);
+				incompleteProxies.remove(e.handle);
+				fireInstanceAdded(e.proxy);
+			}
+		}
 	}
 	
 		////////////////// UPDATE PULLING /////////////////
 
+	/* only the variables the proxy class declares and is still missing 
+	 * values for are asked for, or all it declares if it has them all (it 
+	 * has come back in to scope and its values are stale) */
 	void refreshIncompleteProxies() throws RTIexception {
-		for (RemoteObject ob : incompleteProxies.keySet()) {
+		for (ProxyTable.Entry e : incompleteProxies.values()) {
+			RemoteObject ob = e.proxy;
 			String[] vars = ob.getPublicVariables();
 			AttributeHandleSet ahs = LocalManager.getHandleSet(vars.length);
 			for (String s : vars) {
-				ahs.add(clLookup.getVariableHandle(remoteClass, s));
+				if (!hasValue(ob, s))
+					ahs.add(clLookup.getVariableHandle(remoteClass, s));
+			}
+			if (ahs.isEmpty()) {
+				for (String s : vars)
+					ahs.add(clLookup.getVariableHandle(remoteClass, s));
 			}
-			DEV_TOOLS.print("<ProxyList::refreshIncompleteProxies> requesting for object " + incompleteProxies.get(ob));
-			LocalManager.getRTI().requestObjectAttributeValueUpdate(
-					incompleteProxies.get(ob), ahs);
+			DEV_TOOLS.print("<ProxyList::refreshIncompleteProxies> requesting for object " + e.handle);
+			LocalManager.getRTI().requestObjectAttributeValueUpdate(e.handle, ahs);
 		}
 	}
 	
 	
+	private boolean hasValue(RemoteObject ob, String vname) {
+		if (columns != null)
+			return columns.hasValue((ProxyColumns.Proxy)ob, vname);
+		return ob.getVariable(vname).hasValue();
+	}
+	
+	
 	/////////////// MODEL INTERFACE /////////////////////
 	
 	/**
@@ -242,11 +403,73 @@ public class ProxyList {
 	 * given class has been added to the federation, but has not yet received 
 	 * updates to all of its {@link PublicVariable}s, it will not appear in
 	 * this list.
+	 * 
+	 * The list is a read-only view which follows the proxies as they are 
+	 * shown and hidden, the same list is returned every time. Its order is
+	 * arbitrary and changes as proxies are hidden.
 	 */
 	public List<RemoteObject> getProxies() {
-		return visibleProxies;
+		return proxies.visible();
 	}	
 	
+	/**
+	 * @return the columns holding the values of the proxies, row i being
+	 * 	the i'th proxy of {@link #getProxies()}, or null if the local class 
+	 * 	is not stored in columns
+	 * @see LocalManager#setColumnar(Class, boolean)
+	 */
+	public ProxyColumns getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Bounds this list by an area of the routing space, so that only 
+	 * updates to objects inside the area are reflected (see 
+	 * {@link LocalManager#setRoutingSpace(String, Rectangle)}). Proxies of
+	 * objects which move out of the area are removed from the list, and 
+	 * added back when they return. The area can be moved at any time, the
+	 * list follows it as the RTI re-evaluates which objects are in scope.
+	 * 
+	 * Only the attributes the .fed file puts in the routing space are 
+	 * bounded, any others are still reflected from everywhere.
+	 * 
+	 * @param area the area of interest, in model coordinates, or null to
+	 * 	see every object again
+	 * @throws IllegalStateException if no routing space has been set
+	 * @throws IllegalArgumentException if the class has no attributes in 
+	 * 	the routing space
+	 */
+	public void setRegionOfInterest(Rectangle area) throws RTIexception {
+		if (!Threads.isRTIThread()) {
+			final Rectangle a = area;
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					setRegionOfInterest(a);
+					return null;
+				}
+			});
+			return;
+		}
+		interestRegion = obLookup.subscribe(remoteClass, interestRegion, area);
+		interest = area == null ? null : new Rectangle(area);
+		if (area == null) {
+			for (ProxyTable.Entry e : proxies.entries()) {
+				if (e.outOfScope) {
+					e.outOfScope = false;
+					incompleteProxies.put(e.handle, e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the area this list is bounded by, null if it isn't
+	 * @see #setRegionOfInterest(Rectangle)
+	 */
+	public Rectangle getRegionOfInterest() {
+		return interest == null ? null : new Rectangle(interest);
+	}
+	
 		/////////////// OBJECT TRACKING EVENT GENERATORS ////////////////
 	
 	private List<InstanceListener> listeners = new ArrayList<InstanceListener>();
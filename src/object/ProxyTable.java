@@ -0,0 +1,275 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import object.variables.PublicVariable;
+
+/**
+ * The proxies of a {@link ProxyList}, by instance handle.
+ * 
+ * Each proxy has an {@link Entry} which counts the variables it is still
+ * missing values for, records whether it is out of scope and, while it is 
+ * visible, holds its slot in the dense list of visible proxies. A proxy is
+ * hidden by moving the last visible proxy in to its slot, so showing, 
+ * hiding and checking visibility all take constant time however many 
+ * proxies there are. The order of the visible list is therefore arbitrary.
+ * 
+ * When the proxies are stored in columns their rows are moved the same 
+ * way, so the visible proxies' rows stay in the order of the visible list.
+ * 
+ * @author Rob Minson
+ */
+class ProxyTable {
+
+	private Hashtable<Integer, Entry> entries = new Hashtable<Integer, Entry>();
+	
+	/* the visible proxies and their entries, entry i has slot i */
+	private ArrayList<RemoteObject> visible = new ArrayList<RemoteObject>();
+	private ArrayList<Entry> visibleEntries = new ArrayList<Entry>();
+	
+	private List<RemoteObject> view = Collections.unmodifiableList(visible);
+	
+	/* null unless the proxies are views of rows in columns */
+	private ProxyColumns columns;
+	
+	ProxyTable() {
+		this(null);
+	}
+	
+	ProxyTable(ProxyColumns columns) {
+		this.columns = columns;
+	}
+	
+	/**
+	 * Adds a hidden proxy.
+	 * 
+	 * @param missing the number of its variables without values
+	 */
+	Entry add(int handle, RemoteObject proxy, int missing) {
+		Entry e = new Entry(handle, proxy, missing);
+		entries.put(handle, e);
+		return e;
+	}
+	
+	Entry get(int handle) {
+		return entries.get(handle);
+	}
+	
+	/**
+	 * Removes the proxy, hiding it first.
+	 * 
+	 * @return its entry, or null if there wasn't one
+	 */
+	Entry remove(int handle) {
+		Entry e = entries.remove(handle);
+		if (e != null) {
+			hide(e);
+			if (columns != null)
+				columns.remove((ProxyColumns.Proxy)e.proxy);
+		}
+		return e;
+	}
+	
+	/**
+	 * @return true if the proxy was hidden before
+	 */
+	boolean show(Entry e) {
+		if (e.slot >= 0)
+			return false;
+		e.slot = visible.size();
+		visible.add(e.proxy);
+		visibleEntries.add(e);
+		if (columns != null)
+			columns.show((ProxyColumns.Proxy)e.proxy);
+		return true;
+	}
+	
+	/**
+	 * @return true if the proxy was visible before
+	 */
+	boolean hide(Entry e) {
+		if (e.slot < 0)
+			return false;
+		int last = visible.size() - 1;
+		if (e.slot != last) {
+			Entry moved = visibleEntries.get(last);
+			visible.set(e.slot, moved.proxy);
+			visibleEntries.set(e.slot, moved);
+			moved.slot = e.slot;
+		}
+		visible.remove(last);
+		visibleEntries.remove(last);
+		e.slot = -1;
+		if (columns != null)
+			columns.hide((ProxyColumns.Proxy)e.proxy);
+		return true;
+	}
+	
+	/**
+	 * @return a read-only view of the visible proxies, this is the same 
+	 * 	list every time and follows the table as it changes
+	 */
+	List<RemoteObject> visible() {
+		return view;
+	}
+	
+	Collection<Entry> entries() {
+		return entries.values();
+	}
+	
+	int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return the number of the proxy's declared variables without values
+	 */
+	static int countMissing(RemoteObject proxy) {
+		if (proxy instanceof ProxyColumns.Proxy)
+			return ((ProxyColumns.Proxy)proxy).missing();
+		int missing = 0;
+		for (String s : proxy.getPublicVariables())
+			if (!proxy.getVariable(s).hasValue())
+				missing++;
+		return missing;
+	}
+	
+	/* a proxy and its visibility */
+	static class Entry {
+		final int handle;
+		final RemoteObject proxy;
+		
+		/* position in the visible list, -1 if hidden */
+		int slot = -1;
+		
+		/* declared variables still without values */
+		int missing;
+		
+		/* hidden because it left the region of interest */
+		boolean outOfScope = false;
+		
+		Entry(int handle, RemoteObject proxy, int missing) {
+			this.handle = handle;
+			this.proxy = proxy;
+			this.missing = missing;
+		}
+		
+		boolean isVisible() {
+			return slot >= 0;
+		}
+		
+		boolean isComplete() {
+			return missing <= 0;
+		}
+	}
+	
+	/*
+	 * Microbenchmark of visibility tracking: for each table size, the cost
+	 * of the per-update visibility check and of hiding and showing a tenth 
+	 * of the proxies, against the list scans this table replaced.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? new int[] {Integer.parseInt(args[0])} 
+									  : new int[] {1000, 10000, 100000};
+		/* the first round warms up the JIT and isn't printed */
+		for (int round = 0; round < 2; round++) {
+			for (int n : sizes)
+				bench(n, round == 1);
+		}
+	}
+	
+	private static void bench(int n, boolean print) {
+		ProxyTable table = new ProxyTable();
+		ArrayList<RemoteObject> list = new ArrayList<RemoteObject>();
+		Entry[] es = new Entry[n];
+		for (int i = 0; i < n; i++) {
+			RemoteObject ob = new Dummy();
+			es[i] = table.add(i, ob, 0);
+			table.show(es[i]);
+			list.add(ob);
+		}
+		
+		/* one visibility check per update */
+		int updates = 1000000;
+		long start = System.nanoTime();
+		int hits = 0;
+		for (int i = 0; i < updates; i++)
+			if (table.get(i % n).isVisible())
+				hits++;
+		double tableCheck = (System.nanoTime() - start) / (double)updates;
+		
+		/* the scans are sampled, at 100k they would take minutes */
+		int samples = Math.max(100, 10000000 / n);
+		start = System.nanoTime();
+		for (int i = 0; i < samples; i++)
+			if (list.contains(es[(i * 7919) % n].proxy))
+				hits++;
+		double listCheck = (System.nanoTime() - start) / (double)samples;
+		
+		/* hide and show again a tenth of the proxies */
+		int churn = n / 10;
+		start = System.nanoTime();
+		for (int i = 0; i < churn; i++)
+			table.hide(es[(i * 7919) % n]);
+		for (int i = 0; i < churn; i++)
+			table.show(es[(i * 7919) % n]);
+		double tableChurn = (System.nanoTime() - start) / (2.0 * churn);
+		
+		int churnSamples = Math.min(churn, samples);
+		start = System.nanoTime();
+		for (int i = 0; i < churnSamples; i++) {
+			RemoteObject ob = es[(i * 7919) % n].proxy;
+			list.remove(ob);
+			list.add(ob);
+		}
+		double listChurn = (System.nanoTime() - start) / (2.0 * churnSamples);
+		
+		if (print)
+			System.out.println(n + " proxies: check " + 
+				String.format("%.1f", tableCheck) + " ns (list scan " + String.format("%.1f", listCheck) + " ns), hide/show " + 
+				String.format("%.1f", tableChurn) + " ns (list scan " + String.format("%.1f", listChurn) + " ns)");
+		sink += hits;
+	}
+	
+	/* keeps the checks from being optimised away */
+	static int sink;
+	
+	private static class Dummy implements RemoteObject {
+		public String[] getPublicVariables() {
+			return new String[0];
+		}
+		public PublicVariable getVariable(String name) {
+			return null;
+		}
+	}
+}
@@ -37,6 +37,7 @@ import hla.rti13.java1.RTIexception;
 import java.io.IOException;
 
 import object.variables.PublicVariable;
+import object.variables.ViewablePoint;
 
 import exceptions.ObjectNotFoundException;
 
@@ -80,14 +81,55 @@ import manager.LocalManager;
  * 
  * @author Rob Minson
  */
-public abstract class PublicObject {
+public abstract class PublicObject implements SlotAccess {
 
 	private int handle;
 	
+	/* the variables in the order the ClassLookup assigns slots */
+	private PublicVariable[] slots;
+	
 	public abstract String[] getPublicVariables();
 
 	public abstract PublicVariable getVariable(String varName);
 	
+	/**
+	 * Slot-indexed access to this object's variables, used by the engine 
+	 * when applying updates so that no names need to be looked up. The
+	 * slots are bound when the object is registered or created as a proxy.
+	 * 
+	 * @param slot the variable's slot (see 
+	 * 	{@link manager.ClassLookup#getSlotTable(int)})
+	 * @return the variable, or null if the slot is not bound
+	 */
+	public PublicVariable getVariable(int slot) {
+		if (slots == null || slot < 0 || slot >= slots.length)
+			return null;
+		return slots[slot];
+	}
+	
+	/**
+	 * The name of the variable giving this object's position, used to route
+	 * its updates by region when a routing space is set (see 
+	 * {@link LocalManager#setRoutingSpace(String, java.awt.Rectangle)}). The
+	 * variable must be a {@link ViewablePoint}. By default this is the first
+	 * ViewablePoint in {@link #getPublicVariables()}, override to choose 
+	 * another or return null to send this object's updates everywhere.
+	 * 
+	 * @return the name of the spatial key, or null if there isn't one
+	 */
+	public String getSpatialKey() {
+		for (String vname : getPublicVariables())
+			if (getVariable(vname) instanceof ViewablePoint)
+				return vname;
+		return null;
+	}
+	
+	void bindSlots(String[] varNames) {
+		slots = new PublicVariable[varNames.length];
+		for (int i = 0; i < varNames.length; i++)
+			slots[i] = getVariable(varNames[i]);
+	}
+	
 	void setHandle(int handle) {
 	
 		this.handle = handle;
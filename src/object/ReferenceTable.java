@@ -32,6 +32,7 @@ This file is part of HLA_RePast.
  */
 package object;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
@@ -86,18 +87,35 @@ public class ReferenceTable {
 	/**
 	 * Returns a list of LookupReferences corresponding to all locally registered
 	 * PublicObjects which have been garbage collected since the method was last
-	 * called. 
+	 * called. Objects which were deregistered before being collected are not
+	 * included.
 	 * 
 	 * Typically this will be used to determine which locally registered shared 
 	 * objects can now be explicitly deleted throughout the rest of the federation 
 	 * (eg. via calling deleteObjectInstance(...) on the local RTIambassador)
 	 * having already been implicitly deleted by the local model.
 	 * 
+	 * Garbage collection is not forced, so an object is only reported after
+	 * the JVM has chosen to collect it.
+	 * 
 	 * @return the list of references to finalizeable objects.
 	 */
 	public List<LookupReference> getDeadReferences() {		
-		System.gc();		
-		return delQueue.flushDeletions();
+		List<LookupReference> dead = delQueue.flushDeletions();
+		List<LookupReference> registered = new ArrayList<LookupReference>(dead.size());
+		for (LookupReference ref : dead) {
+			if (table.get(ref.getID()) == ref)
+				registered.add(ref);
+		}
+		return registered;
+	}
+	
+	/**
+	 * Hands the tracking of collected objects to a background thread, see
+	 * {@link DeletionQueue#startReaper()}.
+	 */
+	public void startReaper() {
+		delQueue.startReaper();
 	}
 
 	/**
@@ -116,10 +134,11 @@ public class ReferenceTable {
 		LookupReference lookup = table.get(ID);
 		if (lookup == null)
 			throw new ObjectNotFoundException();
-		else if (lookup.isGCd())			
+		PublicObject ob = lookup.get();
+		if (ob == null)			
 			throw new ObjectDeletedException();
 			
-		return (PublicObject)lookup.get();
+		return ob;
 	}
 
 	/**
@@ -133,9 +152,8 @@ public class ReferenceTable {
 	public void register(PublicObject ob) {
 		
 		Integer ID = new Integer(ob.getHandle());	
-		LookupReference newRef = new LookupReference(ob);
+		LookupReference newRef = delQueue.track(ob);
 		table.put(ID, newRef);
-		delQueue.add(newRef);
 	}
 	
 	/**
@@ -174,13 +192,15 @@ public class ReferenceTable {
 		return table.keySet();
 	}
 	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws InterruptedException {
 		ReferenceTable rt = new ReferenceTable();
 		PublicObject po1 = new BasicTestObject(); po1.setHandle(1);
 		PublicObject po2 = new BasicTestObject(); po2.setHandle(2);
 		rt.register(po1);
 		rt.register(po2);
 		po1 = null;
+		System.gc();
+		Thread.sleep(100);	/* references are enqueued asynchronously */
 		
 		List<LookupReference> dead = rt.getDeadReferences();
 		for (LookupReference lr : dead)
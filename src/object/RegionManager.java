@@ -0,0 +1,329 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.RTIambassador;
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.Region;
+import io.DEV_TOOLS;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+import manager.ClassLookup;
+import manager.LocalManager;
+import object.variables.PublicVariable;
+import object.variables.ViewablePoint;
+
+/**
+ * Keeps the regions used for data distribution management when a routing
+ * space is set (see {@link LocalManager#setRoutingSpace(String, Rectangle)}).
+ * 
+ * Each locally registered object with a spatial key (see 
+ * {@link PublicObject#getSpatialKey()}) gets an update region covering the
+ * cell its key is in, associated with those of its attributes the .fed file
+ * puts in the routing space. The region is moved whenever the key is 
+ * written, straight away or, in write-behind mode, once per tick before 
+ * the updates are sent. A {@link ProxyList} given a region of interest 
+ * subscribes to its class's routed attributes with a subscription region
+ * instead of everywhere, so only updates to objects inside it are 
+ * reflected.
+ * 
+ * The space must have dimensions named <code>x</code> and <code>y</code>.
+ * Model coordinates inside the bounds are spread evenly over the extent 
+ * range, one cell per unit, and coordinates outside are clamped to the 
+ * edge.
+ * 
+ * @author Rob Minson
+ */
+class RegionManager {
+
+	/* the top of the extent range used, kept to the positive ints so that 
+	 * bindings with signed or unsigned extents agree */
+	static final long MAX_EXTENT = Integer.MAX_VALUE;
+	
+	private int space = -1;
+	private int xDim;
+	private int yDim;
+	private Rectangle bounds;
+	private long cellWidth;
+	private long cellHeight;
+	
+	/* class handle -> the class's attributes which are in the routing space */
+	private Hashtable<Integer, int[]> routed = new Hashtable<Integer, int[]>();
+	
+	/* instance handle -> update region of a locally registered object */
+	private Hashtable<Integer, Located> located = new Hashtable<Integer, Located>();
+	
+	/* objects moved since their regions were last modified, only used in
+	 * write-behind mode */
+	private ArrayList<Located> moved = new ArrayList<Located>();
+	
+	private long modifications = 0;
+	
+	private ClassLookup clLookup;
+	
+	RegionManager(ClassLookup cl) {
+		this.clLookup = cl;
+	}
+	
+	/**
+	 * Resolves the routing space and its dimensions and asks the RTI to say
+	 * when proxies go in and out of scope.
+	 */
+	void initialise(String spaceName, Rectangle bounds) throws RTIexception {
+		RTIambassador rti = LocalManager.getRTI();
+		space = rti.getRoutingSpaceHandle(spaceName);
+		xDim = rti.getDimensionHandle("x", space);
+		yDim = rti.getDimensionHandle("y", space);
+		this.bounds = new Rectangle(bounds);
+		cellWidth = MAX_EXTENT / Math.max(1, bounds.width);
+		cellHeight = MAX_EXTENT / Math.max(1, bounds.height);
+		rti.enableAttributeScopeAdvisorySwitch();
+		DEV_TOOLS.print("<RegionManager::initialise> routing in space " + spaceName + " over " + bounds);
+	}
+	
+	boolean isRouting() {
+		return space != -1;
+	}
+	
+	/* the attributes of the class in the routing space, looked up once */
+	private int[] routedAttributes(int classHandle) throws RTIexception {
+		int[] attrs = routed.get(classHandle);
+		if (attrs != null)
+			return attrs;
+		RTIambassador rti = LocalManager.getRTI();
+		String[] names = clLookup.getVarNames(classHandle);
+		int count = 0;
+		int[] inSpace = new int[names.length];
+		for (String name : names) {
+			int handle = clLookup.getVariableHandle(classHandle, name);
+			if (rti.getAttributeRoutingSpaceHandle(handle, classHandle) == space)
+				inSpace[count++] = handle;
+		}
+		attrs = new int[count];
+		System.arraycopy(inSpace, 0, attrs, 0, count);
+		routed.put(classHandle, attrs);
+		DEV_TOOLS.print("<RegionManager::routedAttributes> class " + classHandle + " has " + count + " attributes in the routing space");
+		return attrs;
+	}
+	
+	private AttributeHandleSet toHandleSet(int[] attrs) throws RTIexception {
+		AttributeHandleSet handles = LocalManager.getHandleSet(attrs.length);
+		for (int handle : attrs)
+			handles.add(handle);
+		return handles;
+	}
+	
+	private long extent(int coord, int origin, long cell, int cells) {
+		long offset = Math.max(0, Math.min(cells - 1, coord - origin));
+		return offset * cell;
+	}
+	
+	/* sets the region to the cells covered by the area, the whole space if 
+	 * it is null */
+	private void cover(Region region, Rectangle area) throws RTIexception {
+		if (area == null)
+			area = bounds;
+		long xLow = extent(area.x, bounds.x, cellWidth, bounds.width);
+		long xHigh = extent(area.x + Math.max(1, area.width) - 1, bounds.x, cellWidth, bounds.width);
+		long yLow = extent(area.y, bounds.y, cellHeight, bounds.height);
+		long yHigh = extent(area.y + Math.max(1, area.height) - 1, bounds.y, cellHeight, bounds.height);
+		region.setRangeLowerBound(0, xDim, xLow);
+		region.setRangeUpperBound(0, xDim, xHigh + cellWidth - 1);
+		region.setRangeLowerBound(0, yDim, yLow);
+		region.setRangeUpperBound(0, yDim, yHigh + cellHeight - 1);
+	}
+	
+	private void cover(Region region, Point p) throws RTIexception {
+		cover(region, p == null ? null : new Rectangle(p.x, p.y, 1, 1));
+	}
+	
+	//////////////////////// UPDATE REGIONS ////////////////////////
+	
+	/**
+	 * Gives a newly registered object an update region at its spatial key, 
+	 * this must be done before its first update is sent.
+	 * 
+	 * @return true if the object's updates are routed by region
+	 */
+	boolean register(PublicObject ob, int classHandle) throws RTIexception {
+		if (!isRouting())
+			return false;
+		String key = ob.getSpatialKey();
+		if (key == null)
+			return false;
+		PublicVariable var = ob.getVariable(key);
+		if (!(var instanceof ViewablePoint)) {
+			DEV_TOOLS.print("<RegionManager::register> spatial key " + key + " is not a ViewablePoint");
+			return false;
+		}
+		int[] attrs = routedAttributes(classHandle);
+		if (attrs.length == 0)
+			return false;
+		RTIambassador rti = LocalManager.getRTI();
+		Located loc = new Located((ViewablePoint)var, rti.createRegion(space, 1));
+		cover(loc.region, loc.key.get());
+		rti.notifyAboutRegionModification(loc.region);
+		rti.associateRegionForUpdates(loc.region, ob.getHandle(), toHandleSet(attrs));
+		located.put(ob.getHandle(), loc);
+		return true;
+	}
+	
+	/**
+	 * Called when a variable of a local object is written, moves the 
+	 * object's update region if the variable is its spatial key.
+	 */
+	void written(PublicVariable var) throws RTIexception {
+		Located loc = located.get(var.getOwnersHandle());
+		if (loc == null || loc.key != var)
+			return;
+		if (!LocalManager.isWriteBehind())
+			move(loc);
+		else if (!loc.moved) {
+			loc.moved = true;
+			moved.add(loc);
+		}
+	}
+	
+	/**
+	 * Moves the regions of the objects whose spatial keys were written this
+	 * tick, once each.
+	 */
+	void flush() throws RTIexception {
+		for (Located loc : moved) {
+			loc.moved = false;
+			if (located.get(loc.key.getOwnersHandle()) == loc)
+				move(loc);
+		}
+		moved.clear();
+	}
+	
+	private void move(Located loc) throws RTIexception {
+		cover(loc.region, loc.key.get());
+		LocalManager.getRTI().notifyAboutRegionModification(loc.region);
+		modifications++;
+	}
+	
+	/**
+	 * Deletes the update region of a local object which has been deleted.
+	 */
+	void deleted(int instance) {
+		Located loc = located.remove(instance);
+		if (loc == null)
+			return;
+		try {
+			LocalManager.getRTI().deleteRegion(loc.region);
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.showException("<RegionManager::deleted> region for " + instance, e);
+		}
+	}
+	
+	long modifications() {
+		return modifications;
+	}
+	
+	////////////////////// SUBSCRIPTION REGIONS //////////////////////
+	
+	/**
+	 * Bounds the subscription to the given class's routed attributes by the
+	 * given area, replacing the subscription everywhere.
+	 * 
+	 * @param current the class's subscription region, null if it is 
+	 * 	subscribed everywhere
+	 * @param area the area of interest, null to subscribe everywhere again
+	 * @return the class's subscription region, null if there is none now
+	 */
+	Region subscribe(int classHandle, Region current, Rectangle area) throws RTIexception {
+		if (!isRouting())
+			throw new IllegalStateException("no routing space has been set");
+		int[] subscribed = clLookup.getSubscribedHandles(classHandle);
+		int[] attrs = select(subscribed, routedAttributes(classHandle), true);
+		if (attrs.length == 0)
+			throw new IllegalArgumentException("class " + classHandle + " has no subscribed attributes in the routing space");
+		RTIambassador rti = LocalManager.getRTI();
+		
+		if (area == null) {
+			if (current != null) {
+				rti.unsubscribeObjectClassWithRegion(classHandle, current);
+				rti.deleteRegion(current);
+				rti.subscribeObjectClassAttributes(classHandle, toHandleSet(subscribed));
+			}
+			return null;
+		}
+		if (current != null) {
+			cover(current, area);
+			rti.notifyAboutRegionModification(current);
+			modifications++;
+			return current;
+		}
+		Region region = rti.createRegion(space, 1);
+		cover(region, area);
+		rti.notifyAboutRegionModification(region);
+		int[] rest = select(subscribed, attrs, false);
+		if (rest.length == 0)
+			rti.unsubscribeObjectClass(classHandle);
+		else
+			rti.subscribeObjectClassAttributes(classHandle, toHandleSet(rest));
+		rti.subscribeObjectClassAttributesWithRegion(classHandle, region, toHandleSet(attrs));
+		DEV_TOOLS.print("<RegionManager::subscribe> class " + classHandle + " subscribed in " + area);
+		return region;
+	}
+	
+	/* the handles which are (or are not) in the given set */
+	private int[] select(int[] handles, int[] set, boolean in) {
+		int[] selected = new int[handles.length];
+		int count = 0;
+		for (int handle : handles) {
+			boolean found = false;
+			for (int h : set)
+				if (h == handle)
+					found = true;
+			if (found == in)
+				selected[count++] = handle;
+		}
+		int[] result = new int[count];
+		System.arraycopy(selected, 0, result, 0, count);
+		return result;
+	}
+	
+	/* a local object's update region and the variable it follows */
+	private static class Located {
+		ViewablePoint key;
+		Region region;
+		boolean moved = false;
+		
+		Located(ViewablePoint key, Region region) {
+			this.key = key;
+			this.region = region;
+		}
+	}
+}
@@ -31,8 +31,6 @@ This file is part of HLA_RePast.
  */
 package object;
 
-import hla.rti13.java1.AttributeHandleSet;
-import hla.rti13.java1.AttributeNotOwned;
 import hla.rti13.java1.FederateInternalError;
 import hla.rti13.java1.RTIexception;
 import hla.rti13.java1.RTIinternalError;
@@ -40,12 +38,11 @@ import io.DEV_TOOLS;
 import io.ReflectedAttributes13;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
 
-import object.variables.CumulativeVariable;
-import object.variables.ExclusiveVariable;
-import object.variables.PublicVariable;
-import object.variables.ViewableVariable;
 
 import exceptions.BadClassException;
 
@@ -53,6 +50,8 @@ import exceptions.BadClassException;
 
 import manager.ClassLookup;
 import manager.LocalManager;
+import object.variables.ViewableVariable;
+import rtidep.Threads;
 
 /**
  * @author Rob Minson
@@ -87,6 +86,21 @@ public class RemoteBase {
 	private Hashtable<Integer, ShellList> shellListsByInstance = 
 												new Hashtable<Integer, ShellList>();
 	
+	/* instances of the bundle class registered by other federates, updates to
+	 * these are unpacked in to updates to the objects they carry */
+	private Hashtable<Integer, Integer> bundles = new Hashtable<Integer, Integer>();
+	
+	/* instances of classes this federate will never proxy (see 
+	 * LocalManager.setNeverProxied), kept only so their updates and deletions
+	 * can be recognised and dropped */
+	private Hashtable<Integer, Integer> dropped = new Hashtable<Integer, Integer>();
+	
+	/* attribute values reflected in to proxies and shells */
+	private long reflected = 0;
+	
+	/* bundle entries whose object was unknown or deleted */
+	private long bundleDropped = 0;
+	
 	RemoteBase(ObjectLookup lookup, ClassLookup cl) {	
 		this.objectLookup = lookup;
 		this.classLookup = cl;		
@@ -96,6 +110,21 @@ public class RemoteBase {
 								throws 	FederateInternalError, 
 										BadClassException, 
 										RTIinternalError {
+		if (objectLookup.isBundleClass(classHandle)) {
+			bundles.put(instHandle, classHandle);
+			return;
+		}
+		if (objectLookup.discoveredIntent(instHandle, classHandle))
+			return;
+		/* discoveries are executed again when an optimistic federate rolls
+		 * back, but the instance is kept */
+		if (hasInstance(instHandle))
+			return;
+		if (LocalManager.isNeverProxied(classLookup.getClassFor(classHandle))) {
+			dropped.put(instHandle, classHandle);
+			return;
+		}
+		
 		/* find out if we can create a new RemoteObject or whether we need to keep
 		 * this as a shell for the time being (ie. does a ProxyList exist for the
 		 * given class?)
@@ -116,7 +145,7 @@ public class RemoteBase {
 		else { /* have to create a Shell for the time being */
 			ShellList sl = shellListsByClass.get(classHandle);
 			if (sl == null) {
-				sl = new ShellList();
+				sl = new ShellList(classLookup.getSlotTable(classHandle));
 				shellListsByClass.put(classHandle, sl);
 			}
 			sl.add(instHandle);
@@ -131,9 +160,22 @@ public class RemoteBase {
 		DEV_TOOLS.print("<RemoteBase::update> processing update to " + instHandle + "...");
 		DEV_TOOLS.indent();
 		
+		if (bundles.containsKey(instHandle)) {
+			DEV_TOOLS.print("unpacking bundle");
+			for (int i = 0; i < attrs.size(); i++)
+				unbundle(attrs.getValue(i));
+			DEV_TOOLS.undent();
+			return;
+		}
+		if (dropped.containsKey(instHandle)) {
+			DEV_TOOLS.undent();
+			return;
+		}
+		
 		ProxyList pl = proxyListsByInstance.get(instHandle);
 		if (pl != null) {
 			DEV_TOOLS.print("updated proxy");
+			reflected += attrs.size();
 			for (int i = 0; i < attrs.size(); i++)
 				pl.update(instHandle, attrs.getHandle(i), attrs.getValue(i));
 		}
@@ -141,16 +183,64 @@ public class RemoteBase {
 			ShellList sl = shellListsByInstance.get(instHandle);
 			if (sl != null) {
 				DEV_TOOLS.print("update shell");
-				for (int i = 0; i < attrs.size(); i++)
-					sl.update(instHandle, attrs.getHandle(i), attrs.getValue(i));
+				reflected += attrs.size();
+				sl.update(instHandle, attrs);
 			}
 		}
 		
 		DEV_TOOLS.undent();
 	}
 	
+	private void unbundle(byte[] batch) 
+			throws FederateInternalError, RTIinternalError, IOException {
+		UpdateBundle.Reader reader = new UpdateBundle.Reader(batch);
+		while (reader.next()) {
+			int instance = reader.getInstance();
+			ProxyList pl = proxyListsByInstance.get(instance);
+			if (pl != null) {
+				ReflectedAttributes13 attrs = subscribedOnly(pl, reader.getAttributes());
+				if (attrs.size() > 0)
+					update(instance, attrs);
+			}
+			else if (hasShell(instance) || dropped.containsKey(instance))
+				update(instance, reader.getAttributes());
+			else if (!objectLookup.bundledLocalUpdate(instance, reader.getAttributes()))
+				bundleDropped++;
+		}
+	}
+	
+	/* a bundle carries every variable its sender wrote, but proxies only 
+	 * see those their class subscribes to, as if each had been reflected 
+	 * on its own */
+	private ReflectedAttributes13 subscribedOnly(ProxyList pl, ReflectedAttributes13 attrs) {
+		int[] subscribed = classLookup.getSubscribedHandles(pl.getRemoteClass());
+		int[] handles = new int[attrs.size()];
+		byte[][] values = new byte[attrs.size()][];
+		int size = 0;
+		for (int i = 0; i < attrs.size(); i++) {
+			for (int handle : subscribed) {
+				if (handle == attrs.getHandle(i)) {
+					handles[size] = handle;
+					values[size++] = attrs.getValue(i);
+					break;
+				}
+			}
+		}
+		if (size == attrs.size())
+			return attrs;
+		return new ReflectedAttributes13(handles, values, size);
+	}
+	
+	long bundleEntriesDropped() {
+		return bundleDropped;
+	}
+	
 	public void delete(int instHandle) {
 		DEV_TOOLS.print("<RemoteBase::delete> instancle " + instHandle);		
+		if (bundles.remove(instHandle) != null)
+			return;
+		if (dropped.remove(instHandle) != null)
+			return;
 		if (hasProxy(instHandle)) {
 			removeProxy(instHandle);
 		}
@@ -159,6 +249,38 @@ public class RemoteBase {
 		}
 	}
 	
+	void scopeChanged(int instHandle, boolean inScope) {
+		ProxyList pl = proxyListsByInstance.get(instHandle);
+		if (pl != null)
+			pl.scopeChanged(instHandle, inScope);
+	}
+	
+	long valuesReflected() {
+		return reflected;
+	}
+	
+	/**
+	 * @return roughly the bytes taken by the shells of undiscovered classes
+	 */
+	long shellMemory() {
+		long bytes = 0;
+		for (ShellList sl : shellListsByClass.values())
+			bytes += sl.memory();
+		return bytes;
+	}
+	
+	int shellCount() {
+		return shellListsByInstance.size();
+	}
+	
+	/**
+	 * @return the number of instances of never proxied classes whose 
+	 * 	shells have been dropped
+	 */
+	int shellsDropped() {
+		return dropped.size();
+	}
+	
 	protected void removeShell(int instance) {
 		ShellList sl = shellListsByInstance.get(instance);
 		if (sl != null)
@@ -183,10 +305,13 @@ public class RemoteBase {
 		int remoteHandle = classLookup.getClassHandle(remoteClass);
 		if (proxyListsByClass.containsKey(remoteHandle))
 			return proxyListsByClass.get(remoteHandle);
+		if (LocalManager.isNeverProxied(remoteClass))
+			throw new IllegalStateException(remoteClass + " was declared never to be proxied");
 		
 		ProxyList pl = new ProxyList(classLookup.getClassHandle(remoteClass),
 				localClass, classLookup, objectLookup);
 		proxyListsByClass.put(remoteHandle, pl);
+		narrowSubscription(remoteHandle, remoteClass, localClass);
 		
 		/* add any instances of this class currently held as shells */
 		ShellList sl = shellListsByClass.get(remoteHandle);
@@ -207,8 +332,52 @@ public class RemoteBase {
 		return pl;
 	}
 
+	/*
+	 * Subscribes to just the variables the proxies need: those the local 
+	 * class declares and any which are not viewable, since other federates
+	 * may write those to objects registered here. If the classes can't be 
+	 * instantiated to find out, or the RTI refuses, everything stays 
+	 * subscribed.
+	 */
+	private void narrowSubscription(int remoteHandle, Class<?> remoteClass, Class<?> localClass) {
+		String[] all = classLookup.getVarNames(remoteHandle);
+		List<String> declared;
+		PublicObject master;
+		try {
+			declared = Arrays.asList(ProxyList.instantiate(localClass).getPublicVariables());
+			master = (PublicObject)remoteClass.getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e) {
+			DEV_TOOLS.print("cannot instantiate " + localClass + ", subscribed to all variables");
+			return;
+		}
+		ArrayList<String> required = new ArrayList<String>();
+		for (String name : all) {
+			if (declared.contains(name) || !(master.getVariable(name) instanceof ViewableVariable))
+				required.add(name);
+		}
+		if (required.size() == all.length || required.isEmpty())
+			return;
+		final int handle = remoteHandle;
+		final String[] names = required.toArray(new String[required.size()]);
+		try {
+			Threads.post(new Threads.RTICall<Object>() {
+				public Object call() throws RTIexception {
+					classLookup.subscribeVariables(handle, names);
+					return null;
+				}
+			});
+			DEV_TOOLS.print("subscribed to " + names.length + " of " + all.length + " variables");
+		}
+		catch (RTIexception e) {
+			DEV_TOOLS.showException("<RemoteBase::narrowSubscription> class " + remoteHandle, e);
+		}
+	}
+
 	boolean hasInstance(int instanceHandle) {
-		return 	hasProxy(instanceHandle) || hasShell(instanceHandle);
+		return 	hasProxy(instanceHandle) || hasShell(instanceHandle) 
+				|| bundles.containsKey(instanceHandle) 
+				|| dropped.containsKey(instanceHandle);
 	}
 	
 	boolean hasProxy(int instanceHandle) {
@@ -224,55 +393,21 @@ public class RemoteBase {
 	}
 
 	/**
-	 * Resets ownership data for all variables to the 'start of tick' defaults 
-	 * depending on the semantics of the variable:
-	 * 
-	 * In practice this means divesting ownership of all types other than
-	 * 'ViewableVariable'
-	 * 
-	 * @see ExclusiveVariable
-	 * @see CumulativeVariable
-	 * @see ViewableVariable
+	 * Asks for the values of any proxies still missing variable values, this
+	 * is done at the start of each tick.
 	 */
-	void resetAll() throws RTIexception {
-		for (ProxyList pl : proxyListsByClass.values()) {
-			for (RemoteObject ro : pl.getProxies())
-				resetObject(ro);
-			/* piggy-back a refresh request since this gets called regularly */
-			pl.refreshIncompleteProxies();
-		}
+	void saveState(StateCheckpoint cp) {
+		for (ProxyList pl : proxyListsByClass.values())
+			pl.saveState(cp);
 	}
-
-	private void resetObject(RemoteObject obj) 
-		throws RTIexception {
 	
-		for (int i = 0; i < obj.getPublicVariables().length; i++) {
-			PublicVariable nextVar = obj.getVariable(obj.getPublicVariables()[i]);
-			initOwnership(nextVar);
-		}			
+	void restoreState(StateCheckpoint cp) {
+		for (ProxyList pl : proxyListsByClass.values())
+			pl.restoreState(cp);
 	}
-
-	private void initOwnership(PublicVariable var) 
-		throws RTIexception {
-					
-//		System.out.println("<RemoteBase.initOwnership> resetting var " + var.getHandle() + " currently set to " + var.getOwnership());
-		
-		if (var instanceof ExclusiveVariable || var instanceof CumulativeVariable) {
-			if (var.getOwnership() != PublicVariable.OwnershipState.AMBIGUOUS) {
-				try {
-					AttributeHandleSet handles = LocalManager.getHandleSet(1);
-					handles.add(var.getHandle());
-					int instHandle = var.getOwnersHandle();
-					LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(	instHandle, 
-																						handles);
-				}
-				catch (AttributeNotOwned e) {
-//					System.out.println("<RemoteBase.initOwnership> tried to divest ownership of unowned variable " + var.getHandle());
-				}
-				var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
-			}
-		}
-		else //meaning the variable is an instance of Viewable variable...
-			var.setOwnership(PublicVariable.OwnershipState.NOT_OWNED);
+	
+	void refreshIncompleteProxies() throws RTIexception {
+		for (ProxyList pl : proxyListsByClass.values())
+			pl.refreshIncompleteProxies();
 	}
 }
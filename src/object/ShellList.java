@@ -26,24 +26,275 @@ This file is part of HLA_RePast.
 */
 package object;
 
+import io.Bytes;
+import io.ReflectedAttributes13;
+
+import java.awt.Point;
+
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+import manager.ClassLookup;
+
+/**
+ * The {@link ObjectShell}s of one class, kept in an arena rather than as 
+ * an object each.
+ * 
+ * Each shell is a row in a table of offsets and lengths, one column per 
+ * variable of the class, and the values are copied in to one growable
+ * buffer. A value no longer than the one it replaces is written over it,
+ * otherwise it is appended and the buffer is compacted once more than 
+ * half of it holds replaced values. Values of attributes the class 
+ * doesn't have are dropped.
+ * 
+ * Shells may be read while values are being reflected in to them, so 
+ * access to the arena is synchronized.
+ * 
+ * @see RemoteBase
+ * @author Rob Minson
+ */
 public class ShellList implements Iterable<ObjectShell> {	
-	private Hashtable<Integer, ObjectShell> shells = new Hashtable<Integer, ObjectShell>(); 
-	public void add(int instance) {
-		shells.put(instance, new ObjectShell(instance));
+	
+	/* the slot of each attribute handle, see ClassLookup.getSlotTable */
+	private int[] slots;
+	private int width;
+	
+	private Hashtable<Integer, Integer> rows = new Hashtable<Integer, Integer>();
+	
+	/* the instance handle of each row, -1 for free rows */
+	private int[] handles = new int[16];
+	private int rowCount = 0;
+	private int[] free = new int[16];
+	private int freeCount = 0;
+	
+	/* indexed by row * width + slot, offset -1 for no value */
+	private int[] offsets;
+	private int[] lengths;
+	
+	private byte[] buffer = new byte[256];
+	private int used = 0;
+	/* bytes of the buffer holding replaced values */
+	private int garbage = 0;
+	
+	/**
+	 * @param slots the slot table of the class, see 
+	 * 	{@link manager.ClassLookup#getSlotTable(int)}
+	 */
+	ShellList(int[] slots) {
+		this.slots = slots;
+		for (int s : slots)
+			width = Math.max(width, s + 1);
+		offsets = new int[handles.length * width];
+		lengths = new int[handles.length * width];
+	}
+	
+	public synchronized void add(int instance) {
+		if (rows.containsKey(instance))
+			return;
+		int row;
+		if (freeCount > 0)
+			row = free[--freeCount];
+		else {
+			if (rowCount == handles.length)
+				growRows();
+			row = rowCount++;
+		}
+		handles[row] = instance;
+		Arrays.fill(offsets, row * width, (row + 1) * width, -1);
+		rows.put(instance, row);
 	}
-	public void update(int instance, int handle, byte[] value) {
-		shells.get(instance).setAttribute(handle, value);
+	
+	public synchronized void update(int instance, int handle, byte[] value) {
+		Integer row = rows.get(instance);
+		if (row != null)
+			set(row, handle, value);
 	}
-	public void remove(int instance) {
-		shells.remove(instance);
+	
+	/* one lookup for all the attributes of a reflection */
+	synchronized void update(int instance, ReflectedAttributes13 attrs) {
+		Integer row = rows.get(instance);
+		if (row == null)
+			return;
+		for (int i = 0; i < attrs.size(); i++)
+			set(row, attrs.getHandle(i), attrs.getValue(i));
 	}
+	
+	public synchronized void remove(int instance) {
+		Integer row = rows.remove(instance);
+		if (row == null)
+			return;
+		for (int i = row * width; i < (row + 1) * width; i++) {
+			if (offsets[i] >= 0)
+				garbage += lengths[i];
+			offsets[i] = -1;
+		}
+		handles[row] = -1;
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, free.length * 2);
+		free[freeCount++] = row;
+	}
+	
 	public Iterator<ObjectShell> iterator() {
-		return shells.values().iterator();
+		return new Iterator<ObjectShell>() {
+			int next = advance(0);
+			
+			int advance(int row) {
+				while (row < rowCount && handles[row] < 0)
+					row++;
+				return row;
+			}
+			public boolean hasNext() {
+				return next < rowCount;
+			}
+			public ObjectShell next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				ObjectShell shell = new ObjectShell(ShellList.this, next, handles[next]);
+				next = advance(next + 1);
+				return shell;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	public synchronized int size() {
+		return rows.size();
+	}
+	
+	/**
+	 * @return roughly the bytes taken by the shells, the buffer, the row 
+	 * 	tables and the handle lookup
+	 */
+	public synchronized long memory() {
+		/* a Hashtable entry and its two Integers come to about 64 bytes */
+		return buffer.length + 4L * (offsets.length + lengths.length + handles.length + free.length) 
+				+ 64L * rows.size();
+	}
+	
+	/**
+	 * @return a copy of the value held for the attribute, or null
+	 */
+	synchronized byte[] getAttribute(int row, int handle) {
+		int slot = ClassLookup.slotOf(slots, handle);
+		if (slot < 0)
+			return null;
+		int i = row * width + slot;
+		if (offsets[i] < 0)
+			return null;
+		return Arrays.copyOfRange(buffer, offsets[i], offsets[i] + lengths[i]);
+	}
+	
+	private void set(int row, int handle, byte[] value) {
+		int slot = ClassLookup.slotOf(slots, handle);
+		if (slot < 0)
+			return;
+		int i = row * width + slot;
+		if (offsets[i] >= 0 && lengths[i] >= value.length) {
+			System.arraycopy(value, 0, buffer, offsets[i], value.length);
+			garbage += lengths[i] - value.length;
+			lengths[i] = value.length;
+			return;
+		}
+		if (offsets[i] >= 0) {
+			garbage += lengths[i];
+			offsets[i] = -1;
+		}
+		if (used + value.length > buffer.length) {
+			if (garbage > used / 2)
+				compact(value.length);
+			else
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, used + value.length));
+		}
+		System.arraycopy(value, 0, buffer, used, value.length);
+		offsets[i] = used;
+		lengths[i] = value.length;
+		used += value.length;
+	}
+	
+	/* copies the live values to the front of a new buffer with room for 
+	 * at least extra more bytes */
+	private void compact(int extra) {
+		int live = used - garbage;
+		byte[] packed = new byte[Math.max(buffer.length, 2 * (live + extra))];
+		int end = 0;
+		for (int i = 0; i < rowCount * width; i++) {
+			if (offsets[i] < 0)
+				continue;
+			System.arraycopy(buffer, offsets[i], packed, end, lengths[i]);
+			offsets[i] = end;
+			end += lengths[i];
+		}
+		buffer = packed;
+		used = end;
+		garbage = 0;
+	}
+	
+	private void growRows() {
+		handles = Arrays.copyOf(handles, handles.length * 2);
+		offsets = Arrays.copyOf(offsets, handles.length * width);
+		lengths = Arrays.copyOf(lengths, handles.length * width);
+	}
+	
+	/**
+	 * Compares the heap taken by shells kept as a table of values each with
+	 * the same shells in a list, each shell having a point, an integer and 
+	 * a boolean reflected in to it a few times.
+	 */
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = 4;
+		/* attribute handles 2, 3 and 4 are the class's three variables */
+		int[] slots = new int[] {-1, -1, 0, 1, 2};
+		java.util.Random random = new java.util.Random(1);
+		byte[][][] values = new byte[rounds][n * 3][];
+		for (int r = 0; r < rounds; r++)
+			for (int i = 0; i < n; i++) {
+				values[r][i * 3] = Bytes.getBytes(new Point(random.nextInt(1000), random.nextInt(1000)));
+				values[r][i * 3 + 1] = Bytes.getBytes(random.nextInt());
+				values[r][i * 3 + 2] = Bytes.getBytes(random.nextBoolean());
+			}
+		
+		long before = used();
+		Hashtable<Integer, Hashtable<Integer, byte[]>> tables = 
+									new Hashtable<Integer, Hashtable<Integer, byte[]>>();
+		for (int i = 0; i < n; i++)
+			tables.put(i, new Hashtable<Integer, byte[]>());
+		for (int r = 0; r < rounds; r++)
+			for (int i = 0; i < n; i++)
+				for (int a = 0; a < 3; a++)
+					tables.get(i).put(a + 2, values[r][i * 3 + a].clone());
+		long tableBytes = used() - before;
+		
+		before = used();
+		ShellList list = new ShellList(slots);
+		for (int i = 0; i < n; i++)
+			list.add(i);
+		for (int r = 0; r < rounds; r++)
+			for (int i = 0; i < n; i++)
+				for (int a = 0; a < 3; a++)
+					list.update(i, a + 2, values[r][i * 3 + a]);
+		long listBytes = used() - before;
+		
+		for (ObjectShell shell : list)
+			for (int a = 0; a < 3; a++)
+				if (!Arrays.equals(shell.getAttribute(a + 2), tables.get(shell.getHandle()).get(a + 2)))
+					throw new IllegalStateException("shell " + shell.getHandle() + " differs");
+		System.out.println(n + " shells: tables " + (tableBytes / 1024) + " KB; list " + 
+				(listBytes / 1024) + " KB, estimated " + (list.memory() / 1024) + " KB");
+		/* keep the values alive until measured */
+		sink += values.length;
+	}
+	
+	private static long used() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
 	}
-	public int size() {
-		return shells.keySet().size();
-	}	
+	
+	static long sink;
 }
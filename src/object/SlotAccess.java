@@ -0,0 +1,49 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import object.variables.PublicVariable;
+
+/**
+ * Slot-indexed access to an object's variables (see 
+ * {@link PublicObject#getVariable(int)}), which the engine's own objects 
+ * provide so that updates can be applied without looking up names. Model
+ * proxy classes only have to implement {@link RemoteObject}, so 
+ * {@link ObjectLookup#variableAt(RemoteObject, int, String[])} looks 
+ * their variables up by name instead.
+ * 
+ * @author Rob Minson
+ */
+interface SlotAccess {
+	
+	/**
+	 * @param slot the variable's slot (see 
+	 * 	{@link manager.ClassLookup#getSlotTable(int)})
+	 * @return the variable, or null if the slot is not bound
+	 */
+	PublicVariable getVariable(int slot);
+}
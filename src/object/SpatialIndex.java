@@ -0,0 +1,448 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.FederateInternalError;
+import io.Bytes;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import object.variables.PublicVariable;
+import object.variables.ViewablePoint;
+
+/**
+ * An index of objects by position on a grid, so that a model can find the
+ * objects nearest a point or inside an area without scanning all of them.
+ * 
+ * The grid is divided in to square cells and each object is kept in the 
+ * list of the cell it is in. Objects can be placed and moved by hand, or 
+ * follow a {@link ViewablePoint}, in which case the index is kept up to 
+ * date as updates to it are reflected or, for local objects, as it is set.
+ * {@link #follow(ProxyList, String)} indexes every proxy of a 
+ * {@link ProxyList} as they come and go.
+ * 
+ * Distances are city block distances (|dx| + |dy|), as moved by agents 
+ * on a grid. The cells should be around the size of the area a query 
+ * usually has to look at, for nearest queries about the space per object.
+ * 
+ * The index is safe to use from actions running in parallel (see 
+ * {@link manager.ParallelAction}) while the engine updates it.
+ * 
+ * @author Rob Minson
+ */
+public class SpatialIndex<T> {
+
+	private int cellSize;
+	
+	private Hashtable<Long, ArrayList<Entry<T>>> cells = 
+									new Hashtable<Long, ArrayList<Entry<T>>>();
+	private Hashtable<T, Entry<T>> entries = new Hashtable<T, Entry<T>>();
+	
+	/* the cells which have held objects, never shrinks */
+	private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE;
+	private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE;
+	
+	/**
+	 * @param cellSize the width and height of the cells of the grid
+	 */
+	public SpatialIndex(int cellSize) {
+		if (cellSize < 1)
+			throw new IllegalArgumentException("cell size " + cellSize);
+		this.cellSize = cellSize;
+	}
+	
+		//////////////////// MAINTENANCE ////////////////////
+	
+	/**
+	 * Adds an object at a position, or moves it there if it is already in
+	 * the index.
+	 */
+	public synchronized void add(T ob, int x, int y) {
+		Entry<T> e = entries.get(ob);
+		if (e != null) {
+			move(e, x, y);
+			return;
+		}
+		e = new Entry<T>(ob);
+		entries.put(ob, e);
+		place(e, x, y);
+	}
+	
+	/**
+	 * Adds an object which follows the position held by a variable. The 
+	 * object is moved whenever an update to the variable is reflected or,
+	 * if it belongs to a local object, whenever it is set.
+	 * 
+	 * @throws IllegalArgumentException if the variable has no value
+	 */
+	public synchronized void add(T ob, ViewablePoint position) {
+		Point p = position.get();
+		if (p == null)
+			throw new IllegalArgumentException("position has no value");
+		add(ob, p.x, p.y);
+		final Entry<T> e = entries.get(ob);
+		if (e.position == position)
+			return;
+		if (e.position != null)
+			e.position.removeVariableListener(e.listener);
+		e.position = position;
+		e.listener = new VariableListener() {
+			public void variableChanged(byte[] oldValue, byte[] newValue) 
+				throws FederateInternalError {
+				Point p = (Point)Bytes.objectValue(newValue);
+				moved(e, p.x, p.y);
+			}
+		};
+		position.addVariableListener(e.listener);
+	}
+	
+	/**
+	 * Moves an object already in the index.
+	 * 
+	 * @return false if it isn't in the index
+	 */
+	public synchronized boolean move(T ob, int x, int y) {
+		Entry<T> e = entries.get(ob);
+		if (e == null)
+			return false;
+		move(e, x, y);
+		return true;
+	}
+	
+	/**
+	 * @return false if the object wasn't in the index
+	 */
+	public synchronized boolean remove(T ob) {
+		Entry<T> e = entries.remove(ob);
+		if (e == null)
+			return false;
+		unplace(e);
+		if (e.position != null)
+			e.position.removeVariableListener(e.listener);
+		return true;
+	}
+	
+	public synchronized boolean contains(T ob) {
+		return entries.containsKey(ob);
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Indexes the proxies of a list by one of their variables. The proxies
+	 * visible now are added, and from then on proxies are added as they 
+	 * become visible and removed as they are hidden.
+	 * 
+	 * @param list a list whose proxies are all of this index's type
+	 * @param varName the name of a {@link ViewablePoint} of the proxies
+	 * @throws IllegalArgumentException if the list is stored in columns 
+	 * 	(see {@link ProxyList#getColumns()}), whose variables can't be 
+	 * 	followed
+	 */
+	@SuppressWarnings("unchecked")
+	public void follow(ProxyList list, final String varName) {
+		if (list.getColumns() != null)
+			throw new IllegalArgumentException("proxies stored in columns can't be indexed");
+		list.registerInstanceListener(new InstanceListener() {
+			public void instanceAdded(RemoteObject obj) {
+				add((T)obj, (ViewablePoint)obj.getVariable(varName));
+			}
+			public void instanceRemoved(RemoteObject obj) {
+				remove((T)obj);
+			}
+		});
+		for (RemoteObject ob : list.getProxies())
+			add((T)ob, (ViewablePoint)ob.getVariable(varName));
+	}
+	
+	private synchronized void moved(Entry<T> e, int x, int y) {
+		/* a variable listener may be told of a change after removal */
+		if (entries.get(e.ob) == e)
+			move(e, x, y);
+	}
+	
+	private void move(Entry<T> e, int x, int y) {
+		if (cellOf(x) == e.cellX && cellOf(y) == e.cellY) {
+			e.x = x;
+			e.y = y;
+			return;
+		}
+		unplace(e);
+		place(e, x, y);
+	}
+	
+	private void place(Entry<T> e, int x, int y) {
+		e.x = x;
+		e.y = y;
+		e.cellX = cellOf(x);
+		e.cellY = cellOf(y);
+		Long key = key(e.cellX, e.cellY);
+		ArrayList<Entry<T>> cell = cells.get(key);
+		if (cell == null) {
+			cell = new ArrayList<Entry<T>>(4);
+			cells.put(key, cell);
+		}
+		cell.add(e);
+		minCellX = Math.min(minCellX, e.cellX);
+		minCellY = Math.min(minCellY, e.cellY);
+		maxCellX = Math.max(maxCellX, e.cellX);
+		maxCellY = Math.max(maxCellY, e.cellY);
+	}
+	
+	private void unplace(Entry<T> e) {
+		Long key = key(e.cellX, e.cellY);
+		ArrayList<Entry<T>> cell = cells.get(key);
+		cell.remove(e);
+		if (cell.isEmpty())
+			cells.remove(key);
+	}
+	
+	private int cellOf(int coord) {
+		return Math.floorDiv(coord, cellSize);
+	}
+	
+	/* y is mixed with x in the low half, so that the Long's hash code (the
+	 * two halves xor'd) doesn't collide for nearby cells */
+	private static Long key(int cellX, int cellY) {
+		return ((long)cellX << 32) | ((cellY ^ (cellX * 0x9E3779B9)) & 0xffffffffL);
+	}
+	
+		//////////////////// QUERIES ////////////////////
+	
+	/**
+	 * @return the object nearest the point, or null if the index is empty
+	 */
+	public T nearest(Point p) {
+		List<T> obs = nearest(p, 1, null);
+		return obs.isEmpty() ? null : obs.get(0);
+	}
+	
+	/**
+	 * @return the k objects nearest the point, nearest first, or all of 
+	 * 	them if there are fewer
+	 */
+	public List<T> nearest(Point p, int k) {
+		return nearest(p, k, null);
+	}
+	
+	/**
+	 * Looks at the cells in rings of increasing size around the point's 
+	 * cell until the k'th nearest object found is no further away than 
+	 * anything in the cells not yet looked at.
+	 * 
+	 * @param excluded objects to leave out, or null
+	 * @return the k objects nearest the point not in excluded, nearest 
+	 * 	first, or all of them if there are fewer
+	 */
+	public synchronized List<T> nearest(Point p, int k, Collection<?> excluded) {
+		if (k < 1 || entries.isEmpty())
+			return new ArrayList<T>();
+		ArrayList<Entry<T>> best = new ArrayList<Entry<T>>(k + 1);
+		int[] dists = new int[k + 1];
+		int cx = cellOf(p.x), cy = cellOf(p.y);
+		int rings = Math.max(Math.max(cx - minCellX, maxCellX - cx), 
+							 Math.max(cy - minCellY, maxCellY - cy));
+		for (int r = 0; r <= rings; r++) {
+			for (int x = cx - r; x <= cx + r; x++) {
+				/* the top and bottom rows of the ring, the sides between */
+				int step = (x == cx - r || x == cx + r) ? 1 : Math.max(1, 2 * r);
+				for (int y = cy - r; y <= cy + r; y += step) {
+					ArrayList<Entry<T>> cell = cells.get(key(x, y));
+					if (cell == null)
+						continue;
+					for (Entry<T> e : cell) {
+						if (excluded != null && excluded.contains(e.ob))
+							continue;
+						int d = Math.abs(e.x - p.x) + Math.abs(e.y - p.y);
+						if (best.size() == k && d >= dists[k - 1])
+							continue;
+						int i = best.size();
+						while (i > 0 && dists[i - 1] > d) {
+							dists[i] = dists[i - 1];
+							i--;
+						}
+						best.add(i, e);
+						dists[i] = d;
+						if (best.size() > k)
+							best.remove(k);
+					}
+				}
+			}
+			/* anything in a cell outside ring r is more than r cells away */
+			if (best.size() == k && dists[k - 1] <= r * cellSize)
+				break;
+		}
+		ArrayList<T> obs = new ArrayList<T>(best.size());
+		for (Entry<T> e : best)
+			obs.add(e.ob);
+		return obs;
+	}
+	
+	/**
+	 * @return the objects inside the area, in no particular order
+	 */
+	public synchronized List<T> within(Rectangle area) {
+		if (area.isEmpty())
+			return Collections.emptyList();
+		ArrayList<T> obs = new ArrayList<T>();
+		int x0 = Math.max(cellOf(area.x), minCellX);
+		int x1 = Math.min(cellOf(area.x + area.width - 1), maxCellX);
+		int y0 = Math.max(cellOf(area.y), minCellY);
+		int y1 = Math.min(cellOf(area.y + area.height - 1), maxCellY);
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				ArrayList<Entry<T>> cell = cells.get(key(x, y));
+				if (cell == null)
+					continue;
+				for (Entry<T> e : cell)
+					if (area.contains(e.x, e.y))
+						obs.add(e.ob);
+			}
+		}
+		return obs;
+	}
+	
+	/* an object, where it is and the variable it follows, if any */
+	private static class Entry<T> {
+		final T ob;
+		int x, y;
+		int cellX, cellY;
+		PublicVariable position;
+		VariableListener listener;
+		
+		Entry(T ob) {
+			this.ob = ob;
+		}
+	}
+	
+	/*
+	 * Compares the index with scanning lists for the queries a TileWorld 
+	 * agent makes when it deliberates: the nearest tile and hole to it and
+	 * the nearest tiles to every hole, enough to fill it. Tiles and holes
+	 * are spread as densely as in the default 50x50 world (15 tiles and 5 
+	 * holes), for worlds of each size given, 50, 200 and 1000 by default.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = new int[args.length > 0 ? args.length : 3];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = args.length > 0 ? Integer.parseInt(args[i]) : new int[] {50, 200, 1000}[i];
+		/* the first round warms up the JIT and isn't printed */
+		for (int round = 0; round < 2; round++)
+			for (int size : sizes)
+				bench(size, round == 1);
+	}
+	
+	private static void bench(int size, boolean print) {
+		java.util.Random random = new java.util.Random(size);
+		int numTiles = Math.max(1, 15 * size * size / 2500);
+		int numHoles = Math.max(1, 5 * size * size / 2500);
+		ArrayList<Point> tiles = new ArrayList<Point>();
+		ArrayList<Point> holes = new ArrayList<Point>();
+		int[] depths = new int[numHoles];
+		SpatialIndex<Point> tileIndex = new SpatialIndex<Point>(Math.max(1, (int)Math.sqrt(size * size / numTiles)));
+		SpatialIndex<Point> holeIndex = new SpatialIndex<Point>(Math.max(1, (int)Math.sqrt(size * size / numHoles)));
+		/* one object per cell, as on the TileWorld board */
+		java.util.HashSet<Point> used = new java.util.HashSet<Point>();
+		while (tiles.size() < numTiles) {
+			Point t = new Point(random.nextInt(size), random.nextInt(size));
+			if (!used.add(t))
+				continue;
+			tiles.add(t);
+			tileIndex.add(t, t.x, t.y);
+		}
+		while (holes.size() < numHoles) {
+			Point h = new Point(random.nextInt(size), random.nextInt(size));
+			if (!used.add(h))
+				continue;
+			depths[holes.size()] = 1 + random.nextInt(10);
+			holes.add(h);
+			holeIndex.add(h, h.x, h.y);
+		}
+		int deliberations = Math.max(10, 200000 / (numHoles * numTiles));
+		Point[] agents = new Point[deliberations];
+		for (int i = 0; i < deliberations; i++)
+			agents[i] = new Point(random.nextInt(size), random.nextInt(size));
+		
+		long scanSum = 0, indexSum = 0;
+		long start = System.nanoTime();
+		for (Point a : agents) {
+			scanSum += dist(a, nearestScan(tiles, a, 1).get(0));
+			scanSum += dist(a, nearestScan(holes, a, 1).get(0));
+			for (int i = 0; i < numHoles; i++)
+				for (Point t : nearestScan(tiles, holes.get(i), depths[i]))
+					scanSum += dist(holes.get(i), t);
+		}
+		double scan = (System.nanoTime() - start) / 1000.0 / deliberations;
+		
+		start = System.nanoTime();
+		for (Point a : agents) {
+			indexSum += dist(a, tileIndex.nearest(a));
+			indexSum += dist(a, holeIndex.nearest(a));
+			for (int i = 0; i < numHoles; i++)
+				for (Point t : tileIndex.nearest(holes.get(i), depths[i]))
+					indexSum += dist(holes.get(i), t);
+		}
+		double indexed = (System.nanoTime() - start) / 1000.0 / deliberations;
+		
+		if (scanSum != indexSum)
+			throw new IllegalStateException("index and scan disagree at " + size);
+		if (print)
+			System.out.println(size + "x" + size + " world, " + numTiles + " tiles, " + numHoles + 
+				" holes: deliberation " + String.format("%.1f", scan) + " us scanning, " + 
+				String.format("%.1f", indexed) + " us indexed");
+	}
+	
+	private static int dist(Point a, Point b) {
+		return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
+	}
+	
+	/* a linear scan keeping the k nearest, in place of the lists TileWorld
+	 * scans */
+	private static List<Point> nearestScan(List<Point> obs, Point p, int k) {
+		ArrayList<Point> best = new ArrayList<Point>(k + 1);
+		for (Point o : obs) {
+			int d = dist(p, o);
+			if (best.size() == k && d >= dist(p, best.get(k - 1)))
+				continue;
+			int i = best.size();
+			while (i > 0 && dist(p, best.get(i - 1)) > d)
+				i--;
+			best.add(i, o);
+			if (best.size() > k)
+				best.remove(k);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import object.variables.PublicVariable;
+
+/**
+ * The membership of every {@link ProxyList}, as taken by 
+ * {@link ObjectLookup#checkpoint()}, and a journal of the values the 
+ * local and reflected {@link PublicVariable}s had at that point.
+ * 
+ * Values are journaled incrementally: a variable's value is only copied 
+ * the first time it changes after the checkpoint was taken, so a tick 
+ * which touches few variables costs little to checkpoint however many 
+ * there are.
+ * 
+ * Checkpoints are only taken when the federate runs optimistically and 
+ * are opaque outside the engine.
+ * 
+ * @see manager.LocalManager#setOptimistic(boolean)
+ */
+public class StateCheckpoint {
+
+	/* the value each variable changed since the checkpoint had when it was
+	 * taken */
+	Hashtable<PublicVariable, byte[]> values = new Hashtable<PublicVariable, byte[]>();
+	Hashtable<ProxyList, List<RemoteObject>> visible = 
+							new Hashtable<ProxyList, List<RemoteObject>>();
+	Hashtable<ProxyColumns, ProxyColumns.Snapshot> columns = 
+							new Hashtable<ProxyColumns, ProxyColumns.Snapshot>();
+	
+	StateCheckpoint() {}
+	
+	void changing(PublicVariable var) {
+		if (!var.hasValue() || values.containsKey(var))
+			return;
+		byte[] value;
+		try {
+			value = var.getBytes();
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("could not checkpoint variable " + var.getHandle(), e);
+		}
+		synchronized (values) {
+			if (!values.containsKey(var))
+				values.put(var, value);
+		}
+	}
+	
+	void save(ProxyList list, List<RemoteObject> proxies) {
+		visible.put(list, new ArrayList<RemoteObject>(proxies));
+	}
+	
+	void save(ProxyColumns cols, ProxyColumns.Snapshot rows) {
+		columns.put(cols, rows);
+	}
+	
+	/**
+	 * @return the number of variable values journaled
+	 */
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,216 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.ObjectNotKnown;
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.SuppliedAttributes;
+import io.DEV_TOOLS;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+import object.variables.CumulativeVariable;
+import object.variables.PublicVariable;
+import rtidep.RTIDep;
+
+import manager.LocalManager;
+
+/**
+ * Holds the {@link PublicVariable}s which have been changed locally 
+ * during the current tick when the federate is running in write-behind
+ * mode (see {@link LocalManager#setWriteBehind(boolean)}).
+ * 
+ * Rather than sending one attribute update per call to a variable's
+ * set method, variables are marked dirty here and a single update
+ * per object, carrying every dirty attribute, is sent when the buffer
+ * is flushed. The value sent is the variable's value at flush time 
+ * (so the last write in the tick wins) except for 
+ * {@link CumulativeVariable}s, which send the sum of the modifications
+ * made during the tick.
+ * 
+ * Cumulative variables stay owned until they have been flushed, after
+ * which ownership is divested in one call per object, unless the buffer 
+ * holds commutative deltas, which are sent without ownership (see 
+ * {@link LocalManager#setCommutativeCumulatives(boolean)}).
+ * 
+ * @author Rob Minson
+ */
+class UpdateBuffer {
+
+	private Hashtable<Integer, ArrayList<PublicVariable>> dirty = 
+								new Hashtable<Integer, ArrayList<PublicVariable>>();
+	
+	/* the order in which objects were first dirtied, so flushes are repeatable */
+	private ArrayList<Integer> order = new ArrayList<Integer>();
+	
+	private boolean holdsOwnership = false;
+	private boolean owned;
+	
+	private int updatesSent = 0;
+	private int valuesWritten = 0;
+	
+	UpdateBuffer() {
+		this(true);
+	}
+	
+	/**
+	 * @param owned false if the cumulative variables marked in this buffer
+	 * 	are not owned, and so should not be divested when it is flushed
+	 */
+	UpdateBuffer(boolean owned) {
+		this.owned = owned;
+	}
+	
+	void mark(PublicVariable var) {
+		Integer owner = var.getOwnersHandle();
+		ArrayList<PublicVariable> vars = dirty.get(owner);
+		if (vars == null) {
+			vars = new ArrayList<PublicVariable>();
+			dirty.put(owner, vars);
+			order.add(owner);
+		}
+		if (!vars.contains(var))
+			vars.add(var);
+		if (owned && var instanceof CumulativeVariable)
+			holdsOwnership = true;
+		valuesWritten++;
+	}
+	
+	boolean isEmpty() {
+		return order.isEmpty();
+	}
+	
+	/**
+	 * @return true if any variable in the buffer is being held owned until
+	 * the next flush
+	 */
+	boolean holdsOwnership() {
+		return holdsOwnership;
+	}
+	
+	/**
+	 * Forget any pending changes to the given object (eg. because it has
+	 * been deleted).
+	 */
+	void discard(int objectHandle) {
+		if (dirty.remove(objectHandle) != null)
+			order.remove(Integer.valueOf(objectHandle));
+	}
+	
+	/**
+	 * Sends the dirty variables and divests any cumulative variables which
+	 * were held for the flush.
+	 * 
+	 * @param time the logical time the updates should be stamped with
+	 * @param bundle if not null, all the updates are packed in to a single
+	 * 	bundle message, otherwise one update is sent per dirty object.
+	 * @return the number of updates sent to the RTI
+	 */
+	int flush(double time, UpdateBundle bundle) throws RTIexception {
+		int sent = 0;
+		byte[] logTime = RTIDep.getLogTime(time);
+		if (bundle != null)
+			bundle.begin();
+		for (Integer owner : order) {
+			ArrayList<PublicVariable> vars = dirty.get(owner);
+			if (bundle != null) {
+				bundle.beginObject(owner, vars.size());
+				for (PublicVariable var : vars)
+					bundle.add(var.getHandle(), valueOf(var));
+				continue;
+			}
+			SuppliedAttributes attrs = LocalManager.getSuppliedAttributes(vars.size());
+			for (PublicVariable var : vars)
+				attrs.add(var.getHandle(), valueOf(var));
+			try {
+				LocalManager.getManager().recordSend(
+					LocalManager.getRTI().updateAttributeValues(owner, attrs, logTime, ""));
+				sent++;
+			}
+			catch (ObjectNotKnown e) {
+				DEV_TOOLS.print("<UpdateBuffer::flush> dropping updates for deleted object " + owner);
+			}
+		}
+		if (bundle != null)
+			sent += bundle.send(logTime);
+		
+		if (holdsOwnership && !LocalManager.isLeasing()) {
+			for (Integer owner : order)
+				releaseCumulatives(owner, dirty.get(owner));
+		}
+		dirty.clear();
+		order.clear();
+		holdsOwnership = false;
+		updatesSent += sent;
+		return sent;
+	}
+	
+	private byte[] valueOf(PublicVariable var) throws RTIexception {
+		if (var instanceof CumulativeVariable)
+			return ((CumulativeVariable)var).takeDelta();
+		else
+			return var.getBytes();
+	}
+	
+	private void releaseCumulatives(int owner, ArrayList<PublicVariable> vars) 
+			throws RTIexception {
+		int cumulatives = 0;
+		for (PublicVariable var : vars) {
+			if (var instanceof CumulativeVariable)
+				cumulatives++;
+		}
+		if (cumulatives == 0)
+			return;
+		AttributeHandleSet handles = LocalManager.getHandleSet(cumulatives);
+		for (PublicVariable var : vars) {
+			if (var instanceof CumulativeVariable) {
+				handles.add(var.getHandle());
+				var.setOwnership(PublicVariable.OwnershipState.AMBIGUOUS);
+			}
+		}
+		try {
+			LocalManager.getRTI().unconditionalAttributeOwnershipDivestiture(owner, handles);
+		}
+		catch (ObjectNotKnown e) {}
+	}
+	
+	/**
+	 * @return the number of attribute updates sent by this buffer so far
+	 */
+	int updatesSent() {
+		return updatesSent;
+	}
+	
+	/**
+	 * @return the number of variable writes absorbed by this buffer so far
+	 */
+	int valuesWritten() {
+		return valuesWritten;
+	}
+}
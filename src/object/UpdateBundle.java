@@ -0,0 +1,221 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object;
+
+import hla.rti13.java1.AttributeHandleSet;
+import hla.rti13.java1.NameNotFound;
+import hla.rti13.java1.RTIambassador;
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.SuppliedAttributes;
+import io.DEV_TOOLS;
+import io.ReflectedAttributes13;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import manager.Coupler;
+import manager.LocalManager;
+
+/**
+ * The transport used when update bundling is switched on (see 
+ * {@link LocalManager#setBundling(boolean)}).
+ * 
+ * Each federate registers a single instance of the HLA_RePast 
+ * <code>bundle</code> class (declared in the .fed file alongside the 
+ * {@link Coupler}'s classes). All the updates made by the federate in a 
+ * tick are packed in to the <code>batch</code> attribute of this instance
+ * and sent as one message, which receivers unpack back in to per-object
+ * updates.
+ * 
+ * A batch is laid out as an object count followed by, for each object, its
+ * instance handle, an attribute count and then (handle, length, value) for
+ * each attribute.
+ * 
+ * @author Rob Minson
+ */
+class UpdateBundle {
+
+	private int classHandle = -1;
+	private int batchHandle = -1;
+	private int instanceHandle = -1;
+	
+	private ByteBuffer out = ByteBuffer.allocate(4096);
+	private int objects = 0;
+	
+	/**
+	 * Resolves the bundle class and subscribes to it, so bundles sent by 
+	 * other federates are always received. If <code>publish</code> is set 
+	 * the class is also published and this federate's bundle instance 
+	 * registered.
+	 * 
+	 * If the .fed file does not declare the bundle class this does nothing
+	 * unless <code>publish</code> is set, in which case the 
+	 * {@link NameNotFound} is passed on.
+	 */
+	void initialise(boolean publish) throws RTIexception {
+		RTIambassador rti = LocalManager.getRTI();
+		try {
+			classHandle = rti.getObjectClassHandle(Coupler.BUNDLE);
+			batchHandle = rti.getAttributeHandle(Coupler.BATCH, classHandle);
+		}
+		catch (NameNotFound e) {
+			classHandle = -1;
+			if (publish)
+				throw e;
+			DEV_TOOLS.print("<UpdateBundle::initialise> no bundle class declared, bundles will not be received");
+			return;
+		}
+		AttributeHandleSet handles = LocalManager.getHandleSet(1);
+		handles.add(batchHandle);
+		rti.subscribeObjectClassAttributes(classHandle, handles);
+		if (publish) {
+			rti.publishObjectClass(classHandle, handles);
+			instanceHandle = rti.registerObjectInstance(classHandle);
+		}
+	}
+	
+	boolean isBundleClass(int handle) {
+		return classHandle != -1 && handle == classHandle;
+	}
+	
+	boolean canSend() {
+		return instanceHandle != -1;
+	}
+	
+	/**
+	 * Starts a new, empty, batch.
+	 */
+	void begin() {
+		out.clear();
+		out.putInt(0);
+		objects = 0;
+	}
+	
+	/**
+	 * Starts the entries for a single object, exactly 
+	 * <code>attributes</code> calls to {@link #add(int, byte[])} must
+	 * follow.
+	 */
+	void beginObject(int instance, int attributes) {
+		ensureRemaining(8);
+		out.putInt(instance);
+		out.putInt(attributes);
+		objects++;
+	}
+	
+	void add(int attributeHandle, byte[] value) {
+		ensureRemaining(8 + value.length);
+		out.putInt(attributeHandle);
+		out.putInt(value.length);
+		out.put(value);
+	}
+	
+	/**
+	 * Sends the current batch, if it contains anything.
+	 * 
+	 * @param time the encoded logical time to send the batch at
+	 * @return the number of updates sent to the RTI (0 or 1)
+	 */
+	int send(byte[] time) throws RTIexception {
+		if (objects == 0)
+			return 0;
+		out.putInt(0, objects);
+		byte[] batch = new byte[out.position()];
+		out.flip();
+		out.get(batch);
+		SuppliedAttributes attrs = LocalManager.getSuppliedAttributes(1);
+		attrs.add(batchHandle, batch);
+		LocalManager.getManager().recordSend(
+			LocalManager.getRTI().updateAttributeValues(instanceHandle, attrs, time, ""));
+		DEV_TOOLS.print("<UpdateBundle::send> " + objects + " objects in " + batch.length + " bytes");
+		return 1;
+	}
+	
+	private void ensureRemaining(int bytes) {
+		if (out.remaining() < bytes) {
+			ByteBuffer bigger = 
+				ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+	}
+	
+	
+	/**
+	 * Walks through the per-object updates packed in a received batch.
+	 */
+	static class Reader {
+		
+		private ByteBuffer in;
+		private int remaining;
+		
+		private int instance;
+		private ReflectedAttributes13 attributes;
+		
+		Reader(byte[] batch) {
+			in = ByteBuffer.wrap(batch);
+			remaining = in.getInt();
+		}
+		
+		/**
+		 * Moves on to the next object in the batch.
+		 * @return false if there are no more objects
+		 */
+		boolean next() {
+			if (remaining == 0)
+				return false;
+			try {
+				instance = in.getInt();
+				int size = in.getInt();
+				int[] handles = new int[size];
+				byte[][] values = new byte[size][];
+				for (int i = 0; i < size; i++) {
+					handles[i] = in.getInt();
+					values[i] = new byte[in.getInt()];
+					in.get(values[i]);
+				}
+				attributes = new ReflectedAttributes13(handles, values, size);
+			}
+			catch (BufferUnderflowException e) {
+				DEV_TOOLS.print("<UpdateBundle.Reader::next> truncated batch");
+				remaining = 0;
+				return false;
+			}
+			remaining--;
+			return true;
+		}
+		
+		int getInstance() {
+			return instance;
+		}
+		
+		ReflectedAttributes13 getAttributes() {
+			return attributes;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package object.variables;
+
+import hla.rti13.java1.FederateInternalError;
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.RTIinternalError;
+import io.Bytes;
+import io.DEV_TOOLS;
+
+import manager.LocalManager;
+import object.OwnershipRequest;
+
+/**
+ * The double form of {@link CumulativeInteger}.
+ * 
+ * Federates add the same modifications in different orders (their own 
+ * at once, other federates' as they arrive) and floating point addition
+ * is not associative, so copies of a CumulativeDouble may differ by 
+ * rounding error. Use a {@link CumulativeLong} (scaled if necessary) 
+ * where every federate must see exactly the same value.
+ * 
+ * @author Rob Minson
+ */
+public class CumulativeDouble extends CumulativeVariable {
+
+	private double internalValue;
+	
+	/* modifications not yet sent, only used if sends are deferred */
+	private double pendingDelta = 0;
+	
+	public CumulativeDouble(double val) {
+		super();
+		internalValue = val;
+	}
+	
+	public CumulativeDouble() {
+		internalValue = 0;
+	}
+	
+	public double get() {
+		return internalValue;
+	}
+	
+	public void set(double modifier) throws RTIexception {
+		if (!acquire()) //the object has been deleted, the modification is dropped
+			return;
+		modify(modifier);
+	}
+	
+	/**
+	 * Modifies the value using ownership asked for in advance as part of 
+	 * the given request, waiting for the request to resolve if necessary.
+	 * 
+	 * @see manager.LocalManager#acquireOwnership(PublicVariable[])
+	 */
+	public void set(double modifier, OwnershipRequest request) throws RTIexception {
+		if (!acquire(request))
+			return;
+		modify(modifier);
+	}
+	
+	private void modify(double modifier) throws RTIexception {
+		changing();
+		this.internalValue += modifier;
+		if (isDeferred())
+			pendingDelta += modifier;
+		send(Bytes.getBytes(modifier));
+	}
+
+	public byte[] takeDelta() throws RTIinternalError {
+		double delta = pendingDelta;
+		pendingDelta = 0;
+		return Bytes.getBytes(delta);
+	}
+
+	public byte[] getBytes() throws RTIinternalError {
+		return Bytes.getBytes(internalValue);
+	}
+	
+	public void restore(byte[] value) throws FederateInternalError, RTIinternalError {
+		hasValue = true;
+		internalValue = Bytes.doubleValue(value);
+		pendingDelta = 0;
+	}
+	
+	public void update(byte[] newValue) throws FederateInternalError, RTIinternalError {
+		super.update(newValue);
+		double modifier = Bytes.doubleValue(newValue);
+		internalValue += modifier;
+		DEV_TOOLS.print("<CumulativeDouble::update> + " + modifier + " = " + internalValue + " at time " + LocalManager.getManager().getTick());
+	}
+}
@@ -38,11 +38,8 @@ import hla.rti13.java1.RTIinternalError;
 import io.Bytes;
 import io.DEV_TOOLS;
 
-import java.io.IOException;
-
-
-
 import manager.LocalManager;
+import object.OwnershipRequest;
 
 
 /**
@@ -55,6 +52,9 @@ public class CumulativeInteger extends CumulativeVariable {
 
 	private int internalValue;
 	
+	/* modifications not yet sent, only used if sends are deferred */
+	private int pendingDelta = 0;
+	
 	public CumulativeInteger(int val) {
 		super();
 		internalValue = val;
@@ -72,24 +72,48 @@ public class CumulativeInteger extends CumulativeVariable {
 	
 	public void set(int modifier) throws RTIexception {
 		
-		boolean modSuccess = super.checkOwnership();
-		if (!modSuccess || this.ownership != PublicVariable.OwnershipState.OWNED) //will only happen if the object is deleted - trouble !
+		if (!acquire()) //the object has been deleted, the modification is dropped
+			return;
+		modify(modifier);
+	}
+	
+	/**
+	 * Modifies the value using ownership asked for in advance as part of 
+	 * the given request, waiting for the request to resolve if necessary.
+	 * 
+	 * @see manager.LocalManager#acquireOwnership(PublicVariable[])
+	 */
+	public void set(int modifier, OwnershipRequest request) throws RTIexception {
+		
+		if (!acquire(request)) //the object has been deleted, the modification is dropped
 			return;
+		modify(modifier);
+	}
+	
+	private void modify(int modifier) throws RTIexception {
+		changing();
 		this.internalValue += modifier;
-		try {
-//			obLook.internalUpdate(this);
-			obLook.sendUpdate(this, Bytes.getBytes(modifier));
-			obLook.returnOwnership(this);
-		}
-		catch (Exception e) {
-			e.printStackTrace();
-		}
+		if (isDeferred())
+			pendingDelta += modifier;
+		send(Bytes.getBytes(modifier));
+	}
+
+	public byte[] takeDelta() throws RTIinternalError {
+		int delta = pendingDelta;
+		pendingDelta = 0;
+		return Bytes.getBytes(delta);
 	}
 
 	public byte[] getBytes() throws RTIinternalError {
 		return Bytes.getBytes(internalValue);
 	}
 	
+	public void restore(byte[] value) throws FederateInternalError, RTIinternalError {
+		hasValue = true;
+		internalValue = Bytes.intValue(value);
+		pendingDelta = 0;
+	}
+	
 	public void update(byte[] newValue) throws FederateInternalError, RTIinternalError {
 		super.update(newValue);		
 		
@@ -32,11 +32,105 @@ This file is part of HLA_RePast.
  */
 package object.variables;
 
+import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.RTIinternalError;
+
+import java.io.IOException;
+
+import manager.LocalManager;
+import object.OwnershipRequest;
+
 /**
+ * A variable which other federates may modify (add to) as well as the
+ * owner of its object. Updates carry the modification rather than the
+ * new value.
+ * 
+ * Normally each modification is made while holding ownership of the
+ * variable, which is then given up. With commutative cumulatives on (see 
+ * {@link LocalManager#setCommutativeCumulatives(boolean)}) no ownership is
+ * used: the modifications made in a tick are summed and sent by each 
+ * federate as a delta, which receivers add in timestamp order. Only the
+ * integral types are then guaranteed to hold the same value everywhere,
+ * see {@link CumulativeDouble}.
+ * 
  * @author Rob Minson
  *
  */
 public abstract class CumulativeVariable extends PublicVariable {
+	
+	/**
+	 * Obtains the right to modify the variable, in the normal mode this 
+	 * means acquiring ownership.
+	 * 
+	 * @return false if the modification cannot be made (in practice only 
+	 * 	if the object has been deleted)
+	 */
+	protected boolean acquire() throws RTIexception {
+		if (LocalManager.isCommutativeCumulatives())
+			return true;
+		boolean modSuccess = this.ownership == PublicVariable.OwnershipState.OWNED
+								|| super.checkOwnership();
+		return modSuccess && this.ownership == PublicVariable.OwnershipState.OWNED;
+	}
+	
+	/**
+	 * As {@link #acquire()} using ownership asked for in advance as part of
+	 * the given request, waiting for the request to resolve if necessary.
+	 */
+	protected boolean acquire(OwnershipRequest request) throws RTIexception {
+		if (LocalManager.isCommutativeCumulatives())
+			return true;
+		return this.ownership == PublicVariable.OwnershipState.OWNED 
+				|| request.await(this);
+	}
+	
+	/**
+	 * @return true if modifications are summed and sent later (see 
+	 * 	{@link #takeDelta()}) rather than sent as they are made
+	 */
+	protected boolean isDeferred() {
+		return LocalManager.isWriteBehind() || LocalManager.isCommutativeCumulatives();
+	}
+	
+	/**
+	 * Sends a modification which has already been applied to the local 
+	 * value (and added to the pending delta if {@link #isDeferred()}).
+	 * 
+	 * @param modifier the encoded modification
+	 */
+	protected void send(byte[] modifier) throws RTIexception {
+		if (LocalManager.isCommutativeCumulatives()) {
+			obLook.addDelta(this);
+			return;
+		}
+		if (LocalManager.isWriteBehind()) {
+			/* ownership is held until the buffered update is flushed */
+			try {
+				obLook.internalUpdate(this);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		try {
+			obLook.sendUpdate(this, modifier);
+			obLook.returnOwnership(this);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
+	/**
+	 * Used by the engine in write-behind mode to obtain the sum of the
+	 * modifications made since the last call, which is then reset.
+	 * 
+	 * @return the encoded modification to send to other federates
+	 * @see manager.LocalManager#setWriteBehind(boolean)
+	 * @see manager.LocalManager#setCommutativeCumulatives(boolean)
+	 */
+	public abstract byte[] takeDelta() throws RTIinternalError;
+
 	
 }
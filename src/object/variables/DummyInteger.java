@@ -70,6 +70,7 @@ public class DummyInteger extends DummyVariable {
 		
 		try {
 			obLook.internalUpdate(this);
+			changing();
 			internalValue = value;
 		} 
 		catch (IOException e) {
@@ -78,6 +79,7 @@ public class DummyInteger extends DummyVariable {
 	}
 	
 	public void update(byte[] newValue) throws FederateInternalError {
+		changing();
 		internalValue = Bytes.intValue(newValue);
 	}
 
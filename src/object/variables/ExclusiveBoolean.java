@@ -39,6 +39,8 @@ import hla.rti13.java1.FederateInternalError;
 
 import java.io.IOException;
 
+import manager.LocalManager;
+
 
 import exceptions.ExcludedException;
 import exceptions.VariableException;
@@ -71,7 +73,10 @@ public class ExclusiveBoolean extends ExclusiveVariable {
 	
 	public void set(boolean value) throws ExcludedException, RTIexception {
 		
-		if (super.checkOwnership()) {
+		if (LocalManager.isDeterministicExclusion())
+			claim(Bytes.getBytes(value));
+		else if (super.checkOwnership()) {
+			changing();
 			internalValue = value;
 			try {
 				obLook.internalUpdate(this);
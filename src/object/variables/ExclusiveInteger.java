@@ -39,6 +39,9 @@ import hla.rti13.java1.RTIinternalError;
 import hla.rti13.java1.FederateInternalError;
 import java.io.IOException;
 
+import manager.LocalManager;
+import object.OwnershipRequest;
+
 
 import exceptions.ExcludedException;
 import exceptions.VariableException;
@@ -66,18 +69,42 @@ public class ExclusiveInteger extends ExclusiveVariable {
 	
 	public void set(int value) throws ExcludedException, RTIexception {
 		
-		if (super.checkOwnership()) {
-			internalValue = value;
-			try {
-				obLook.internalUpdate(this);
-			}
-			catch (IOException e) {
-				throw new VariableException("serialisation error", e);
-			}
-		}
+		if (LocalManager.isDeterministicExclusion())
+			claim(Bytes.getBytes(value));
+		else if (super.checkOwnership())
+			write(value);
 		else
 			throw new ExcludedException();
 	}
+	
+	/**
+	 * Sets the value using ownership asked for in advance as part of the
+	 * given request, waiting for the request to resolve if necessary.
+	 * 
+	 * @see manager.LocalManager#acquireOwnership(PublicVariable[])
+	 */
+	public void set(int value, OwnershipRequest request) 
+			throws ExcludedException, RTIexception {
+		
+		if (LocalManager.isDeterministicExclusion())
+			claim(Bytes.getBytes(value));
+		else if (this.ownership == PublicVariable.OwnershipState.OWNED 
+				|| request.await(this))
+			write(value);
+		else
+			throw new ExcludedException();
+	}
+	
+	private void write(int value) throws RTIexception {
+		changing();
+		internalValue = value;
+		try {
+			obLook.internalUpdate(this);
+		}
+		catch (IOException e) {
+			throw new VariableException("serialisation error", e);
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see hla_past.object.PublicVariable#getBytes()
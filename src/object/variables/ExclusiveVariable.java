@@ -34,16 +34,53 @@ package object.variables;
 
 import io.DEV_TOOLS;
 import hla.rti13.java1.RTIexception;
+import manager.LocalManager;
 
 /**
  * @author Rob Minson
  */
 public abstract class ExclusiveVariable extends PublicVariable {
+	
+	/* the outcome of the last claim made on this variable, only used with
+	 * deterministic exclusion */
+	private OwnershipState claim = OwnershipState.AMBIGUOUS;
+	
+	/**
+	 * With deterministic exclusion on, writes are claims which are not 
+	 * applied until they have been resolved against the claims of other
+	 * federates, after the next time advance. 
+	 * 
+	 * @see LocalManager#setDeterministicExclusion(boolean)
+	 */
+	protected void claim(byte[] value) throws RTIexception {
+		if (obLook == null)
+			throw new IllegalStateException("Variable Not Yet Registered");
+		claim = OwnershipState.AMBIGUOUS;
+		obLook.claim(this, value);
+	}
+	
+	/**
+	 * Used internally by the engine to report the outcome of a claim.
+	 */
+	public void claimResolved(boolean won) {
+		claim = won ? OwnershipState.OWNED : OwnershipState.NOT_OWNED;
+	}
+	
+	/**
+	 * With deterministic exclusion on, whether the last value written to 
+	 * this variable by this federate was applied (OWNED), lost to another
+	 * federate's write (NOT_OWNED) or has not been resolved yet (AMBIGUOUS).
+	 */
+	public OwnershipState getClaim() {
+		return claim;
+	}
+	
 	protected boolean checkOwnership() throws IllegalStateException, RTIexception {		
 		if (ownership == OwnershipState.OWNED) { /* I already got ownership */
 			return true;
 		}
-		else if (ownership == OwnershipState.NOT_OWNED) { /* I definitely haven't got ownership */
+		else if (ownership == OwnershipState.NOT_OWNED 
+				|| ownership == OwnershipState.DELETED) { /* I definitely haven't got ownership */
 			return false;
 		}
 		else { /* I might be able to get ownership */
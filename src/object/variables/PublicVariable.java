@@ -70,6 +70,7 @@ public abstract class PublicVariable {
 	public enum OwnershipState {
 		OWNED, 		/* asked for and got */
 		NOT_OWNED, 	/* asked for and not got */
+		DELETED,	/* asked for but the object has been deleted */
 		AMBIGUOUS;	/* not asked for or waiting for answer */
 	}
 
@@ -82,6 +83,13 @@ public abstract class PublicVariable {
 	protected int ownersHandle;
 
 	protected boolean hasValue = false;
+	
+	/* ownership lease bookkeeping, see LocalManager.setOwnershipLease */
+	private double lastUsed = Double.NEGATIVE_INFINITY;
+	private boolean releaseWanted = false;
+	private int contention = 0;
+	private double refusedSince = Double.NaN;
+	private double askedAt = Double.NaN;
 
 	/**
 	 * Whether or not a value has been obtained for this PublicVariable
@@ -127,7 +135,23 @@ public abstract class PublicVariable {
 	 * @throws RTIinternalError
 	 */
 	public void update(byte[] newValue) throws FederateInternalError, RTIinternalError{	
+		changing();
 		hasValue = true;
+		fireChanged(newValue);
+	}
+	
+	/* 
+	 * Called before the value is replaced, by a reflection or a local set, 
+	 * so an optimistic federate can keep the value it had when the last 
+	 * checkpoint was taken.
+	 */
+	protected void changing() {
+		if (obLook != null)
+			obLook.changing(this);
+	}
+	
+	/* tells the listeners of a new value, before it is assigned */
+	protected void fireChanged(byte[] newValue) throws FederateInternalError, RTIinternalError {
 		for (int i = 0; i < listeners.size(); i++) {
 		    try {
 		        ((VariableListener)listeners.get(i)).variableChanged(getBytes(), newValue);
@@ -136,8 +160,24 @@ public abstract class PublicVariable {
 		    }
 		}
 	}
+	
+	protected boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
 
 	public abstract byte[] getBytes() throws RTIinternalError;
+	
+	/**
+	 * Sets the variable back to a value previously obtained from 
+	 * {@link #getBytes()}, used when an optimistic federate rolls back. 
+	 * Nothing is sent to the RTI.
+	 * 
+	 * The default is the same as {@link #update(byte[])}, variables whose
+	 * updates are not simple assignments must override this.
+	 */
+	public void restore(byte[] value) throws FederateInternalError, RTIinternalError {
+		update(value);
+	}
 
 	public boolean isOwned() {
 		return ownership == OwnershipState.OWNED;
@@ -147,14 +187,26 @@ public abstract class PublicVariable {
 		if (obLook == null)
 			throw new IllegalStateException("Variable Not Yet Registered");		
 		ownership = OwnershipState.AMBIGUOUS;
-		obLook.requestOwnership(this);
+		final PublicVariable var = this;
+		Threads.onRTIThread(new Threads.RTICall<Object>() {
+			public Object call() throws RTIexception {
+				obLook.requestOwnership(var);
+				return null;
+			}
+		});
 	}
 	
+	/* ownership is negotiated on the RTI thread, even when called from an
+	 * action running in parallel */
 	protected boolean checkOwnership() throws IllegalStateException, RTIexception {	
 		if (obLook == null)
 			throw new IllegalStateException("Variable Not Yet Registered");
-		else
-			return obLook.checkOwnership(this);
+		final PublicVariable var = this;
+		return Threads.onRTIThread(new Threads.RTICall<Boolean>() {
+			public Boolean call() throws RTIexception {
+				return obLook.checkOwnership(var);
+			}
+		});
 	}
 
 	public boolean waitForOwnershipResolution() {	
@@ -176,6 +228,8 @@ public abstract class PublicVariable {
 
 	public void setOwnership(OwnershipState ownership) {	
 		this.ownership = ownership;
+		if (ownership != OwnershipState.AMBIGUOUS && obLook != null)
+			obLook.ownershipResolved(this);
 	}
 	
 	public void refresh() throws IOException, RTIexception {		
@@ -186,6 +240,91 @@ public abstract class PublicVariable {
 //			obLook.internalUpdate(this);
 	}
 
+	/**
+	 * Used internally by the engine to record that the variable was
+	 * written, or its ownership acquired, at the given tick.
+	 */
+	public void used(double tick) {
+		lastUsed = tick;
+		refusedSince = Double.NaN;
+	}
+	
+	/**
+	 * @return the last tick at which the variable was written or acquired
+	 * 	by this federate
+	 */
+	public double getLastUsed() {
+		return lastUsed;
+	}
+	
+	/**
+	 * Used internally by the engine to record that another federate wanted
+	 * the variable at the same time as this one.
+	 * 
+	 * @param release whether this federate holds the variable and should 
+	 * 	give it up
+	 */
+	public void contended(boolean release) {
+		contention++;
+		if (release)
+			releaseWanted = true;
+	}
+	
+	public boolean isReleaseWanted() {
+		return releaseWanted;
+	}
+	
+	public void released() {
+		releaseWanted = false;
+	}
+	
+	/**
+	 * Used internally by the engine to record that ownership of the 
+	 * variable was refused at the given tick.
+	 */
+	public void refused(double tick) {
+		if (Double.isNaN(refusedSince))
+			refusedSince = tick;
+	}
+	
+	/**
+	 * @return the tick of the first of the refusals since this federate 
+	 * 	last acquired the variable, NaN if there have been none
+	 */
+	public double getRefusedSince() {
+		return refusedSince;
+	}
+	
+	/**
+	 * Used internally by the engine to record that the holder of the 
+	 * variable was asked to release it at the given tick.
+	 */
+	public void asked(double tick) {
+		askedAt = tick;
+	}
+	
+	/**
+	 * @return the tick at which the holder was last asked to release the
+	 * 	variable, NaN if that request has been answered (or cancelled)
+	 */
+	public double getAskedAt() {
+		return askedAt;
+	}
+	
+	public void askAnswered() {
+		askedAt = Double.NaN;
+	}
+	
+	/**
+	 * @return the number of times this federate and another have wanted 
+	 * 	ownership of this variable at the same time, which shows how hot it 
+	 * 	is (only counted with ownership leases on)
+	 * @see LocalManager#setOwnershipLease(int)
+	 */
+	public int getContention() {
+		return contention;
+	}
+
 	public synchronized void addVariableListener(VariableListener listener) {
 		this.listeners.add(listener);
 	}
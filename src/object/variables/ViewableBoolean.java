@@ -58,7 +58,7 @@ public class ViewableBoolean extends ViewableVariable {
 		internalValue = value;
 	}
 	
-	public byte[] getBytes() throws RTIinternalError {
+	protected byte[] encode() throws RTIinternalError {
 		
 		return Bytes.getBytes(internalValue);
 	}	
@@ -66,6 +66,8 @@ public class ViewableBoolean extends ViewableVariable {
 	public void set(boolean newValue) throws RTIexception, IOException {
 		
 		if (super.checkOwnership()) {
+			changing();
+			assigned();
 			internalValue = newValue;
 			obLook.internalUpdate(this);
 		}
@@ -75,11 +77,11 @@ public class ViewableBoolean extends ViewableVariable {
 	
 	public boolean get() {
 		
+		fresh();
 		return internalValue;
 	}
 	
-	public void update(byte[] newValue) throws RTIinternalError, FederateInternalError {
-		super.update(newValue);
-		internalValue = Bytes.booleanValue(newValue);
+	protected void decode(byte[] value) throws FederateInternalError {
+		internalValue = Bytes.booleanValue(value);
 	}
 }
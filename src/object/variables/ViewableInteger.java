@@ -58,7 +58,7 @@ public class ViewableInteger extends ViewableVariable {
 		internalValue = value;
 	}
 	
-	public byte[] getBytes() throws RTIinternalError {
+	protected byte[] encode() throws RTIinternalError {
 		
 		return Bytes.getBytes(internalValue);
 	}	
@@ -66,6 +66,8 @@ public class ViewableInteger extends ViewableVariable {
 	public void set(int newValue) throws RTIexception {
 		
 		if (super.checkOwnership()) {
+			changing();
+			assigned();
 			internalValue = newValue;
 			try {
 				obLook.internalUpdate(this);
@@ -80,12 +82,12 @@ public class ViewableInteger extends ViewableVariable {
 	
 	public int get() {
 		
+		fresh();
 		return internalValue;
 	}
 	
-	public void update(byte[] newValue) throws RTIinternalError, FederateInternalError {
-		super.update(newValue);
-		internalValue = Bytes.intValue(newValue);
+	protected void decode(byte[] value) throws FederateInternalError {
+		internalValue = Bytes.intValue(value);
 	}
 
 }
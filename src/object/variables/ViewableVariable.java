@@ -32,11 +32,117 @@ This file is part of HLA_RePast.
  */
 package object.variables;
 
+import hla.rti13.java1.FederateInternalError;
+import hla.rti13.java1.RTIinternalError;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import manager.LocalManager;
+
 /**
+ * ViewableVariables' values are plain assignments, so a reflected value 
+ * can be kept as it arrived and only decoded the first time the variable
+ * is read, values replaced before they are read are then never decoded. 
+ * Variables which decode lazily (see {@link #decodesLazily()}) do this 
+ * when {@link LocalManager#setLazyDecoding(boolean)} is on.
+ * 
  * @author Rob Minson
  *
  */
 public abstract class ViewableVariable extends PublicVariable {
+	
+	private static AtomicLong decoded = new AtomicLong();
+	private static AtomicLong skipped = new AtomicLong();
+	
+	/* a reflected value not yet decoded, null if the value is current. 
+	 * Volatile so reads can check it without taking the lock */
+	private volatile byte[] stale;
+	
+	/**
+	 * Sets the value from its reflected bytes.
+	 */
+	protected abstract void decode(byte[] value) throws FederateInternalError;
+	
+	/**
+	 * @return the bytes of the current value
+	 */
+	protected abstract byte[] encode() throws RTIinternalError;
+	
+	/**
+	 * Whether reflected values are decoded when first read rather than as 
+	 * they arrive. By default they aren't, keeping a value to decode later
+	 * costs more than decoding a primitive.
+	 */
+	protected boolean decodesLazily() {
+		return false;
+	}
+	
+	public void update(byte[] newValue) throws RTIinternalError, FederateInternalError {
+		super.update(newValue);
+		if (decodesLazily()) {
+			synchronized (this) {
+				if (stale != null)
+					skipped.incrementAndGet();
+				stale = newValue;
+			}
+		}
+		else {
+			synchronized (this) {
+				stale = null;
+				decode(newValue);
+			}
+			decoded.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Decodes the last reflected value if it hasn't been yet, called by 
+	 * the getters before the value is read. Only locks if there is a value
+	 * to decode, so reads cost nothing extra when decoding isn't lazy.
+	 */
+	protected void fresh() {
+		if (stale == null)
+			return;
+		synchronized (this) {
+			byte[] value = stale;
+			if (value == null) //decoded by another reader meanwhile
+				return;
+			try {
+				decode(value);
+			}
+			catch (FederateInternalError e) {
+				throw new IllegalStateException("could not decode value of variable " + myHandle, e);
+			}
+			stale = null;
+		}
+		decoded.incrementAndGet();
+	}
+	
+	/* a local set replaces any value waiting to be decoded */
+	protected synchronized void assigned() {
+		stale = null;
+	}
+	
+	public synchronized byte[] getBytes() throws RTIinternalError {
+		if (stale != null)
+			return stale;
+		return encode();
+	}
+	
+	/**
+	 * @return the number of reflected values decoded
+	 */
+	public static long getValuesDecoded() {
+		return decoded.get();
+	}
+	
+	/**
+	 * @return the number of reflected values replaced by the next before
+	 * 	they were read, and so never decoded
+	 */
+	public static long getDecodesSkipped() {
+		return skipped.get();
+	}
 
 	protected boolean checkOwnership() throws IllegalStateException {		
 		if (obLook == null)
@@ -0,0 +1,93 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package rtidep;
+
+/**
+ * Sizes the tick bounds from an exponentially weighted moving average of 
+ * how long the federate waits for callbacks, from the start of the wait 
+ * to the callback's arrival. Time the model spends computing between 
+ * waits is not counted.
+ * 
+ * The minimum is a quarter of the average wait, so a federate waiting 
+ * on a slow federation blocks in the RTI for longer stretches, while one 
+ * in a fast federation is never held more than a fraction of a step past 
+ * its grant. It never exceeds MIN_CEILING, half the old fixed minimum of
+ * 0.1 seconds.
+ */
+public class AdaptiveTick implements TickStrategy {
+
+	public static final double FLOOR = 0.001;
+	public static final double CEILING = 0.5;
+	public static final double MIN_CEILING = 0.05;
+	
+	/* weight given to each new observation */
+	private double alpha;
+	
+	private double average;
+	/* start of the current wait, -1 when not waiting */
+	private long start = -1;
+	
+	public AdaptiveTick() {
+		this(0.2);
+	}
+	
+	public AdaptiveTick(double alpha) {
+		this.alpha = alpha;
+		this.average = 4 * FLOOR;
+	}
+	
+	public double getMin() {
+		return Math.min(MIN_CEILING, clamp(average / 4));
+	}
+	
+	public double getMax() {
+		return Math.max(clamp(average * 2), getMin() * 2);
+	}
+	
+	public synchronized void waiting(long nanos) {
+		start = nanos;
+	}
+	
+	public synchronized void arrived(long nanos) {
+		if (start >= 0) {
+			double wait = (nanos - start) / 1e9;
+			average = alpha * wait + (1 - alpha) * average;
+		}
+		start = -1;
+	}
+	
+	/**
+	 * @return the current average wait for a callback, in seconds
+	 */
+	public double getAverage() {
+		return average;
+	}
+	
+	private static double clamp(double t) {
+		return Math.min(CEILING, Math.max(FLOOR, t));
+	}
+}
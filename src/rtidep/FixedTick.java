@@ -0,0 +1,54 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package rtidep;
+
+/**
+ * Always ticks with the same bounds. <code>new FixedTick(0.1, 0.5)</code>
+ * is the historical behaviour.
+ */
+public class FixedTick implements TickStrategy {
+
+	private double min;
+	private double max;
+	
+	public FixedTick(double min, double max) {
+		this.min = min;
+		this.max = max;
+	}
+	
+	public double getMin() {
+		return min;
+	}
+	
+	public double getMax() {
+		return max;
+	}
+	
+	public void waiting(long nanos) {}
+	
+	public void arrived(long nanos) {}
+}
@@ -0,0 +1,119 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package rtidep;
+
+import hla.rti13.java1.RTIexception;
+
+/**
+ * A background thread which ticks the RTI until some condition holds 
+ * (normally a time advance grant) while the model's thread gets on with
+ * something else.
+ * 
+ * The pump only ticks: callbacks delivered during its ticks are left in 
+ * the callback buffer for the model's thread to flush once it has called
+ * {@link #await()}. The model's thread must not use the RTI between 
+ * {@link #pump(Threads.Condition)} and {@link #await()}: 
+ * {@link Threads#isPumping()} is true for it in between.
+ */
+public class Pump extends Thread {
+
+	private Threads.Condition until = null;
+	private RTIexception failure = null;
+	
+	public Pump() {
+		super("HLA_RePast pump");
+		setDaemon(true);
+	}
+	
+	/**
+	 * Starts ticking in the background until the condition holds.
+	 */
+	public synchronized void pump(Threads.Condition c) {
+		if (until != null)
+			throw new IllegalStateException("pump already running");
+		until = c;
+		failure = null;
+		Threads.setPumping(this);
+		notifyAll();
+	}
+	
+	/**
+	 * @return true if the pump is currently ticking
+	 */
+	public synchronized boolean isPumping() {
+		return until != null;
+	}
+	
+	/**
+	 * Waits for the condition given to {@link #pump(Threads.Condition)} to
+	 * hold, after which the RTI is the caller's again.
+	 * 
+	 * @throws RTIexception if the pump's ticking failed
+	 */
+	public synchronized void await() throws RTIexception {
+		while (until != null) {
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+	
+	public void run() {
+		while (true) {
+			Threads.Condition c;
+			synchronized (this) {
+				while (until == null) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				c = until;
+			}
+			try {
+				while (!c.holds())
+					Threads.RTI_PUMP();
+			}
+			catch (RTIexception e) {
+				failure = e;
+			}
+			synchronized (this) {
+				Threads.setPumping(null);
+				until = null;
+				notifyAll();
+			}
+		}
+	}
+}
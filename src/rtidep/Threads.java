@@ -28,10 +28,70 @@ package rtidep;
 
 import hla.rti13.java1.RTIambassador;
 import hla.rti13.java1.RTIexception;
+import hla.rti13.java1.RTIinternalError;
+import io.DEV_TOOLS;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import logging.StopWatch;
 import manager.LocalManager;
 
 public class Threads {
 
+	/**
+	 * A state the federate is waiting to reach, eg. a time advance grant.
+	 */
+	public interface Condition {
+		public boolean holds();
+	}
+	
+	/**
+	 * A piece of engine code which uses the RTI, see 
+	 * {@link #onRTIThread(RTICall)}.
+	 */
+	public interface RTICall<T> {
+		public T call() throws RTIexception;
+	}
+	
+	/* while actions run in parallel, the only thread which may use the RTI
+	 * and the calls the other threads have handed to it */
+	private static volatile Thread rtiThread = null;
+	private static final LinkedBlockingQueue<FutureTask<Object>> rtiCalls = 
+										new LinkedBlockingQueue<FutureTask<Object>>();
+	private static volatile RTIexception postFailure = null;
+	
+	/* the pump thread while it is ticking the RTI for the model's thread */
+	private static volatile Thread pumping = null;
+	
+	/* time spent in RTI_WAIT overall, and inside the RTI's tick within it */
+	public static StopWatch waitTimer = new StopWatch();
+	public static StopWatch pumpTimer = new StopWatch();
+	
+	private static TickStrategy strategy = new AdaptiveTick();
+	
+	/* held for every tick, so that a {@link Pump} and the model's thread
+	 * never enter the RTI together */
+	private static final Object RTI_LOCK = new Object();
+	
+	/**
+	 * Sets the strategy used to bound each tick made while waiting in
+	 * {@link #RTI_WAIT(Condition)}. The default is an {@link AdaptiveTick},
+	 * a <code>new FixedTick(0.1, 0.5)</code> restores the old fixed 
+	 * polling behaviour.
+	 */
+	public static void setTickStrategy(TickStrategy s) {
+		strategy = s;
+	}
+	
+	public static TickStrategy getTickStrategy() {
+		return strategy;
+	}
+
 	public static void RTI_SHORT_TICK() throws RTIexception {
 		RTI_SHORT_TICK(LocalManager.getRTI());
 	}
@@ -39,6 +99,184 @@ public class Threads {
 	public static void RTI_LONG_TICK() throws RTIexception {
 		RTI_LONG_TICK(LocalManager.getRTI());
 	}
+	
+	/**
+	 * Ticks the RTI until the given condition holds. The condition is 
+	 * expected to be changed by a callback, which should then call 
+	 * {@link #signal()}.
+	 * 
+	 * Callbacks are only delivered on the ticking thread, so rather than
+	 * polling with short fixed ticks the thread is left blocked inside the 
+	 * RTI for as long as the current {@link TickStrategy} allows.
+	 */
+	public static void RTI_WAIT(Condition c) throws RTIexception {
+		if (c.holds())
+			return;
+		RTIambassador amb = LocalManager.getRTI();
+		strategy.waiting(System.nanoTime());
+		waitTimer.start();
+		try {
+			while (!c.holds()) {
+				pumpTimer.start();
+				try {
+					RTI_TICK(amb, strategy.getMin(), strategy.getMax());
+				}
+				finally {
+					pumpTimer.stop();
+				}
+			}
+		}
+		finally {
+			waitTimer.stop();
+		}
+	}
+	
+	/**
+	 * Ticks the RTI once with the current strategy's bounds without 
+	 * flushing the callback buffer, which is left for the model's thread.
+	 * Only used by {@link Pump}.
+	 */
+	static void RTI_PUMP() throws RTIexception {
+		RTIambassador amb = LocalManager.getRTI();
+		synchronized (RTI_LOCK) {
+			amb.tick(strategy.getMin(), strategy.getMax());
+		}
+	}
+	
+	/**
+	 * @return true unless parallel actions are running and the caller is 
+	 * 	not the thread which started them
+	 */
+	public static boolean isRTIThread() {
+		Thread t = rtiThread;
+		return t == null || t == Thread.currentThread();
+	}
+	
+	/**
+	 * @return true while a {@link Pump} is ticking the RTI and the caller is
+	 * 	not the pump itself, when the caller must leave the RTI alone
+	 */
+	public static boolean isPumping() {
+		Thread t = pumping;
+		return t != null && t != Thread.currentThread();
+	}
+	
+	static void setPumping(Thread pump) {
+		pumping = pump;
+	}
+	
+	/**
+	 * @return true while parallel actions are running
+	 */
+	public static boolean isParallel() {
+		return rtiThread != null;
+	}
+	
+	/**
+	 * Runs the call on the RTI thread and waits for its result. On the RTI
+	 * thread itself (or when nothing runs in parallel) it is simply called.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T onRTIThread(RTICall<T> c) throws RTIexception {
+		if (isRTIThread())
+			return c.call();
+		FutureTask<Object> task = wrap(c);
+		rtiCalls.add(task);
+		try {
+			return (T)task.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RTIexception)
+				throw (RTIexception)e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RTIinternalError(e.getCause().toString());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RTIinternalError("interrupted waiting for the RTI thread");
+		}
+	}
+	
+	/**
+	 * Hands the call to the RTI thread without waiting for it, calls posted
+	 * by one thread are made in the order they were posted. A failure is
+	 * reported when the parallel actions finish.
+	 */
+	public static void post(RTICall<?> c) throws RTIexception {
+		if (isRTIThread())
+			c.call();
+		else
+			rtiCalls.add(wrap(c));
+	}
+	
+	private static FutureTask<Object> wrap(final RTICall<?> c) {
+		return new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				try {
+					return c.call();
+				}
+				catch (RTIexception e) {
+					if (postFailure == null)
+						postFailure = e;
+					throw e;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Makes the calling thread the only one allowed to use the RTI until
+	 * {@link #endParallel()}, other threads hand their calls to it.
+	 */
+	public static void beginParallel() {
+		postFailure = null;
+		rtiThread = Thread.currentThread();
+	}
+	
+	/**
+	 * Called on the RTI thread while parallel work is running: makes the 
+	 * calls handed over by the other threads until the work is done.
+	 */
+	public static void serviceUntil(Future<?> done) {
+		while (!done.isDone()) {
+			try {
+				FutureTask<Object> task = rtiCalls.poll(1, TimeUnit.MILLISECONDS);
+				if (task != null)
+					task.run();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Makes any calls still waiting and returns the RTI to normal use.
+	 * 
+	 * @throws RTIexception the first failure of a posted call, if any
+	 */
+	public static void endParallel() throws RTIexception {
+		FutureTask<Object> task;
+		while ((task = rtiCalls.poll()) != null)
+			task.run();
+		rtiThread = null;
+		RTIexception failure = postFailure;
+		postFailure = null;
+		if (failure != null) {
+			DEV_TOOLS.showException("<Threads::endParallel> posted call failed", failure);
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Records the arrival of a waited-for callback (time grants, 
+	 * constrained and regulation enabled).
+	 */
+	public static void signal() {
+		strategy.arrived(System.nanoTime());
+	}
 
 	private static void RTI_SHORT_TICK(RTIambassador amb) throws RTIexception {
 		RTI_TICK(amb, 0.1, 0.5);
@@ -50,9 +288,12 @@ public class Threads {
 	
 	private static void RTI_TICK(RTIambassador amb, double min, double max) 
 		throws RTIexception {
-		if (min <= 0 || max <= 0 || min >= max)
-			amb.tick();
-		amb.tick(min, max);
+		synchronized (RTI_LOCK) {
+			if (min <= 0 || max <= 0 || min >= max)
+				amb.tick();
+			else
+				amb.tick(min, max);
+		}
 		LocalManager.getManager().flushCallbackBuffer(); 
 			/* commits any buffered callbacks */
 	}
@@ -0,0 +1,58 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package rtidep;
+
+/**
+ * Decides the minimum and maximum time (in seconds) each call to 
+ * <code>tick(min, max)</code> may spend inside the RTI while a federate 
+ * is waiting on a time related callback.
+ * 
+ * Longer minimums mean fewer wake ups (and less CPU) while waiting on slow
+ * federates, at the cost of noticing a callback up to <code>min</code> 
+ * seconds late.
+ * 
+ * @see Threads#setTickStrategy(TickStrategy)
+ */
+public interface TickStrategy {
+
+	public double getMin();
+	
+	public double getMax();
+	
+	/**
+	 * Called when a federate starts waiting for a callback, which is not 
+	 * yet there.
+	 * @param nanos the time, as given by {@link System#nanoTime()}
+	 */
+	public void waiting(long nanos);
+	
+	/**
+	 * Called each time a waited-for callback is delivered.
+	 * @param nanos the time of arrival, as given by {@link System#nanoTime()}
+	 */
+	public void arrived(long nanos);
+}
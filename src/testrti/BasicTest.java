@@ -133,6 +133,24 @@ public class BasicTest extends SimModelImpl {
 
 	public static int RACE_LOST = 0;
 	
+	/* exclusions since the last display step, the ExcludedExceptions caught
+	 * (ownership) or the claims lost (deterministic exclusion) */
+	int excludedThisTick = 0;
+	long claimsLost = 0;
+	
+	private void countExclusions() {
+		if (LocalManager.isDeterministicExclusion()) {
+			long lost = man.getClaimsLost();
+			excludedThisTick += (int)(lost - claimsLost);
+			claimsLost = lost;
+		}
+		RACE_LOST += excludedThisTick;
+		System.out.println("exclusions @ step " + scedge.getCurrentTime() + ": " + 
+							excludedThisTick + (LocalManager.isDeterministicExclusion() 
+												? " (deterministic)" : " (ownership)"));
+		excludedThisTick = 0;
+	}
+	
 	public void setup() {	
 		
 		System.out.println("setup()");		
@@ -187,6 +205,7 @@ public class BasicTest extends SimModelImpl {
 								}
 								catch (ExcludedException e) {
 //									System.out.println("\tEXCLUDED @ " + man.getTick());
+									excludedThisTick++;
 								}
 								catch (Exception e) { e.printStackTrace(); }								
 							}
@@ -242,6 +261,7 @@ public class BasicTest extends SimModelImpl {
 					if (remoteCountries == null)
 						return;
 					System.out.println("********** DISPLAY STEP **********");
+					countExclusions();
 										
 //					for (int i = 0; i < remoteCountries.getInstances().size(); i++) {
 //						Country nextCountry = (Country)remoteCountries.getInstances().get(i);
@@ -267,6 +287,11 @@ public class BasicTest extends SimModelImpl {
 				public void execute() {
 					timer = (System.currentTimeMillis() - timer) / 1000;
 					System.out.println(iterations + " steps complete in " + timer + " seconds");
+					/* run once with and once without "stepped" to compare TAR 
+					 * with NERA on the same federation */
+					System.out.println("mean grant latency (" + 
+							(man.getTimeStep() > 0 ? "TAR" : "NERA") + "): " + 
+							man.getMeanGrantLatency() + " ms");
 					stop();
 					DEV_TOOLS.stopRead(RACE_LOST + " RACES LOST!    Enter to destroy --> *");
 					getController().exitSim();
@@ -315,8 +340,20 @@ public class BasicTest extends SimModelImpl {
 			SimInit init = new SimInit();		
 			LocalManager manager = null;
 			int numFederates = Integer.parseInt(args[0]);
+			/* compare exclusions per tick under each conflict resolution scheme,
+			 * and grant latency under each way of advancing */
+			boolean stepped = false;
+			for (int i = 3; i < args.length; i++) {
+				if (args[i].equals("deterministic"))
+					LocalManager.setDeterministicExclusion(true);
+				else if (args[i].equals("stepped"))
+					stepped = true;
+			}
 			try {
-				manager = LocalManager.createManager(new Class[] {BasicTestObject.class}, numFederates, args[1], "BasicTest", "BasicTest.fed"); 
+				if (stepped)
+					manager = LocalManager.createManager(new Class[] {BasicTestObject.class}, numFederates, args[1], "BasicTest", "BasicTest.fed", true, 1.0);
+				else
+					manager = LocalManager.createManager(new Class[] {BasicTestObject.class}, numFederates, args[1], "BasicTest", "BasicTest.fed"); 
 			}
 			catch (IndexOutOfBoundsException e) {
 				manager = LocalManager.createManager(new Class[] {BasicTestObject.class}, numFederates, "BasicTest", "BasicTest.fed");
@@ -335,7 +372,7 @@ public class BasicTest extends SimModelImpl {
 			init.loadModel(mod, null, false);
 		}
 		catch (IndexOutOfBoundsException e) {
-			System.out.println("Usage: \n[numFederates / federateName / iterations] \nOR \n[numFederates / federateName / <50 iterations>] \nOR \n[numFederates / <hostname> / <50 iterations>] ");
+			System.out.println("Usage: \n[numFederates / federateName / iterations / <deterministic> / <stepped>] \nOR \n[numFederates / federateName / <50 iterations>] \nOR \n[numFederates / <hostname> / <50 iterations>] ");
 		}
 	}
 }
\ No newline at end of file
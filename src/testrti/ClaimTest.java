@@ -0,0 +1,191 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package testrti;
+
+import io.DEV_TOOLS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import manager.DistributedSchedule;
+import manager.LocalManager;
+import models.BasicTestObject;
+import models.ProxyBasicTestObject;
+import object.ProxyList;
+import object.RemoteObject;
+import uchicago.src.sim.engine.BasicAction;
+import uchicago.src.sim.engine.Schedule;
+import uchicago.src.sim.engine.SimInit;
+import uchicago.src.sim.engine.SimModelImpl;
+
+/**
+ * Agreement test for deterministic exclusion (see 
+ * {@link LocalManager#setDeterministicExclusion(boolean)}) with a zero 
+ * lookahead, so every federate's claims for a tick carry the same 
+ * timestamp.
+ * 
+ * Every federate registers one {@link BasicTestObject} and each tick 
+ * writes the exclusive attribute of a random selection of all of them,
+ * with values unique to the federate and tick. After each tick's claims 
+ * have been resolved the values every federate holds are folded in to a
+ * digest, which each federate publishes in the viewable attribute of its
+ * own object once the writing has stopped. If all federates applied the 
+ * same winners the digests are equal, which is checked and printed along
+ * with the number of claims lost.
+ * 
+ * @author Rob Minson
+ */
+public class ClaimTest extends SimModelImpl {
+
+	/* ticks allowed for every federate to discover the others' objects */
+	private static final int START_TICK = 5;
+	/* ticks after the digest is published before they are compared */
+	private static final int SETTLE_TICKS = 3;
+	
+	LocalManager man;
+	DistributedSchedule scedge;
+	int numFederates;
+	int ticks;
+	int tag;
+	Random random;
+	
+	BasicTestObject mine;
+	ProxyList others;
+	
+	int digest = 0;
+	
+	public ClaimTest(LocalManager man, int numFederates, String name, int ticks) throws Exception {
+		this.man = man;
+		this.numFederates = numFederates;
+		this.ticks = ticks;
+		this.tag = name.hashCode() & 0x7fff;
+		this.random = new Random(name.hashCode());
+		this.addSimEventListener(man);
+		mine = new BasicTestObject(0, 0, 0, 0, 0);
+		man.registerPublicObject(mine);
+		others = man.getProxies(BasicTestObject.class, ProxyBasicTestObject.class);
+	}
+	
+	private List<BasicTestObject> objects() {
+		List<BasicTestObject> objects = new ArrayList<BasicTestObject>();
+		objects.add(mine);
+		for (RemoteObject ro : others.getProxies())
+			objects.add((BasicTestObject)ro);
+		return objects;
+	}
+	
+	/* independent of the order the objects are held in */
+	private int fold(List<BasicTestObject> objects) {
+		int sum = 0;
+		for (BasicTestObject o : objects) {
+			int h = o.getExclusive() * 0x9E3779B1;
+			sum += h ^ (h >>> 15);
+		}
+		return sum;
+	}
+
+	public void setup() {
+		try {
+			scedge = man.getSchedule();
+			
+			scedge.scheduleActionAtInterval(1, new BasicAction() {
+				public void execute() {
+					double tick = man.getTick();
+					if (tick < START_TICK || tick > ticks + 1)
+						return;
+					List<BasicTestObject> objects = objects();
+					if (objects.size() < numFederates)
+						System.out.println("only " + objects.size() + " objects at tick " + tick);
+					/* the claims of the last tick have been resolved by now */
+					digest = digest * 31 + fold(objects);
+					try {
+						if (tick <= ticks) {
+							for (BasicTestObject o : objects) {
+								if (random.nextInt(10) < 7)
+									o.setExclusive(tag * 100000 + (int)tick);
+							}
+						}
+						else
+							mine.setViewable(digest);
+					}
+					catch (Exception e) {
+						DEV_TOOLS.showException(e);
+					}
+				}
+			});
+			
+			scedge.scheduleActionAt(ticks + 1 + SETTLE_TICKS, new BasicAction() {
+				public void execute() {
+					List<BasicTestObject> objects = objects();
+					boolean agreed = objects.size() == numFederates;
+					for (BasicTestObject o : objects) {
+						System.out.println("digest = " + o.getViewable() + (o == mine ? " (mine)" : ""));
+						if (o.getViewable() != digest)
+							agreed = false;
+					}
+					System.out.println((agreed ? "AGREED" : "DIVERGED") + ", " + 
+						man.getClaimsLost() + " of " + man.getClaimsMade() + " claims lost");
+					stop();
+					getController().exitSim();
+				}
+			});
+		}
+		catch (Exception e) {
+			DEV_TOOLS.showException(e);
+		}
+	}
+	
+	public void begin() {
+	}
+	
+	public String[] getInitParam() {
+		return new String[] {};
+	}
+	
+	public Schedule getSchedule() {
+		return scedge;
+	}
+	
+	public String getName() {
+		return "Claim test";
+	}
+	
+	public static void main(String[] args) throws Exception {
+		try {
+			int numFederates = Integer.parseInt(args[0]);
+			int ticks = Integer.parseInt(args[2]);
+			LocalManager.setDeterministicExclusion(true);
+			LocalManager manager = LocalManager.createManager(
+					new Class[] {BasicTestObject.class}, numFederates, args[1], "BasicTest", "BasicTest.fed");
+			new SimInit().loadModel(new ClaimTest(manager, numFederates, args[1], ticks), null, false);
+		}
+		catch (IndexOutOfBoundsException e) {
+			System.out.println("Usage: \n[numFederates / federateName / ticks]");
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package testrti;
+
+import io.DEV_TOOLS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import manager.DistributedSchedule;
+import manager.LocalManager;
+import models.BasicTestObject;
+import models.ProxyBasicTestObject;
+import object.ProxyList;
+import object.RemoteObject;
+import uchicago.src.sim.engine.BasicAction;
+import uchicago.src.sim.engine.Schedule;
+import uchicago.src.sim.engine.SimInit;
+import uchicago.src.sim.engine.SimModelImpl;
+
+/**
+ * Convergence and throughput test for {@link object.variables.CumulativeVariable}s.
+ * 
+ * Every federate registers one {@link BasicTestObject} and, once it can
+ * see all of them, adds to the integer, long and double cumulative 
+ * attributes of every one of them a number of times per tick. Each 
+ * federate's number of additions to each counter is published in the 
+ * viewable attribute of its own object, so after the hammering has stopped
+ * (and the last updates have arrived) each counter should hold the sum of
+ * the viewable attributes times the step added. The integer and long 
+ * counters must match exactly, the double counters only to within rounding
+ * error (see {@link object.variables.CumulativeDouble}), and whether they 
+ * happen to agree exactly is printed separately. The results of these 
+ * checks and the number of modifications per second are printed.
+ * 
+ * By default commutative cumulatives are used (see 
+ * {@link LocalManager#setCommutativeCumulatives(boolean)}), pass 
+ * 'ownership' as the fifth argument to compare with ownership management.
+ * 
+ * @author Rob Minson
+ */
+public class CounterTest extends SimModelImpl {
+
+	/* ticks after the last modification before the counters are checked */
+	private static final int SETTLE_TICKS = 3;
+	/* beyond the range of an int */
+	private static final long LONG_STEP = (1L << 32) + 1;
+	/* not exactly representable, so rounding depends on the order of addition */
+	private static final double DOUBLE_STEP = 0.1;
+	private static final double DOUBLE_TOLERANCE = 1e-9;
+	
+	LocalManager man;
+	DistributedSchedule scedge;
+	int numFederates;
+	int ticks;
+	int increments;
+	
+	BasicTestObject mine;
+	ProxyList others;
+	
+	int ticksHammered = 0;
+	long modifications = 0;
+	long hammerTime = 0;
+	
+	public CounterTest(LocalManager man, int numFederates, int ticks, int increments) throws Exception {
+		this.man = man;
+		this.numFederates = numFederates;
+		this.ticks = ticks;
+		this.increments = increments;
+		this.addSimEventListener(man);
+		mine = new BasicTestObject(0, 0, 0, 0, 0);
+		man.registerPublicObject(mine);
+		others = man.getProxies(BasicTestObject.class, ProxyBasicTestObject.class);
+	}
+	
+	private List<BasicTestObject> counters() {
+		List<BasicTestObject> counters = new ArrayList<BasicTestObject>();
+		counters.add(mine);
+		for (RemoteObject ro : others.getProxies())
+			counters.add((BasicTestObject)ro);
+		return counters;
+	}
+
+	public void setup() {
+		try {
+			scedge = man.getSchedule();
+			
+			scedge.scheduleActionAtInterval(1, new BasicAction() {
+				public void execute() {
+					List<BasicTestObject> counters = counters();
+					if (counters.size() < numFederates || man.getTick() > ticks)
+						return;
+					long start = System.currentTimeMillis();
+					try {
+						for (BasicTestObject c : counters) {
+							for (int i = 0; i < increments; i++) {
+								c.setCumulative(1);
+								c.setCumulativeLong(LONG_STEP);
+								c.setCumulativeDouble(DOUBLE_STEP);
+							}
+						}
+						ticksHammered++;
+						mine.setViewable(ticksHammered * increments);
+					}
+					catch (Exception e) {
+						DEV_TOOLS.showException(e);
+					}
+					hammerTime += System.currentTimeMillis() - start;
+					modifications += counters.size() * increments * 3;
+				}
+			});
+			
+			scedge.scheduleActionAt(ticks + SETTLE_TICKS, new BasicAction() {
+				public void execute() {
+					List<BasicTestObject> counters = counters();
+					int expected = 0;
+					for (BasicTestObject c : counters)
+						expected += c.getViewable();
+					long expectedLong = expected * LONG_STEP;
+					double expectedDouble = expected * DOUBLE_STEP;
+					boolean converged = counters.size() == numFederates;
+					boolean doublesIdentical = true;
+					for (BasicTestObject c : counters) {
+						System.out.println("counter = " + c.getCumulative() + ", expected " + expected);
+						System.out.println("long counter = " + c.getCumulativeLong() + ", expected " + expectedLong);
+						System.out.println("double counter = " + c.getCumulativeDouble() + ", expected " + expectedDouble);
+						if (c.getCumulative() != expected || c.getCumulativeLong() != expectedLong)
+							converged = false;
+						if (Math.abs(c.getCumulativeDouble() - expectedDouble) > DOUBLE_TOLERANCE * Math.max(1, expectedDouble))
+							converged = false;
+						if (c.getCumulativeDouble() != counters.get(0).getCumulativeDouble())
+							doublesIdentical = false;
+					}
+					System.out.println((converged ? "CONVERGED" : "DIVERGED") + 
+						(LocalManager.isCommutativeCumulatives() ? " (commutative)" : " (ownership)") + 
+						", double counters " + (doublesIdentical ? "identical" : "differ by rounding"));
+					System.out.println(modifications + " modifications in " + hammerTime + " ms = " + 
+						(hammerTime == 0 ? "-" : "" + (modifications * 1000 / hammerTime)) + " per second");
+					stop();
+					getController().exitSim();
+				}
+			});
+		}
+		catch (Exception e) {
+			DEV_TOOLS.showException(e);
+		}
+	}
+	
+	public void begin() {
+	}
+	
+	public String[] getInitParam() {
+		return new String[] {};
+	}
+	
+	public Schedule getSchedule() {
+		return scedge;
+	}
+	
+	public String getName() {
+		return "Counter test";
+	}
+	
+	public static void main(String[] args) throws Exception {
+		try {
+			int numFederates = Integer.parseInt(args[0]);
+			int ticks = Integer.parseInt(args[2]);
+			int increments = Integer.parseInt(args[3]);
+			LocalManager.setCommutativeCumulatives(!(args.length > 4 && args[4].equals("ownership")));
+			LocalManager manager = LocalManager.createManager(
+					new Class[] {BasicTestObject.class}, numFederates, args[1], "BasicTest", "BasicTest.fed");
+			new SimInit().loadModel(new CounterTest(manager, numFederates, ticks, increments), null, false);
+		}
+		catch (IndexOutOfBoundsException e) {
+			System.out.println("Usage: \n[numFederates / federateName / ticks / increments per tick / <ownership>]");
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+
+Copyright 2008, Rob Minson (rzm@cs.bham.ac.uk)
+
+School of Computer Science
+University of Birmingham
+Edgbaston
+B152TT
+United Kingdom
+
+This file is part of HLA_RePast.
+
+    HLA_RePast is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    HLA_RePast is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with HLA_RePast.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package testrti;
+
+import io.DEV_TOOLS;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import manager.DistributedSchedule;
+import manager.LocalManager;
+import models.Mover;
+import object.ProxyColumns;
+import object.ProxyList;
+import object.RemoteObject;
+import uchicago.src.sim.engine.BasicAction;
+import uchicago.src.sim.engine.Schedule;
+import uchicago.src.sim.engine.SimInit;
+import uchicago.src.sim.engine.SimModelImpl;
+
+/**
+ * Measures how many updates each federate reflects as the federation
+ * grows, with and without routing updates by region (see 
+ * {@link LocalManager#setRoutingSpace(String, Rectangle)}).
+ * 
+ * Every federate registers a number of {@link Mover}s which wander around
+ * a square grid one cell per tick. The grid grows with the federation so 
+ * the density of movers stays the same. Each federate is interested in the
+ * square around its first mover, which it moves along with it. Once every 
+ * tick has run the number of attribute values reflected per tick and the 
+ * number of proxies visible are printed, run with increasing numbers of 
+ * federates to see how the volume scales.
+ * 
+ * By default regions are used, pass 'everywhere' after the other 
+ * arguments to compare with subscribing to everything. Pass 'receive' to
+ * send positions receive ordered (see 
+ * {@link LocalManager#setReceiveOrdered(Class, String[])}), the mean time
+ * from arrival to application of reflections on each path is printed.
+ * Pass 'columnar' to store the proxies in columns (see
+ * {@link LocalManager#setColumnar(Class, boolean)}), each tick the other 
+ * federates' movers next to the first mover are counted either way.
+ * Pass 'lazy' to decode reflected values only when they are read (see
+ * {@link LocalManager#setLazyDecoding(boolean)}), the numbers of values 
+ * decoded and never decoded are printed.
+ * 
+ * @author Rob Minson
+ */
+public class RegionTest extends SimModelImpl {
+
+	/* grid cells per mover */
+	private static final int CELLS_PER_MOVER = 16;
+	
+	/* how far around its first mover a federate looks */
+	private static final int VIEW = 4;
+	
+	LocalManager man;
+	DistributedSchedule scedge;
+	int ticks;
+	int side;
+	
+	List<Mover> mine = new ArrayList<Mover>();
+	ProxyList others;
+	Random random = new Random();
+	
+	long visibleSum = 0;
+	long neighbourSum = 0;
+	
+	public RegionTest(LocalManager man, int numFederates, int ticks, int movers) throws Exception {
+		this.man = man;
+		this.ticks = ticks;
+		this.addSimEventListener(man);
+		side = side(numFederates, movers);
+		for (int i = 0; i < movers; i++) {
+			Mover m = new Mover(random.nextInt(side), random.nextInt(side), man.getFederateID().hashCode());
+			man.registerPublicObject(m);
+			mine.add(m);
+		}
+		others = man.getProxies(Mover.class, Mover.class);
+		if (LocalManager.isRegionRouting())
+			others.setRegionOfInterest(view());
+	}
+	
+	static int side(int numFederates, int movers) {
+		return (int)Math.ceil(Math.sqrt(numFederates * movers * CELLS_PER_MOVER));
+	}
+	
+	private Rectangle view() {
+		Point p = mine.get(0).getPosition();
+		return new Rectangle(p.x - VIEW, p.y - VIEW, 2 * VIEW + 1, 2 * VIEW + 1);
+	}
+	
+	/* movers of other federates next to the first mover */
+	private int neighbours() {
+		Point p = mine.get(0).getPosition();
+		int n = 0;
+		ProxyColumns cols = others.getColumns();
+		if (cols != null) {
+			int[] xs = cols.getXs("position"), ys = cols.getYs("position");
+			for (int i = 0; i < cols.size(); i++)
+				if (Math.abs(xs[i] - p.x) <= 1 && Math.abs(ys[i] - p.y) <= 1)
+					n++;
+		}
+		else {
+			for (RemoteObject ro : others.getProxies()) {
+				Point q = ((Mover)ro).getPosition();
+				if (Math.abs(q.x - p.x) <= 1 && Math.abs(q.y - p.y) <= 1)
+					n++;
+			}
+		}
+		return n;
+	}
+	
+	private int step(int coord) {
+		return Math.max(0, Math.min(side - 1, coord + random.nextInt(3) - 1));
+	}
+
+	public void setup() {
+		try {
+			scedge = man.getSchedule();
+			
+			scedge.scheduleActionAtInterval(1, new BasicAction() {
+				public void execute() {
+					if (man.getTick() > ticks)
+						return;
+					try {
+						for (Mover m : mine) {
+							Point p = m.getPosition();
+							m.moveTo(step(p.x), step(p.y));
+						}
+						if (LocalManager.isRegionRouting())
+							others.setRegionOfInterest(view());
+					}
+					catch (Exception e) {
+						DEV_TOOLS.showException(e);
+					}
+					visibleSum += others.getProxies().size();
+					neighbourSum += neighbours();
+				}
+			});
+			
+			scedge.scheduleActionAt(ticks + 1, new BasicAction() {
+				public void execute() {
+					long reflected = man.getValuesReflected();
+					System.out.println((LocalManager.isRegionRouting() ? "REGIONS" : "EVERYWHERE") + 
+						" on a " + side + "x" + side + " grid, " + mine.size() + " movers per federate");
+					System.out.println(reflected + " values reflected in " + ticks + " ticks = " + 
+						(reflected / Math.max(1, ticks)) + " per tick");
+					System.out.println((visibleSum / Math.max(1, ticks)) + " proxies visible per tick, " + 
+						man.getRegionModifications() + " region modifications");
+					System.out.println(((double)neighbourSum / Math.max(1, ticks)) + " neighbours per tick" + 
+						(others.getColumns() != null ? " (columns)" : ""));
+					System.out.println(man.getValuesDecoded() + " values decoded, " + 
+						man.getDecodesSkipped() + " never decoded" + 
+						(LocalManager.isLazyDecoding() ? " (lazy)" : ""));
+					System.out.println("latency: " + man.getMeanOrderedLatency() + " ms timestamp ordered, " + 
+						man.getMeanArrivalLatency() + " ms receive ordered (" + 
+						man.getArrivalReflections() + " reflections)");
+					stop();
+					getController().exitSim();
+				}
+			});
+		}
+		catch (Exception e) {
+			DEV_TOOLS.showException(e);
+		}
+	}
+	
+	public void begin() {
+	}
+	
+	public String[] getInitParam() {
+		return new String[] {};
+	}
+	
+	public Schedule getSchedule() {
+		return scedge;
+	}
+	
+	public String getName() {
+		return "Region test";
+	}
+	
+	public static void main(String[] args) throws Exception {
+		try {
+			int numFederates = Integer.parseInt(args[0]);
+			int ticks = Integer.parseInt(args[2]);
+			int movers = Integer.parseInt(args[3]);
+			List<String> options = Arrays.asList(args).subList(4, args.length);
+			if (options.contains("receive"))
+				LocalManager.setReceiveOrdered(Mover.class, new String[] {"position"});
+			if (options.contains("columnar"))
+				LocalManager.setColumnar(Mover.class, true);
+			if (options.contains("lazy"))
+				LocalManager.setLazyDecoding(true);
+			if (!options.contains("everywhere")) {
+				int side = side(numFederates, movers);
+				LocalManager.setRoutingSpace("a", new Rectangle(0, 0, side, side));
+			}
+			LocalManager manager = LocalManager.createManager(
+					new Class[] {Mover.class}, numFederates, args[1], "BasicTest", "BasicTest.fed");
+			new SimInit().loadModel(new RegionTest(manager, numFederates, ticks, movers), null, false);
+		}
+		catch (IndexOutOfBoundsException e) {
+			System.out.println("Usage: \n[numFederates / federateName / ticks / movers per federate / <everywhere> / <receive> / <columnar> / <lazy>]");
+		}
+	}
+}
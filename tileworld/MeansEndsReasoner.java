@@ -127,7 +127,7 @@ public class MeansEndsReasoner {
 				
 		Route routeToCurrent = planner.generateRouteTo(h);
 		if (routeToCurrent == null || routeToCurrent.getLength() > this.agreementThreshold) {
-			Hole closestHole = closestHoleToAgent(world.getHoles());
+			Hole closestHole = closestHoleToAgent();
 			if (closestHole == null)
 				return null;
 			if (closestHole != h) {
@@ -162,7 +162,7 @@ public class MeansEndsReasoner {
 		/*
 		Route routeToCurrent = planner.generateRouteTo(t);
 		if (routeToCurrent == null || routeToCurrent.getLength() > this.agreementThreshold) {
-			Tile closestTile = closestTileToAgent(world.getTiles());
+			Tile closestTile = closestTileToAgent();
 			if (closestTile != null && closestTile != t) {
 				Route routeToClosest = planner.generateRouteTo(closestTile);
 				if (routeToClosest != null) {
@@ -173,7 +173,7 @@ public class MeansEndsReasoner {
 		}
 		return new TaskSet(routeToCurrent, t);
 		*/
-		Tile closest = closestTileToAgent(world.getTiles());
+		Tile closest = closestTileToAgent();
 		if (closest != t) {
 			Route toOther = planner.generateRouteTo(closest);
 			Route toCurrent = planner.generateRouteTo(t);
@@ -207,44 +207,13 @@ public class MeansEndsReasoner {
 		return planner.generateRouteFromTo(p1, p2);
 	}
 	
-	private Hole closestHoleToAgent(List holes) {
+	private Hole closestHoleToAgent() {
 	
-		if (holes.isEmpty())
-			return null;
-		int index = 0;
-		Point agentPoint = new Point(agent.getX(), agent.getY());
-		Hole firstHole = (Hole)holes.get(0);
-		int closestDist = simpleDist(agentPoint, new Point(firstHole.getX(), firstHole.getY()));
-		for (int i = 1; i < holes.size(); i++) {
-			Hole nextHole = (Hole)holes.get(i);
-			Point nextPoint = new Point(nextHole.getX(), nextHole.getY());
-			if (simpleDist(agentPoint, nextPoint) < closestDist)
-				index = i;
-		}
-		return (Hole)holes.get(index);
-	}
-	
-	private Tile closestTileToAgent(List tiles) {
-		
-		if (tiles.isEmpty())
-			return null;
-		int index = 0;
-		Point agentPoint = new Point(agent.getX(), agent.getY());
-		Tile firstTile = (Tile)tiles.get(0);
-		int closestDist = simpleDist(agentPoint, new Point(firstTile.getX(), firstTile.getY()));
-		for (int i = 1; i < tiles.size(); i++) {
-			Tile nextTile = (Tile)tiles.get(i);
-			Point nextPoint = new Point(nextTile.getX(), nextTile.getY());
-			if (simpleDist(agentPoint, nextPoint) < closestDist)
-				index = i;
-		}
-		return (Tile)tiles.get(index);
+		return world.getNearestHole(new Point(agent.getX(), agent.getY()));
 	}
 	
-	private int simpleDist(Point p1, Point p2) {
+	private Tile closestTileToAgent() {
 		
-		int xDist = Math.abs((int)p1.getX() - (int)p2.getX());
-		int yDist = Math.abs((int)p1.getY() - (int)p2.getY());
-		return xDist + yDist;
+		return world.getNearestTile(new Point(agent.getX(), agent.getY()));
 	}
 }
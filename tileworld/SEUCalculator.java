@@ -230,23 +230,9 @@ public class SEUCalculator {
 	
 	public Tile getNearestTile() throws InsufficientTilesException {
 		
-		List tiles = world.getTiles();
-		Tile chosen = null;
-		int distanceToChosen = Integer.MAX_VALUE;
-		if (tiles.size() > 0) {
-			chosen = (Tile)tiles.get(0);
-			distanceToChosen = (int) dist(agent, chosen);
-		}
-		else
+		Tile chosen = world.getNearestTile(new Point(agent.getX(), agent.getY()));
+		if (chosen == null)
 			throw new InsufficientTilesException();
-		for (int i = 0; i < tiles.size(); i++) {
-				Tile current = (Tile)tiles.get(i);				
-				int distanceToCurrent = (int)dist(agent, current);
-				if (chosen != null && distanceToCurrent < distanceToChosen) {
-					chosen = current;
-					distanceToChosen = distanceToCurrent;
-				}					
-		}
 		return chosen;
 	}
 	
@@ -255,45 +241,21 @@ public class SEUCalculator {
 	*   The tiles will be the n closest tiles to the specified hole, where n is the
 	*   remaining depth of the hole at time of calculation.
 	*   @param h the Hole for which the Tiles should be found
-	*   @return the ArrayList of n nearest tiles.	
+	*   @return the ArrayList of n nearest tiles, nearest first.	
 	*   @throws InsufficientTilesException if the TileWorld does not contain enough
 	*   tiles to fill the specified hole.
 	*/
 	public ArrayList getNearestTiles(Hole h) throws InsufficientTilesException {
 		
-		int tilesRequired = h.getCurrentDepth();
-		List tilesAvailable = world.getTiles();
-		if (tilesAvailable.size() < tilesRequired) 
-			throw new InsufficientTilesException();
-		ArrayList chosenTiles = new ArrayList();
-		for (int i = 0; i < tilesAvailable.size(); i++) {
-			Tile nextTile = (Tile)tilesAvailable.get(i);
-			double distance = dist(h, nextTile);
-			//no elements to compare to, add the first tile
-			if (chosenTiles.size() == 0)
-				chosenTiles.add(nextTile);
-			//are elements to compare to, add in, retaining a distance-order
-			else {
-				for (int j = 0; j < chosenTiles.size(); j++) {
-					Tile nextCandidate = (Tile)chosenTiles.get(j);
-					if (distance < dist(h, nextCandidate)) {
-						chosenTiles.add(j, nextTile);
-						while (chosenTiles.size() > tilesRequired) {
-							chosenTiles.remove(tilesRequired);
-						}
-					}
-				}
-			}
-		}
-		return chosenTiles;
+		return getNearestTilesExcluding(h, null);
 	}
 	
 	/**
 	*   Gets an ArrayList of Tiles to be used to fill the specified hole, 
 	*   assuming that the specified tiles will not be available at the time.
 	*   @param h the Hole for which the Tiles should be found
-	*   @param tiles the list of tiles to exclude from the search
-	*   @return the ArrayList of n nearest tiles not in tiles
+	*   @param tiles the list of tiles to exclude from the search, or null
+	*   @return the ArrayList of n nearest tiles not in tiles, nearest first
 	*   @throws InsufficientTilesException if the TileWorld does not contain
 	*   enough tiles to fill the specified hole, assuming that no Tile in 
 	*   tiles will be available.
@@ -302,32 +264,10 @@ public class SEUCalculator {
 		throws InsufficientTilesException {
 		
 		int tilesRequired = h.getCurrentDepth();
-		ArrayList tilesAvailable = new ArrayList();
-		tilesAvailable.addAll(world.getTiles());		
-		tilesAvailable.removeAll(tiles);
-		if (tilesAvailable.size() < tilesRequired) 
+		List chosenTiles = world.getNearestTiles(new Point(h.getX(), h.getY()), tilesRequired, tiles);
+		if (chosenTiles.size() < tilesRequired) 
 			throw new InsufficientTilesException();
-		ArrayList chosenTiles = new ArrayList();
-		for (int i = 0; i < tilesAvailable.size(); i++) {
-			Tile nextTile = (Tile)tilesAvailable.get(i);
-			double distance = dist(h, nextTile);
-			//no elements to compare to, add the first tile
-			if (chosenTiles.size() == 0)
-				chosenTiles.add(nextTile);
-			//are elements to compare to, add in, retaining a distance-order
-			else {
-				for (int j = 0; j < chosenTiles.size(); j++) {
-					Tile nextCandidate = (Tile)chosenTiles.get(j);
-					if (distance < dist(h, nextCandidate)) {
-						chosenTiles.add(j, nextTile);
-						while (chosenTiles.size() > tilesRequired) {
-							chosenTiles.remove(tilesRequired);
-						}
-					}
-				}
-			}
-		}
-		return chosenTiles;
+		return new ArrayList(chosenTiles);
 	}
 	
 	private int getTileFetchTime(Hole h) throws InsufficientTilesException {
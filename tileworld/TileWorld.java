@@ -42,10 +42,14 @@ import hla_past.object.ReflectedList;
 import hla_past.object.RemoteObject;
 import hla_past.object.VariableListener;
 
+import java.awt.Point;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import object.SpatialIndex;
+
 import testrti.DEV_TOOLS;
 import uchicago.src.sim.space.Cell;
 import uchicago.src.sim.space.Multi2DGrid;
@@ -67,6 +71,10 @@ public class TileWorld extends Multi2DGrid {
 	private ArrayList allHoles;
 	private ArrayList allTerrain;
 	
+	//allTiles and allHoles by position, for the nearest ones to a point
+	private SpatialIndex<Tile> tileIndex;
+	private SpatialIndex<Hole> holeIndex;
+	
 	private ReflectedList r_tiles;
 	private ReflectedList r_holes;
 	private ReflectedList r_terrain;
@@ -114,6 +122,10 @@ public class TileWorld extends Multi2DGrid {
 		this.allHoles = new ArrayList();
 		this.allTerrain = new ArrayList();
 		
+		//cells about the size of the space around each tile or hole
+		this.tileIndex = new SpatialIndex<Tile>(indexCellSize(x * y, numTiles));
+		this.holeIndex = new SpatialIndex<Hole>(indexCellSize(x * y, numHoles));
+		
 		//assign these now, but they will only get populated at some point later
 		this.r_tiles = r_tiles; 
 		this.r_holes = r_holes;
@@ -214,13 +226,87 @@ public class TileWorld extends Multi2DGrid {
 		return allTerrain;
 	}
 	
+	/**
+	*   Get the Tile on the board nearest the specified point
+	*   @param p the point
+	*   @return the nearest Tile, or null if there are no tiles
+	*/
+	public Tile getNearestTile(Point p) {
+		
+		return tileIndex.nearest(p);
+	}
+	
+	/**
+	*   Get the n Tiles on the board nearest the specified point, leaving
+	*   out the specified tiles
+	*   @param p the point
+	*   @param n the number of tiles wanted
+	*   @param excluded the tiles to leave out, or null
+	*   @return the nearest n Tiles, nearest first, or all of them if there
+	*   are fewer than n
+	*/
+	public List getNearestTiles(Point p, int n, Collection excluded) {
+		
+		return tileIndex.nearest(p, n, excluded);
+	}
+	
+	/**
+	*   Get the Hole on the board nearest the specified point
+	*   @param p the point
+	*   @return the nearest Hole, or null if there are no holes
+	*/
+	public Hole getNearestHole(Point p) {
+		
+		return holeIndex.nearest(p);
+	}
+	
+	private static int indexCellSize(int area, int count) {
+		
+		//populated by other federates, assume the default 15 tiles per 50x50
+		if (count < 1)
+			return 13;
+		return Math.max(1, (int)Math.sqrt(area / count));
+	}
+	
+	private void addTile(Tile t) {
+		
+		allTiles.add(t);
+		tileIndex.add(t, t.getX(), t.getY());
+	}
+	
+	private void removeTile(Object t) {
+		
+		allTiles.remove(t);
+		if (t instanceof Tile)
+			tileIndex.remove((Tile)t);
+	}
+	
+	private void addHole(Hole h) {
+		
+		allHoles.add(h);
+		holeIndex.add(h, h.getX(), h.getY());
+	}
+	
+	private void removeHole(Object h) {
+		
+		allHoles.remove(h);
+		if (h instanceof Hole)
+			holeIndex.remove((Hole)h);
+	}
+	
 	private void refreshCollections() {
 		
-		allTiles.addAll(tiles);
-		allTiles.addAll(r_tiles.getInstances());
+		for (int i = 0; i < tiles.size(); i++)
+			addTile((Tile)tiles.get(i));
+		List tileInsts = r_tiles.getInstances();
+		for (int i = 0; i < tileInsts.size(); i++)
+			addTile((Tile)tileInsts.get(i));
 		
-		allHoles.addAll(holes);
-		allHoles.addAll(r_holes.getInstances());
+		for (int i = 0; i < holes.size(); i++)
+			addHole((Hole)holes.get(i));
+		List holeInsts = r_holes.getInstances();
+		for (int i = 0; i < holeInsts.size(); i++)
+			addHole((Hole)holeInsts.get(i));
 		
 		allTerrain.addAll(terrain);
 		allTerrain.addAll(r_terrain.getInstances());
@@ -233,14 +319,14 @@ public class TileWorld extends Multi2DGrid {
 		for (int i = 0; i < tileInsts.size(); i++) {
 			Tile t = (Tile)tileInsts.get(i);
 			initTile(t);
-			allTiles.add(t);		
+			addTile(t);		
 		}
 		
 		List holeInsts = r_holes.getInstances();
 		for (int i = 0; i < holeInsts.size(); i++) {
 			Hole h = (Hole)holeInsts.get(i);
 			initHole((Hole)holeInsts.get(i));
-			allHoles.add(h);
+			addHole(h);
 		}
 		
 		//tiles listeners...
@@ -251,12 +337,12 @@ public class TileWorld extends Multi2DGrid {
 					return;
 				initTile(t);
 				putObjectAt(t.getX(), t.getY(), t);
-				allTiles.add(t);
+				addTile(t);
 			}			
 			public void instanceRemoved(RemoteObject obj) {
 				Tile t = (Tile)obj;
 				removeObjectAt(t.getX(), t.getY(), t);
-				allTiles.remove(t);
+				removeTile(t);
 			}		
 		});
 		
@@ -268,12 +354,12 @@ public class TileWorld extends Multi2DGrid {
 					return;
 				initHole(h);
 				putObjectAt(h.getX(), h.getY(), h);
-				allHoles.add(h);
+				addHole(h);
 			}			
 			public void instanceRemoved(RemoteObject obj) {
 				Hole h = (Hole)obj;
 				removeObjectAt(h.getX(), h.getY(), h);
-				allHoles.remove(h);
+				removeHole(h);
 			}		
 		});
 		
@@ -305,7 +391,7 @@ public class TileWorld extends Multi2DGrid {
 				boolean nv = Bytes.booleanValue(newValue);
 				if (nv) {
 					removeObjectAt(t.getX(), t.getY(), t);
-					allTiles.remove(t);
+					removeTile(t);
 					tiles.remove(t);
 					fireTileRemoved(t);
 				}
@@ -325,7 +411,7 @@ public class TileWorld extends Multi2DGrid {
 				int nv = Bytes.intValue(newValue);
 				if (nv <= 0) {
 					removeObjectAt(t.getX(), t.getY(), t);
-					allTiles.remove(t);
+					removeTile(t);
 					tiles.remove(t);
 					fireTileRemoved(t);
 				}
@@ -348,7 +434,7 @@ public class TileWorld extends Multi2DGrid {
 				int newDepth = Bytes.intValue(newValue);
 				if (newDepth < 1) {
 					removeObjectAt(h.getX(), h.getY(), h);
-					allHoles.remove(h);
+					removeHole(h);
 					holes.remove(h);
 					fireHoleRemoved(h);
 				}
@@ -368,7 +454,7 @@ public class TileWorld extends Multi2DGrid {
 				int nv = Bytes.intValue(newValue);
 				if (nv <= 0) {
 					removeObjectAt(h.getX(), h.getY(), h);
-					allHoles.remove(h);
+					removeHole(h);
 					holes.remove(h);
 					fireHoleRemoved(h);
 				}
@@ -392,7 +478,7 @@ public class TileWorld extends Multi2DGrid {
 				if (deadOrAlive == Tile.JUST_DIED) {
 					this.removeObjectAt(nextTile.getX(), nextTile.getY(), nextTile);
 					tiles.remove(tiles.indexOf(nextTile));
-					allTiles.remove(nextTile);
+					removeTile(nextTile);
 					fireTileRemoved(nextTile);
 					i--;
 				}
@@ -405,7 +491,7 @@ public class TileWorld extends Multi2DGrid {
 				if (deadOrAlive == Hole.JUST_DIED) {
 					this.removeObjectAt(nextHole.getX(), nextHole.getY(), nextHole);
 					holes.remove(holes.indexOf(nextHole));
-					allHoles.remove(nextHole);
+					removeHole(nextHole);
 					fireHoleRemoved(nextHole);
 					i--;
 				}
@@ -533,7 +619,7 @@ public class TileWorld extends Multi2DGrid {
 		try {
 			targetTile.pickup();
 			agent.setTile(targetTile);
-			allTiles.remove(targetTile);
+			removeTile(targetTile);
 			tiles.remove(targetTile);
 			this.removeObjectAt(x, y, targetTile);
 			fireTileRemoved(targetTile);
@@ -559,7 +645,7 @@ public class TileWorld extends Multi2DGrid {
 			if (fillScore > -1) {
 				agent.score(h, fillScore);
 				this.removeObjectAt(x, y, h);
-				allHoles.remove(h);
+				removeHole(h);
 				holes.remove(h);
 			}
 			agent.setTile(null);
@@ -589,9 +675,9 @@ public class TileWorld extends Multi2DGrid {
 			Object next = l.get(i);
 			if (next.getClass() != c) {
 				this.removeObjectAt(x, y, next);
-				allTiles.remove(next);
+				removeTile(next);
 				tiles.remove(next);
-				allHoles.remove(next);
+				removeHole(next);
 				holes.remove(next);
 				if (next instanceof Agent && model.ownsAgent((Agent)next))
 					replaceAgent((Agent)next);